@@ -0,0 +1,43 @@
+package com.github.onsdigital;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * BenchmarkRunner - runs the selected benchmarks single-threaded and then with N threads, with the GC profiler
+ * enabled so that allocation rates are reported alongside timings.
+ * <p>
+ * Arguments: the benchmark include regex, the thread count N and the directory for the JSON result files.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() { }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args[0];
+        int threads = Integer.parseInt(args[1]);
+        File outputDirectory = new File(args[2]);
+
+        run(include, 1, outputDirectory);
+        if (threads > 1) {
+            run(include, threads, outputDirectory);
+        }
+    }
+
+    private static void run(String include, int threads, File outputDirectory) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(include)
+                .threads(threads)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(outputDirectory, "jmh-result-" + threads + "-threads.json").getPath())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.onsdigital;
+
+import io.jsonwebtoken.Jwts;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BenchmarkTokens - generates a signing key and a corpus of Cognito style access tokens for the benchmarks.
+ */
+final class BenchmarkTokens {
+
+    static final String KEY_ID = "benchmark-key";
+    static final String USER_ID = "aaaaaaaa-bbbb-cccc-dddd-eeeeeeeeeeee";
+    static final String USERNAME = "janedoe@example.com";
+    static final String MALFORMED_TOKEN = "eyJhbGciOiJSUzI1NiJ9.bm90IGpzb24.c2lnbmF0dXJl";
+
+    private static final long ONE_HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long ONE_DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final KeyPair signingKeyPair;
+    private final KeyPair otherKeyPair;
+
+    BenchmarkTokens() throws NoSuchAlgorithmException {
+        this.signingKeyPair = generateKeyPair();
+        this.otherKeyPair = generateKeyPair();
+    }
+
+    /**
+     * Gets the signing keys in the format accepted by {@link JWTVerifierImpl}.
+     */
+    Map<String, String> signingKeys() {
+        return Collections.singletonMap(KEY_ID, encodedPublicKey());
+    }
+
+    String encodedPublicKey() {
+        return Base64.getEncoder().encodeToString(signingKeyPair.getPublic().getEncoded());
+    }
+
+    String validToken() {
+        return token(signingKeyPair, new Date(System.currentTimeMillis() + ONE_DAY), groups(4));
+    }
+
+    String validToken(int groupCount) {
+        return token(signingKeyPair, new Date(System.currentTimeMillis() + ONE_DAY), groups(groupCount));
+    }
+
+    String expiredToken() {
+        return token(signingKeyPair, new Date(System.currentTimeMillis() - ONE_HOUR), groups(4));
+    }
+
+    String badSignatureToken() {
+        return token(otherKeyPair, new Date(System.currentTimeMillis() + ONE_DAY), groups(4));
+    }
+
+    String unknownKeyIdToken() {
+        return token(signingKeyPair, "unknown-key", new Date(System.currentTimeMillis() + ONE_DAY), groups(4));
+    }
+
+    static List<String> groups(int count) {
+        List<String> groups = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            groups.add("group-" + i);
+        }
+        return groups;
+    }
+
+    private static String token(KeyPair keyPair, Date expiration, List<String> groups) {
+        return token(keyPair, KEY_ID, expiration, groups);
+    }
+
+    private static String token(KeyPair keyPair, String keyId, Date expiration, List<String> groups) {
+        return Jwts.builder()
+                .header().keyId(keyId).and()
+                .subject(USER_ID)
+                .claim("username", USERNAME)
+                .claim("cognito:groups", groups)
+                .claim("token_use", "access")
+                .issuedAt(new Date())
+                .expiration(expiration)
+                .signWith(keyPair.getPrivate(), Jwts.SIG.RS256)
+                .compact();
+    }
+
+    private static KeyPair generateKeyPair() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.onsdigital;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GroupPolicyBenchmark - compares a compiled {@link GroupPolicy} with scanning the list of groups for each rule, as
+ * services do without one. The policy requires any of two groups and all of two others, the last of which is the
+ * user's last group, so the scan has to read the whole list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroupPolicyBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int groupCount;
+
+    private List<String> groups;
+    private String[] anyOf;
+    private String[] allOf;
+    private GroupPolicy policy;
+    private UserDataPayload payload;
+
+    @Setup
+    public void setup() {
+        groups = BenchmarkTokens.groups(groupCount);
+        anyOf = new String[]{"not-a-member", groups.get(groupCount / 2)};
+        allOf = new String[]{groups.get(0), groups.get(groupCount - 1)};
+        policy = GroupPolicy.builder().anyOf(anyOf).allOf(allOf).build();
+        payload = new UserDataPayload("id", "email", groups);
+    }
+
+    @Benchmark
+    public boolean listScan() {
+        List<String> userGroups = payload.getGroups();
+        boolean any = false;
+        for (String group : anyOf) {
+            any |= userGroups.contains(group);
+        }
+        boolean all = true;
+        for (String group : allOf) {
+            all &= userGroups.contains(group);
+        }
+        return any && all;
+    }
+
+    @Benchmark
+    public boolean compiledPolicy() {
+        return policy.isAllowed(payload);
+    }
+
+    @Benchmark
+    public boolean compiledPolicyFirstCheck() {
+        // a payload that has not been checked before, as for a token that missed the verified token cache
+        return policy.isAllowed(new UserDataPayload("id", "email", groups));
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.onsdigital;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GroupsConversionBenchmark - measures the conversion of large 'cognito:groups' claims into the list of groups held
+ * by {@link UserDataPayload}, and the cost of checking the user is a member of a group.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroupsConversionBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int groupCount;
+
+    private ArrayList<Object> groupsClaim;
+    private UserDataPayload payload;
+    private String lastGroup;
+
+    @Setup
+    public void setup() {
+        groupsClaim = new ArrayList<>(BenchmarkTokens.groups(groupCount));
+        payload = new UserDataPayload("id", "email", BenchmarkTokens.groups(groupCount));
+        lastGroup = payload.getGroups().get(groupCount - 1);
+    }
+
+    @Benchmark
+    public Object convertGroupsToStrings() {
+        return JWTVerifierImpl.convertGroupsToStrings(groupsClaim);
+    }
+
+    @Benchmark
+    public boolean groupsContains() {
+        return payload.getGroups().contains(lastGroup);
+    }
+
+    @Benchmark
+    public boolean isMemberOf() {
+        return payload.isMemberOf(lastGroup);
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.onsdigital;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RejectionBenchmark - measures the cost of rejecting invalid tokens when each rejection throws a new exception with
+ * a stack trace, throws a shared stackless exception, or is returned by {@link JWTVerifierImpl#tryVerify(String)}.
+ * Bad signatures are rejected by jjwt, which builds an exception with a stack trace of its own in every mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RejectionBenchmark {
+
+    @Param({"expired", "malformed", "unknownKid", "badSignature"})
+    private String rejection;
+
+    private JWTVerifierImpl verifier;
+    private JWTVerifierImpl stacklessVerifier;
+    private String token;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkTokens tokens = new BenchmarkTokens();
+        verifier = JWTVerifierImpl.builder().signingKeys(tokens.signingKeys()).build();
+        stacklessVerifier = JWTVerifierImpl.builder().signingKeys(tokens.signingKeys()).stacklessFailures().build();
+        switch (rejection) {
+            case "expired":
+                token = tokens.expiredToken();
+                break;
+            case "malformed":
+                token = BenchmarkTokens.MALFORMED_TOKEN;
+                break;
+            case "unknownKid":
+                token = tokens.unknownKeyIdToken();
+                break;
+            default:
+                token = tokens.badSignatureToken();
+        }
+    }
+
+    @Benchmark
+    public Object verifyWithStackTraces() {
+        try {
+            return verifier.verify(token);
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object verifyStackless() {
+        try {
+            return stacklessVerifier.verify(token);
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object tryVerify() {
+        return verifier.tryVerify(token).getOutcome();
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.onsdigital;
+
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RevocationBenchmark - measures checking a token that has not been revoked against a {@link RevocationList}, which
+ * answers from its Bloom filter, and against a plain set of revocation keys, which builds the token's session key for
+ * every lookup. Run with '-prof gc' to compare the allocation of each check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RevocationBenchmark {
+
+    @Param({"1000", "100000"})
+    private int revocationCount;
+
+    private RevocationList revocations;
+    private Set<String> revokedKeys;
+    private UserDataPayload payload;
+
+    @Setup
+    public void setup() throws Exception {
+        InMemoryRevocationSource source = new InMemoryRevocationSource();
+        revokedKeys = new HashSet<>();
+        for (int i = 0; i < revocationCount; i++) {
+            String key = "revoked-token-" + i;
+            source.revoke(key);
+            revokedKeys.add(key);
+        }
+        revocations = new RevocationList(source, revocationCount, RevocationList.DEFAULT_FALSE_POSITIVE_RATE);
+        revocations.refresh();
+        payload = UserDataPayload.ofClaims(BenchmarkTokens.USER_ID, BenchmarkTokens.USERNAME,
+                Collections.emptyList(), Jwts.claims()
+                        .id("aaaaaaaa-1111-2222-3333-444444444444")
+                        .issuedAt(new Date())
+                        .build());
+    }
+
+    @Benchmark
+    public boolean bloomFilter() {
+        return revocations.isRevoked(payload);
+    }
+
+    @Benchmark
+    public boolean exactSet() {
+        return revokedKeys.contains(payload.getTokenId())
+                || revokedKeys.contains(RevocationList.sessionKey(payload.getId(),
+                payload.getIssuedAt().getEpochSecond()));
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.onsdigital;
+
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.JwtParserBuilder;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.Provider;
+import java.security.Security;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SignatureBenchmark - measures parsing a token and verifying its RS256 signature with jjwt's own algorithm, which
+ * creates and initialises a signature engine per token, against the {@link SignatureVerifiers}, which reuse an
+ * initialised engine per thread and key. The provider parameter is the name of an installed JCA provider to take the
+ * engines from, or 'default' for the most preferred installed provider.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureBenchmark {
+
+    @Param({"default", "SunRsaSign"})
+    private String provider;
+
+    private JwtParser jjwtParser;
+    private SignedClaimsParser cachedEngineParser;
+    private String token;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkTokens tokens = new BenchmarkTokens();
+        SigningKeyLocatorImpl keyLocator = new SigningKeyLocatorImpl(tokens.signingKeys());
+        Provider jcaProvider = null;
+        if (!"default".equals(provider)) {
+            jcaProvider = Security.getProvider(provider);
+        }
+
+        JwtParserBuilder builder = Jwts.parser().keyLocator(keyLocator);
+        if (jcaProvider != null) {
+            builder.provider(jcaProvider);
+        }
+        jjwtParser = builder.build();
+        cachedEngineParser = new SignedClaimsParser(keyLocator, ValidationOptions.DEFAULT, false,
+                SignatureVerifiers.using(jcaProvider));
+        token = tokens.validToken();
+    }
+
+    @Benchmark
+    public Object jjwtSignature() {
+        return jjwtParser.parseSignedClaims(token).getPayload();
+    }
+
+    @Benchmark
+    public Object cachedEngines() {
+        return cachedEngineParser.parse(token);
+    }
+}
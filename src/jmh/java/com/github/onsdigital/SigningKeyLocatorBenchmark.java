@@ -0,0 +1,57 @@
+package com.github.onsdigital;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SigningKeyLocatorBenchmark - measures the cost of constructing a {@link SigningKeyLocatorImpl}, i.e. of decoding
+ * every signing key returned by identity api, as the number of keys grows, against a lazy locator that only decodes
+ * the key that is located.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SigningKeyLocatorBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    private int keyCount;
+
+    private Map<String, String> signingKeys;
+
+    @Setup
+    public void setup() throws Exception {
+        // the same key under different IDs costs the same to decode as distinct keys, without the generation time
+        String encodedKey = new BenchmarkTokens().encodedPublicKey();
+        signingKeys = new HashMap<>();
+        for (int i = 0; i < keyCount; i++) {
+            signingKeys.put("key-" + i, encodedKey);
+        }
+    }
+
+    @Benchmark
+    public Object construct() {
+        return new SigningKeyLocatorImpl(signingKeys);
+    }
+
+    @Benchmark
+    public Object constructLazyAndLocateOne() {
+        return SigningKeyLocatorImpl.lazy(signingKeys, Collections.singletonList("key-0"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.onsdigital;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VerifyBenchmark - measures {@link JWTVerifierImpl#verify(String)} for valid tokens and for each kind of rejected
+ * token. Rejected tokens return the exception so that the cost of building it is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VerifyBenchmark {
+
+    private JWTVerifierImpl verifier;
+    private String validToken;
+    private String expiredToken;
+    private String badSignatureToken;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkTokens tokens = new BenchmarkTokens();
+        verifier = JWTVerifierImpl.builder().signingKeys(tokens.signingKeys()).build();
+        validToken = tokens.validToken();
+        expiredToken = tokens.expiredToken();
+        badSignatureToken = tokens.badSignatureToken();
+    }
+
+    @Benchmark
+    public Object verifyValid() {
+        return verifier.verify(validToken);
+    }
+
+    @Benchmark
+    public Object verifyExpired() {
+        return verifyRejected(expiredToken);
+    }
+
+    @Benchmark
+    public Object verifyMalformed() {
+        return verifyRejected(BenchmarkTokens.MALFORMED_TOKEN);
+    }
+
+    @Benchmark
+    public Object verifyBadSignature() {
+        return verifyRejected(badSignatureToken);
+    }
+
+    private Object verifyRejected(String token) {
+        try {
+            return verifier.verify(token);
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.onsdigital;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * AsyncJWTVerifier is the interface for a non-blocking JWT verifier for decoding and verifying signed JWT tokens.
+ */
+public interface AsyncJWTVerifier {
+
+    /**
+     * Decodes and verifies the supplied JWT token without blocking the calling thread.
+     *
+     * @param token the JWT token to verify
+     * @return a future completed with the {@link UserDataPayload} representing the user details from the JWT, or
+     * completed exceptionally with the exception {@link JWTVerifier#verify(String)} would throw
+     */
+    CompletableFuture<UserDataPayload> verifyAsync(String token);
+}
@@ -0,0 +1,160 @@
+package com.github.onsdigital;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AsyncJWTVerifierImpl - a non-blocking verifier that fetches its signing keys from identity api in the background.
+ * <p>
+ * Construction returns straight away and the signing keys are fetched on the executor. Tokens submitted while the
+ * keys are still loading wait for the fetch to finish before being verified. Every verification runs on the
+ * executor, so the calling thread, such as an event loop, is never blocked by a signature check or by a signing key
+ * fetch. If the initial fetch fails, tokens are verified against an empty key set, which triggers a throttled
+ * on-demand fetch of the signing keys.
+ * <p>
+ * Fetching signing keys blocks on http, retries included, so by default the keys are fetched and tokens verified on a
+ * pool of daemon threads shared by every async verifier rather than on the common fork-join pool, where the fetches
+ * would starve unrelated parallel streams and completable futures.
+ * <p>
+ * Call {@link #close()} to stop any background refresh of the signing keys once the verifier is no longer needed.
+ */
+public final class AsyncJWTVerifierImpl implements AsyncJWTVerifier, Closeable {
+
+    private static final int MIN_DEFAULT_THREADS = 2;
+
+    private final JWTVerifierImpl verifier;
+    private final Executor executor;
+    private final CompletableFuture<Void> keysLoaded;
+
+    /**
+     * Initialises a new instance of the {@link AsyncJWTVerifierImpl} that fetches its signing keys and verifies tokens
+     * on the pool of daemon threads shared by async verifiers.
+     *
+     * @param identityAPIURL  the identity api url to fetch jwt keys
+     * @param initialInterval the initial interval in milliseconds to be used for exponential retries
+     * @param maxElapsedTime  the max elapsed time in milliseconds to be used for exponential retries
+     * @param maxInterval     the max interval in milliseconds to be used for exponential retries
+     */
+    public AsyncJWTVerifierImpl(String identityAPIURL, int initialInterval, int maxElapsedTime, int maxInterval) {
+        this(identityAPIURL, initialInterval, maxElapsedTime, maxInterval, defaultExecutor());
+    }
+
+    /**
+     * Initialises a new instance of the {@link AsyncJWTVerifierImpl} that fetches its signing keys and verifies tokens
+     * on the supplied executor.
+     *
+     * @param identityAPIURL  the identity api url to fetch jwt keys
+     * @param initialInterval the initial interval in milliseconds to be used for exponential retries
+     * @param maxElapsedTime  the max elapsed time in milliseconds to be used for exponential retries
+     * @param maxInterval     the max interval in milliseconds to be used for exponential retries
+     * @param executor        the executor to fetch signing keys and verify tokens on
+     */
+    public AsyncJWTVerifierImpl(String identityAPIURL, int initialInterval, int maxElapsedTime, int maxInterval,
+                                Executor executor) {
+        this(new JWTKeyProviderImpl(identityAPIURL, initialInterval, maxElapsedTime, maxInterval, new RequestBuilder()),
+                executor);
+    }
+
+    AsyncJWTVerifierImpl(JWTKeyProvider jwtKeyProvider, Executor executor) {
+        this(SigningKeyLocatorImpl.withoutKeys(jwtKeyProvider, SigningKeyLocatorImpl.DEFAULT_UNKNOWN_KEY_ID_COOLDOWN_MILLIS),
+                executor);
+    }
+
+    private AsyncJWTVerifierImpl(SigningKeyLocatorImpl signingKeyLocator, Executor executor) {
+        this(new JWTVerifierImpl(signingKeyLocator, null, null, VerificationMetrics.NOOP, ValidationOptions.DEFAULT),
+                signingKeyLocator, executor);
+    }
+
+    /**
+     * Initialises a new instance of the {@link AsyncJWTVerifierImpl} that starts fetching the signing keys of the
+     * verifier's key locator on the executor.
+     *
+     * @param verifier          the verifier that verifies each token
+     * @param signingKeyLocator the key locator of the verifier, which must have been created with a key provider
+     * @param executor          the executor to fetch signing keys and verify tokens on
+     */
+    AsyncJWTVerifierImpl(JWTVerifierImpl verifier, SigningKeyLocatorImpl signingKeyLocator, Executor executor) {
+        this.verifier = verifier;
+        this.executor = executor;
+        this.keysLoaded = CompletableFuture.runAsync(() -> loadKeys(signingKeyLocator), executor);
+    }
+
+    /**
+     * Decodes and verifies the supplied JWT token on the executor, once the signing keys have loaded.
+     *
+     * @param token the JWT token to verify
+     * @return a future completed with the {@link UserDataPayload} representing the user details from the JWT
+     */
+    @Override
+    public CompletableFuture<UserDataPayload> verifyAsync(String token) {
+        return keysLoaded.handle((loaded, error) -> token)
+                .thenApplyAsync(verifier::verify, executor);
+    }
+
+    /**
+     * Runs the action once the initial fetch of the signing keys has finished, successfully or not.
+     *
+     * @param action the action to run
+     */
+    void whenReady(Runnable action) {
+        keysLoaded.whenComplete((loaded, error) -> action.run());
+    }
+
+    /**
+     * Stops the background refresh of signing keys, if enabled, including the reconcile of keys started from a
+     * snapshot. The executor is left running: the default executor is shared by every async verifier, and an executor
+     * given to the verifier belongs to the caller. The verifier keeps verifying tokens against the last signing keys
+     * it fetched.
+     */
+    @Override
+    public void close() {
+        verifier.close();
+    }
+
+    /**
+     * Gets the executor async verifiers use unless given another: a pool of daemon threads, one per processor and at
+     * least two, created on first use and shared by every async verifier.
+     *
+     * @return the default executor
+     */
+    static Executor defaultExecutor() {
+        return DefaultExecutor.INSTANCE;
+    }
+
+    /**
+     * Reports whether the initial fetch of the signing keys has finished, successfully or not.
+     *
+     * @return true once tokens no longer wait for the signing keys to load
+     */
+    public boolean isReady() {
+        return keysLoaded.isDone();
+    }
+
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private static void loadKeys(SigningKeyLocatorImpl signingKeyLocator) {
+        try {
+            signingKeyLocator.refresh();
+        } catch (Exception e) {
+            // the key provider may throw any exception, which is carried across the executor by the future
+            throw new CompletionException(e);
+        }
+    }
+
+    private static final class DefaultExecutor {
+        private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+        private static final ExecutorService INSTANCE = Executors.newFixedThreadPool(
+                Math.max(MIN_DEFAULT_THREADS, Runtime.getRuntime().availableProcessors()), runnable -> {
+                    Thread thread = new Thread(runnable, "jwt-async-verifier-" + THREAD_COUNT.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        private DefaultExecutor() {
+        }
+    }
+}
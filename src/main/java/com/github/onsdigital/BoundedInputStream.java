@@ -0,0 +1,67 @@
+package com.github.onsdigital;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * BoundedInputStream - an input stream that fails, rather than reading on, once more than a maximum number of bytes
+ * have been read from the underlying stream.
+ */
+final class BoundedInputStream extends FilterInputStream {
+
+    static final String TOO_LARGE_ERROR = "Response body is larger than the maximum of ";
+
+    private final long maxBytes;
+    private long remaining;
+
+    /**
+     * Construct a new {@link BoundedInputStream}.
+     *
+     * @param in       the underlying stream
+     * @param maxBytes the maximum number of bytes that may be read
+     */
+    BoundedInputStream(InputStream in, long maxBytes) {
+        super(in);
+        this.maxBytes = maxBytes;
+        this.remaining = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            consumed(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        // read one byte past the limit, so a body of exactly the maximum size is not rejected
+        int read = super.read(b, off, (int) Math.min(len, remaining + 1));
+        if (read > 0) {
+            consumed(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(Math.min(n, remaining + 1));
+        consumed(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void consumed(long bytes) throws IOException {
+        remaining -= bytes;
+        if (remaining < 0) {
+            throw new IOException(TOO_LARGE_ERROR + maxBytes + " bytes");
+        }
+    }
+}
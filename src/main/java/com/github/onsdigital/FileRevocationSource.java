@@ -0,0 +1,80 @@
+package com.github.onsdigital;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * FileRevocationSource - a {@link RevocationSource} that reads revocations from a local file with one revocation key
+ * per line. Blank lines and lines starting with '#' are ignored.
+ * <p>
+ * The file is treated as append-only: each fetch reads only the complete lines written since the previous fetch, so a
+ * line still being written is picked up by a later fetch. If the file shrinks, it is assumed to have been replaced and
+ * is read again from the start.
+ */
+public final class FileRevocationSource implements RevocationSource {
+
+    private static final byte NEW_LINE = '\n';
+    private static final String COMMENT = "#";
+
+    private final Path path;
+    private long offset;
+
+    /**
+     * Construct a new {@link FileRevocationSource}.
+     *
+     * @param path the path of the revocations file
+     */
+    public FileRevocationSource(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Reads the lines appended to the file since the last fetch.
+     *
+     * @return the keys of the newly revoked tokens
+     * @throws IOException if the file does not exist or could not be read
+     */
+    @Override
+    public synchronized Collection<String> fetchRevocations() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < offset) {
+                offset = 0;
+            }
+            if (size == offset) {
+                return Collections.emptyList();
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size - offset));
+            while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) >= 0) {
+                // read until the buffer is full or the file ends
+            }
+            byte[] bytes = buffer.array();
+            int end = buffer.position();
+            while (end > 0 && bytes[end - 1] != NEW_LINE) {
+                end--;
+            }
+            offset += end;
+            return parse(new String(bytes, 0, end, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static List<String> parse(String lines) {
+        List<String> revoked = new ArrayList<>();
+        for (String line : lines.split("\n")) {
+            String key = line.trim();
+            if (!key.isEmpty() && !key.startsWith(COMMENT)) {
+                revoked.add(key);
+            }
+        }
+        return revoked;
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.onsdigital;
+
+/**
+ * FlightRecorderEvents - emits Java Flight Recorder events for the verify and signing key fetch paths, so that a
+ * latency spike can be attributed to the signature check, the key lookup, a key fetch and its retries, or the rest of
+ * parsing a token, in JDK Mission Control:
+ * <ul>
+ *     <li>'com.github.onsdigital.Verification' - each verification and its outcome</li>
+ *     <li>'com.github.onsdigital.KeyLocation' - each lookup of a signing key, including any refresh it triggers</li>
+ *     <li>'com.github.onsdigital.SignatureCheck' - each check of an RS256, RS384 or RS512 signature</li>
+ *     <li>'com.github.onsdigital.KeyFetch' - each fetch of the signing keys, with the number of attempts made and the
+ *     status code of the last response</li>
+ *     <li>'com.github.onsdigital.KeySetSwap' - each replacement of the signing keys by a newly fetched set</li>
+ * </ul>
+ * Events are emitted only while a recording enables them, so they can be left in place in production. Each begin
+ * method returns null when its event is disabled, and the matching end method then does nothing. On a JVM without
+ * Flight Recorder every method does nothing.
+ */
+final class FlightRecorderEvents {
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Checks whether the events can be emitted, by loading the class that refers to the jdk.jfr classes.
+     *
+     * @return true if the JVM has Flight Recorder
+     */
+    private static boolean isAvailable() {
+        try {
+            JfrEvents.beginVerification();
+            return true;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    static Object beginVerification() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        return JfrEvents.beginVerification();
+    }
+
+    static void endVerification(Object event, VerificationOutcome outcome) {
+        if (event != null) {
+            JfrEvents.endVerification(event, outcome);
+        }
+    }
+
+    static Object beginKeyLocation(String keyId, String algorithm) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        return JfrEvents.beginKeyLocation(keyId, algorithm);
+    }
+
+    static void endKeyLocation(Object event, boolean found) {
+        if (event != null) {
+            JfrEvents.endKeyLocation(event, found);
+        }
+    }
+
+    static Object beginSignatureCheck(String algorithm) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        return JfrEvents.beginSignatureCheck(algorithm);
+    }
+
+    static void endSignatureCheck(Object event, boolean valid) {
+        if (event != null) {
+            JfrEvents.endSignatureCheck(event, valid);
+        }
+    }
+
+    static Object beginKeyFetch(String url) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        return JfrEvents.beginKeyFetch(url);
+    }
+
+    static void endKeyFetch(Object event, int attempts, int statusCode, boolean success) {
+        if (event != null) {
+            JfrEvents.endKeyFetch(event, attempts, statusCode, success);
+        }
+    }
+
+    static void keySetSwap(int previousKeyCount, int keyCount) {
+        if (AVAILABLE) {
+            JfrEvents.keySetSwap(previousKeyCount, keyCount);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.github.onsdigital;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GroupPolicy - an access policy over the groups of a verified user, such as "a member of any of X or Y, and of all
+ * of A and B", compiled for fast evaluation.
+ * <p>
+ * Each group the policy refers to is interned to an integer ID when the policy is built, and each rule becomes a
+ * bitset over those IDs. The first time a {@link UserDataPayload} is checked against a policy, its groups are compiled
+ * into a bitset that is held on the payload, so later checks of the same payload (for example a cache hit from a
+ * {@link VerifiedTokenCache}) take a few word comparisons per rule, however many groups the user has. A payload holds
+ * the bitset of the last policy it was checked against.
+ * <pre>{@code
+ * GroupPolicy canPublish = GroupPolicy.builder()
+ *         .anyOf("role-admin", "role-publisher")
+ *         .allOf("team-data", "team-publishing")
+ *         .build();
+ * if (canPublish.isAllowed(jwtVerifier.verify(token))) { ... }
+ * }</pre>
+ */
+public final class GroupPolicy {
+
+    static final String NO_RULES_ERROR = "A group policy must have at least one rule";
+    static final String NO_GROUPS_ERROR = "A group policy rule must name at least one group";
+    static final String NULL_GROUP_ERROR = "A group policy rule must not name a null group";
+
+    private static final int ADDRESS_BITS_PER_WORD = 6;
+    private static final int BIT_INDEX_MASK = Long.SIZE - 1;
+
+    private final Map<String, Integer> groupIds;
+    private final int words;
+    private final Rule[] rules;
+
+    private GroupPolicy(Map<String, Integer> groupIds, List<Rule> rules) {
+        this.groupIds = groupIds;
+        this.words = wordsFor(groupIds.size());
+        this.rules = rules.toArray(new Rule[0]);
+    }
+
+    /**
+     * Creates a builder of a {@link GroupPolicy}.
+     *
+     * @return the {@link Builder}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Checks whether a verified user satisfies every rule of the policy.
+     *
+     * @param payload the user details returned by {@link JWTVerifier#verify(String)}
+     * @return true if the user is allowed by the policy
+     */
+    public boolean isAllowed(UserDataPayload payload) {
+        long[] membership = payload.groupMembership(this);
+        for (Rule rule : rules) {
+            if (!rule.matches(membership)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compiles a user's groups into a bitset of the interned IDs of the groups this policy refers to. Groups the
+     * policy does not refer to are ignored.
+     *
+     * @param groups the groups the user is a member of
+     * @return the bitset of the user's groups
+     */
+    long[] compile(List<String> groups) {
+        long[] membership = new long[words];
+        for (String group : groups) {
+            Integer id = groupIds.get(group);
+            if (id != null) {
+                membership[id >>> ADDRESS_BITS_PER_WORD] |= 1L << (id & BIT_INDEX_MASK);
+            }
+        }
+        return membership;
+    }
+
+    private static int wordsFor(int bits) {
+        return (bits + Long.SIZE - 1) >>> ADDRESS_BITS_PER_WORD;
+    }
+
+    /**
+     * A single rule of a policy, requiring any or all of a set of groups.
+     */
+    private static final class Rule {
+        private final long[] mask;
+        private final boolean all;
+
+        private Rule(long[] mask, boolean all) {
+            this.mask = mask;
+            this.all = all;
+        }
+
+        private boolean matches(long[] membership) {
+            for (int i = 0; i < mask.length; i++) {
+                long matched = membership[i] & mask[i];
+                if (all && matched != mask[i]) {
+                    return false;
+                }
+                if (!all && matched != 0) {
+                    return true;
+                }
+            }
+            return all;
+        }
+    }
+
+    /**
+     * Builder of a {@link GroupPolicy}, whose rules must all be satisfied for a user to be allowed.
+     */
+    public static final class Builder {
+        private final Map<String, Integer> groupIds = new HashMap<>();
+        private final List<int[]> ruleGroupIds = new ArrayList<>();
+        private final List<Boolean> ruleRequiresAll = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a rule that the user is a member of at least one of the groups.
+         *
+         * @param groups the IDs of the groups
+         * @return this builder
+         * @throws IllegalArgumentException if no groups are given or any group is null
+         */
+        public Builder anyOf(String... groups) {
+            return addRule(groups, false);
+        }
+
+        /**
+         * Adds a rule that the user is a member of every one of the groups.
+         *
+         * @param groups the IDs of the groups
+         * @return this builder
+         * @throws IllegalArgumentException if no groups are given or any group is null
+         */
+        public Builder allOf(String... groups) {
+            return addRule(groups, true);
+        }
+
+        /**
+         * Compiles the rules added so far into a {@link GroupPolicy}.
+         *
+         * @return the {@link GroupPolicy}
+         * @throws IllegalArgumentException if no rules have been added
+         */
+        public GroupPolicy build() {
+            if (ruleGroupIds.isEmpty()) {
+                throw new IllegalArgumentException(NO_RULES_ERROR);
+            }
+
+            int words = wordsFor(groupIds.size());
+            List<Rule> rules = new ArrayList<>(ruleGroupIds.size());
+            for (int i = 0; i < ruleGroupIds.size(); i++) {
+                long[] mask = new long[words];
+                for (int id : ruleGroupIds.get(i)) {
+                    mask[id >>> ADDRESS_BITS_PER_WORD] |= 1L << (id & BIT_INDEX_MASK);
+                }
+                rules.add(new Rule(mask, ruleRequiresAll.get(i)));
+            }
+            return new GroupPolicy(Collections.unmodifiableMap(new HashMap<>(groupIds)), rules);
+        }
+
+        private Builder addRule(String[] groups, boolean requiresAll) {
+            if (groups == null || groups.length == 0) {
+                throw new IllegalArgumentException(NO_GROUPS_ERROR);
+            }
+            for (String group : groups) {
+                if (group == null) {
+                    throw new IllegalArgumentException(NULL_GROUP_ERROR);
+                }
+            }
+
+            int[] ids = new int[groups.length];
+            for (int i = 0; i < groups.length; i++) {
+                Integer id = groupIds.get(groups[i]);
+                if (id == null) {
+                    id = groupIds.size();
+                    groupIds.put(groups[i], id);
+                }
+                ids[i] = id;
+            }
+            ruleGroupIds.add(ids);
+            ruleRequiresAll.add(requiresAll);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.github.onsdigital;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HedgedKeyProvider - a {@link JWTKeyProvider} that fetches the signing keys from several endpoints serving the same
+ * keys, such as the instances of identity api, so that one slow or failing endpoint does not hold up starting or
+ * refreshing a verifier.
+ * <p>
+ * Each fetch is sent to the healthiest endpoint first. If it has not answered within a percentile of its recent fetch
+ * latencies, a hedged fetch is sent to the next endpoint, and so on; if it fails, the next endpoint is tried straight
+ * away. The first keys returned are used and the fetches still in flight are cancelled, which interrupts their
+ * retries. An endpoint that fails is tried last for a cooldown that doubles with each consecutive failure, and
+ * endpoints are otherwise tried in order of their median fetch latency, to within a factor of two, then the order they
+ * were given in. An endpoint is only tried once those before it have failed or been hedged.
+ * <p>
+ * Fetches run on daemon threads owned by the provider, which exit once idle.
+ */
+public final class HedgedKeyProvider implements JWTKeyProvider {
+
+    static final String ENDPOINTS_REQUIRED_ERROR = "At least one JWT key provider is required to fetch the signing keys";
+    static final String ENDPOINT_REQUIRED_ERROR = "A JWT key provider must not be null";
+    static final String HEDGE_PERCENTILE_ERROR = "The hedge percentile must be greater than zero and at most 100";
+    static final String HEDGE_DELAY_ERROR = "The initial hedge delay must be greater than zero";
+    static final double DEFAULT_HEDGE_PERCENTILE = 95;
+    static final long DEFAULT_INITIAL_HEDGE_DELAY_MILLIS = 1000;
+    static final long FAILURE_COOLDOWN_MILLIS = 1000;
+    static final long MAX_FAILURE_COOLDOWN_MILLIS = 60000;
+    private static final int MAX_COOLDOWN_DOUBLINGS = 16;
+    private static final int LATENCY_SAMPLES = 32;
+    private static final int MIN_LATENCY_SAMPLES = 4;
+    private static final double MEDIAN = 50;
+    private static final double PERCENT = 100;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final Endpoint[] endpoints;
+    private final double hedgePercentile;
+    private final long initialHedgeDelayMillis;
+    private final VerificationMetrics metrics;
+    private final ExecutorService fetchExecutor;
+    private volatile JWTKeyProvider lastAnswered;
+
+    /**
+     * Construct a new {@link HedgedKeyProvider} that hedges a fetch once it has taken longer than 95% of the recent
+     * fetches from the same endpoint, or 1 second until enough fetches have been made.
+     *
+     * @param keyProviders the providers fetching the signing keys from each endpoint, in order of preference
+     * @throws IllegalArgumentException if there are no providers or a provider is null
+     */
+    public HedgedKeyProvider(List<? extends JWTKeyProvider> keyProviders) {
+        this(keyProviders, DEFAULT_HEDGE_PERCENTILE, DEFAULT_INITIAL_HEDGE_DELAY_MILLIS, VerificationMetrics.NOOP);
+    }
+
+    /**
+     * Construct a new {@link HedgedKeyProvider}.
+     *
+     * @param keyProviders            the providers fetching the signing keys from each endpoint, in order of preference
+     * @param hedgePercentile         the percentile of an endpoint's recent fetch latencies after which a hedged fetch
+     *                                is sent to the next endpoint
+     * @param initialHedgeDelayMillis the delay in milliseconds before a hedged fetch is sent, until an endpoint has
+     *                                enough recent fetches for the percentile
+     * @param metrics                 the sink for signing key refresh metrics, recorded once for each call to
+     *                                {@link #getJwtKeys()} however many endpoints it tries
+     * @throws IllegalArgumentException if there are no providers, a provider or the metrics is null, or the percentile
+     *                                  or initial delay is out of range
+     */
+    public HedgedKeyProvider(List<? extends JWTKeyProvider> keyProviders, double hedgePercentile,
+                             long initialHedgeDelayMillis, VerificationMetrics metrics) {
+        if (keyProviders == null || keyProviders.isEmpty()) {
+            throw new IllegalArgumentException(ENDPOINTS_REQUIRED_ERROR);
+        }
+        if (!(hedgePercentile > 0 && hedgePercentile <= PERCENT)) {
+            throw new IllegalArgumentException(HEDGE_PERCENTILE_ERROR);
+        }
+        if (initialHedgeDelayMillis <= 0) {
+            throw new IllegalArgumentException(HEDGE_DELAY_ERROR);
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException(JWTVerifierBuilder.COMPONENT_REQUIRED_ERROR);
+        }
+
+        this.endpoints = new Endpoint[keyProviders.size()];
+        for (int i = 0; i < endpoints.length; i++) {
+            JWTKeyProvider keyProvider = keyProviders.get(i);
+            if (keyProvider == null) {
+                throw new IllegalArgumentException(ENDPOINT_REQUIRED_ERROR);
+            }
+            endpoints[i] = new Endpoint(keyProvider);
+        }
+        this.hedgePercentile = hedgePercentile;
+        this.initialHedgeDelayMillis = initialHedgeDelayMillis;
+        this.metrics = metrics;
+        this.fetchExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "jwt-key-fetch-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Fetches the signing keys from the first endpoint to return them, hedging and failing over between endpoints.
+     *
+     * @return the signing keys used for decoding JWT tokens
+     * @throws Exception the failure of the last endpoint tried, with the failures of the others suppressed, if every
+     *                   endpoint failed
+     */
+    @Override
+    public Map<String, String> getJwtKeys() throws Exception {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Map<String, String> jwtKeys = fetchJwtKeys();
+            success = true;
+            return jwtKeys;
+        } finally {
+            metrics.recordKeyRefresh(System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Gets the max age reported by the endpoint that answered the last fetch.
+     *
+     * @return the max age in milliseconds, or zero or a negative value if it is not known
+     */
+    @Override
+    public long getMaxAgeMillis() {
+        JWTKeyProvider answered = lastAnswered;
+        if (answered == null) {
+            return -1;
+        }
+        return answered.getMaxAgeMillis();
+    }
+
+    /**
+     * Gets the algorithms declared for the keys by the endpoint that answered the last fetch.
+     *
+     * @return the {@link Map} of key IDs to declared algorithms, without the keys that declare none
+     */
+    @Override
+    public Map<String, String> getKeyAlgorithms() {
+        JWTKeyProvider answered = lastAnswered;
+        if (answered == null) {
+            return Collections.emptyMap();
+        }
+        return answered.getKeyAlgorithms();
+    }
+
+    private Map<String, String> fetchJwtKeys() throws Exception {
+        Endpoint[] ranked = rank(System.currentTimeMillis());
+        long hedgeDelayMillis = ranked[0].hedgeDelayMillis();
+        AtomicBoolean settled = new AtomicBoolean();
+        CompletionService<Map<String, String>> completion = new ExecutorCompletionService<>(fetchExecutor);
+        List<Future<Map<String, String>>> fetches = new ArrayList<>(ranked.length);
+        Exception failure = null;
+        try {
+            fetches.add(completion.submit(() -> ranked[0].fetch(settled)));
+            int inFlight = 1;
+            while (inFlight > 0) {
+                Future<Map<String, String>> done;
+                if (fetches.size() < ranked.length) {
+                    done = completion.poll(hedgeDelayMillis, TimeUnit.MILLISECONDS);
+                    if (done == null) {
+                        Endpoint hedge = ranked[fetches.size()];
+                        fetches.add(completion.submit(() -> hedge.fetch(settled)));
+                        inFlight++;
+                        continue;
+                    }
+                } else {
+                    done = completion.take();
+                }
+                inFlight--;
+
+                try {
+                    return done.get();
+                } catch (ExecutionException e) {
+                    failure = suppress(failure, e.getCause());
+                    if (fetches.size() < ranked.length) {
+                        Endpoint failover = ranked[fetches.size()];
+                        fetches.add(completion.submit(() -> failover.fetch(settled)));
+                        inFlight++;
+                    }
+                }
+            }
+            throw failure;
+        } finally {
+            settled.set(true);
+            for (Future<Map<String, String>> fetch : fetches) {
+                fetch.cancel(true);
+            }
+        }
+    }
+
+    private Endpoint[] rank(long now) {
+        // snapshot the health of each endpoint, as concurrent fetches may update it while sorting
+        long[] cooldowns = new long[endpoints.length];
+        long[] medianLatencies = new long[endpoints.length];
+        Integer[] order = new Integer[endpoints.length];
+        for (int i = 0; i < endpoints.length; i++) {
+            cooldowns[i] = endpoints[i].cooldownRemaining(now);
+            medianLatencies[i] = endpoints[i].latencyRank();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong((Integer i) -> cooldowns[i])
+                .thenComparingLong(i -> medianLatencies[i])
+                .thenComparingInt(i -> i));
+
+        Endpoint[] ranked = new Endpoint[endpoints.length];
+        for (int i = 0; i < ranked.length; i++) {
+            ranked[i] = endpoints[order[i]];
+        }
+        return ranked;
+    }
+
+    private static Exception suppress(Exception failure, Throwable cause) {
+        Exception exception;
+        if (cause instanceof Exception) {
+            exception = (Exception) cause;
+        } else {
+            exception = new Exception(cause);
+        }
+        if (failure != null) {
+            exception.addSuppressed(failure);
+        }
+        return exception;
+    }
+
+    /**
+     * The key provider for an endpoint, and the health of the endpoint as seen by recent fetches.
+     */
+    private final class Endpoint {
+        private final JWTKeyProvider keyProvider;
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+        private int sampleCount;
+        private int consecutiveFailures;
+        private long cooldownUntil;
+
+        private Endpoint(JWTKeyProvider keyProvider) {
+            this.keyProvider = keyProvider;
+        }
+
+        /**
+         * Fetches the signing keys and records the outcome. A fetch cancelled because another endpoint answered first
+         * records its latency so far, so a slow endpoint is ranked lower, but is not counted as a failure.
+         */
+        @SuppressFBWarnings(value = "REC_CATCH_EXCEPTION", justification = "Any failure of the endpoint is recorded")
+        @SuppressWarnings("checkstyle:IllegalCatch")
+        private Map<String, String> fetch(AtomicBoolean settled) throws Exception {
+            long start = System.nanoTime();
+            try {
+                Map<String, String> keys = keyProvider.getJwtKeys();
+                if (!settled.get()) {
+                    lastAnswered = keyProvider;
+                }
+                succeeded(System.nanoTime() - start);
+                return keys;
+            } catch (Exception e) {
+                // the endpoint may throw any exception, each of which is recorded against it and rethrown
+                if (settled.get()) {
+                    recordLatency(System.nanoTime() - start);
+                } else {
+                    failed(System.currentTimeMillis());
+                }
+                throw e;
+            }
+        }
+
+        private synchronized void succeeded(long latencyNanos) {
+            consecutiveFailures = 0;
+            cooldownUntil = 0;
+            recordLatency(latencyNanos);
+        }
+
+        private synchronized void failed(long now) {
+            consecutiveFailures++;
+            long cooldown = FAILURE_COOLDOWN_MILLIS << Math.min(consecutiveFailures - 1, MAX_COOLDOWN_DOUBLINGS);
+            cooldownUntil = now + Math.min(cooldown, MAX_FAILURE_COOLDOWN_MILLIS);
+        }
+
+        private synchronized void recordLatency(long latencyNanos) {
+            latencies[sampleCount % LATENCY_SAMPLES] = latencyNanos;
+            sampleCount++;
+        }
+
+        private synchronized long cooldownRemaining(long now) {
+            return Math.max(0, cooldownUntil - now);
+        }
+
+        /**
+         * Ranks the endpoint by the power of two of its median latency, so that endpoints with similar latencies keep
+         * the order they were given in rather than alternating, and an endpoint that has never answered ranks last.
+         */
+        private synchronized long latencyRank() {
+            if (sampleCount == 0) {
+                return Long.MAX_VALUE;
+            }
+            return Long.SIZE - Long.numberOfLeadingZeros(latencyPercentileNanos(MEDIAN));
+        }
+
+        private synchronized long hedgeDelayMillis() {
+            if (sampleCount < MIN_LATENCY_SAMPLES) {
+                return initialHedgeDelayMillis;
+            }
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(latencyPercentileNanos(hedgePercentile)));
+        }
+
+        private long latencyPercentileNanos(double percentile) {
+            int count = Math.min(sampleCount, LATENCY_SAMPLES);
+            if (count == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / PERCENT * count);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.onsdigital;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * InMemoryRevocationSource - a {@link RevocationSource} that tokens are revoked on directly, for example by a
+ * logout handler in the same process or a listener on a message queue. Tokens may be revoked from any thread.
+ */
+public final class InMemoryRevocationSource implements RevocationSource {
+
+    static final String REVOCATION_KEY_ERROR = "A revocation key must not be null or empty";
+
+    private final Queue<String> pending;
+
+    /**
+     * Construct a new {@link InMemoryRevocationSource} with no revoked tokens.
+     */
+    public InMemoryRevocationSource() {
+        this.pending = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Revokes a token, which is returned by the next fetch.
+     *
+     * @param key the token's 'jti' claim, or a key built by {@link RevocationList#sessionKey(String, long)}
+     * @throws IllegalArgumentException if the key is null or empty
+     */
+    public void revoke(String key) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException(REVOCATION_KEY_ERROR);
+        }
+        pending.add(key);
+    }
+
+    @Override
+    public Collection<String> fetchRevocations() {
+        List<String> revoked = new ArrayList<>();
+        String key;
+        while ((key = pending.poll()) != null) {
+            revoked.add(key);
+        }
+        return revoked;
+    }
+}
@@ -0,0 +1,186 @@
+package com.github.onsdigital;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * InMemoryVerificationMetrics - a lightweight, in-library {@link VerificationMetrics} registry holding per-outcome
+ * counters, a verification latency histogram and signing key refresh counters.
+ * <p>
+ * Every counter is a {@link LongAdder} allocated up front, so recording neither allocates nor contends under
+ * concurrent load. The latency histogram has power of two buckets, from 1 microsecond up to a final overflow bucket
+ * for anything over 1 second, so percentiles read from it are accurate to within a factor of two.
+ */
+public final class InMemoryVerificationMetrics implements VerificationMetrics {
+
+    static final int LATENCY_BUCKETS = 22;
+    static final String PERCENTILE_ERROR = "Percentile must be between 0 and 100";
+    private static final int SMALLEST_BUCKET_SHIFT = 10;
+    private static final double MAX_PERCENTILE = 100.0;
+
+    private final LongAdder[] outcomes = newAdders(VerificationOutcome.values().length);
+    private final LongAdder[] latencyBuckets = newAdders(LATENCY_BUCKETS);
+    private final LongAdder latencyTotalNanos = new LongAdder();
+    private final LongAdder keyRefreshes = new LongAdder();
+    private final LongAdder keyRefreshFailures = new LongAdder();
+    private final LongAdder keyRefreshTotalNanos = new LongAdder();
+
+    /**
+     * Construct a new {@link InMemoryVerificationMetrics} with every counter at zero.
+     */
+    public InMemoryVerificationMetrics() {
+        // counters are initialised by their field declarations
+    }
+
+    @Override
+    public void recordVerification(VerificationOutcome outcome, long durationNanos) {
+        outcomes[outcome.ordinal()].increment();
+        latencyBuckets[bucketOf(durationNanos)].increment();
+        latencyTotalNanos.add(durationNanos);
+    }
+
+    @Override
+    public void recordKeyRefresh(long durationNanos, boolean success) {
+        keyRefreshes.increment();
+        keyRefreshTotalNanos.add(durationNanos);
+        if (!success) {
+            keyRefreshFailures.increment();
+        }
+    }
+
+    /**
+     * Gets the number of verifications recorded with the outcome.
+     *
+     * @param outcome the verification outcome
+     * @return the number of verifications with the outcome
+     */
+    public long getCount(VerificationOutcome outcome) {
+        return outcomes[outcome.ordinal()].sum();
+    }
+
+    /**
+     * Gets the number of verifications recorded, whatever their outcome.
+     *
+     * @return the total number of verifications
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (LongAdder bucket : latencyBuckets) {
+            total += bucket.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Gets the mean verification latency.
+     *
+     * @return the mean verification latency in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getMeanLatencyNanos() {
+        long count = getTotalCount();
+        if (count == 0) {
+            return 0;
+        }
+        return latencyTotalNanos.sum() / count;
+    }
+
+    /**
+     * Gets an upper bound for the verification latency at the percentile, read from the latency histogram.
+     *
+     * @param percentile the percentile, e.g. 99.9
+     * @return the upper bound of the histogram bucket holding the percentile in nanoseconds, {@link Long#MAX_VALUE}
+     * if it falls in the overflow bucket, or 0 if nothing has been recorded
+     */
+    public long getLatencyPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > MAX_PERCENTILE) {
+            throw new IllegalArgumentException(PERCENTILE_ERROR);
+        }
+
+        long[] counts = getLatencyBucketCounts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(percentile / MAX_PERCENTILE * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return getLatencyBucketUpperBoundNanos(i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Gets a snapshot of the verification latency histogram.
+     *
+     * @return the number of verifications in each latency bucket
+     */
+    public long[] getLatencyBucketCounts() {
+        long[] counts = new long[LATENCY_BUCKETS];
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            counts[i] = latencyBuckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the inclusive upper bound of a latency bucket.
+     *
+     * @param bucket the index of the latency bucket
+     * @return the upper bound of the bucket in nanoseconds, or {@link Long#MAX_VALUE} for the overflow bucket
+     */
+    public static long getLatencyBucketUpperBoundNanos(int bucket) {
+        if (bucket >= LATENCY_BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        return (1L << (bucket + SMALLEST_BUCKET_SHIFT)) - 1;
+    }
+
+    /**
+     * Gets the number of signing key fetches recorded.
+     *
+     * @return the number of signing key fetches, successful or not
+     */
+    public long getKeyRefreshCount() {
+        return keyRefreshes.sum();
+    }
+
+    /**
+     * Gets the number of signing key fetches that failed.
+     *
+     * @return the number of failed signing key fetches
+     */
+    public long getKeyRefreshFailureCount() {
+        return keyRefreshFailures.sum();
+    }
+
+    /**
+     * Gets the total time spent fetching signing keys.
+     *
+     * @return the total signing key fetch time in nanoseconds
+     */
+    public long getKeyRefreshTotalNanos() {
+        return keyRefreshTotalNanos.sum();
+    }
+
+    static int bucketOf(long durationNanos) {
+        if (durationNanos <= 0) {
+            return 0;
+        }
+        int bucket = Long.SIZE - Long.numberOfLeadingZeros(durationNanos >>> SMALLEST_BUCKET_SHIFT);
+        return Math.min(bucket, LATENCY_BUCKETS - 1);
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
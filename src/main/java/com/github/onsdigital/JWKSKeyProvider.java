@@ -0,0 +1,154 @@
+package com.github.onsdigital;
+
+import com.google.api.client.http.HttpResponse;
+import com.google.gson.stream.JsonReader;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JWKSKeyProvider - Fetches JWT signing keys from a standard JSON Web Key Set (RFC 7517) endpoint, such as the
+ * 'jwks_uri' of an OpenID Connect issuer.
+ * <p>
+ * The key set is parsed as a stream, one key at a time, and each public key is built directly from its JWK parameters
+ * ('n'/'e' for RSA keys, 'crv'/'x'/'y' for EC keys and 'crv'/'x' for Ed25519 keys). Keys are skipped rather than
+ * failing the fetch if:
+ * <ul>
+ *     <li>they have no 'kid', as tokens are matched to keys by key ID</li>
+ *     <li>their 'use' is not 'sig', or their 'key_ops' do not include 'verify'</li>
+ *     <li>they are of an unsupported type or curve, or their parameters are not a valid public key</li>
+ *     <li>the JVM cannot decode their type of key, such as Ed25519 keys before Java 15, so that they do not fail the
+ *     whole key set</li>
+ *     <li>their 'alg' is not one the type of key can verify</li>
+ * </ul>
+ * The 'alg' of each key that declares one is available from {@link #getKeyAlgorithms()}, so that the key only
+ * verifies tokens signed with exactly that algorithm. Fetches are conditional requests and honour
+ * 'Cache-Control: max-age', as for {@link JWTKeyProviderImpl}.
+ */
+public final class JWKSKeyProvider extends JWTKeyProviderImpl {
+
+    static final String KEYS_MEMBER = "keys";
+
+    private final String jwksUrl;
+    private volatile Map<String, String> keyAlgorithms = Collections.emptyMap();
+
+    /**
+     * Initialises a new instance of the {@link JWKSKeyProvider}.
+     *
+     * @param jwksUrl         the full url of the JWK Set
+     * @param initialInterval the initial interval in milliseconds to be used for exponential retries
+     * @param maxElapsedTime  the max elapsed time in milliseconds to be used for exponential retries
+     * @param maxInterval     the max interval in milliseconds to be used for exponential retries
+     * @param requestBuilder  the http request builder to be used to fetch the keys
+     */
+    public JWKSKeyProvider(String jwksUrl, int initialInterval, int maxElapsedTime, int maxInterval,
+                           RequestBuilder requestBuilder) {
+        this(jwksUrl, initialInterval, maxElapsedTime, maxInterval, requestBuilder, VerificationMetrics.NOOP);
+    }
+
+    /**
+     * Initialises a new instance of the {@link JWKSKeyProvider} that records the duration and outcome of every
+     * signing key fetch.
+     *
+     * @param jwksUrl         the full url of the JWK Set
+     * @param initialInterval the initial interval in milliseconds to be used for exponential retries
+     * @param maxElapsedTime  the max elapsed time in milliseconds to be used for exponential retries
+     * @param maxInterval     the max interval in milliseconds to be used for exponential retries
+     * @param requestBuilder  the http request builder to be used to fetch the keys
+     * @param metrics         the sink for signing key refresh metrics
+     */
+    public JWKSKeyProvider(String jwksUrl, int initialInterval, int maxElapsedTime, int maxInterval,
+                           RequestBuilder requestBuilder, VerificationMetrics metrics) {
+        super(jwksUrl, initialInterval, maxElapsedTime, maxInterval, requestBuilder, metrics);
+        this.jwksUrl = jwksUrl;
+    }
+
+    @Override
+    String keysEndpoint() {
+        return jwksUrl;
+    }
+
+    /**
+     * Gets the 'alg' of each of the last fetched keys that declares one.
+     *
+     * @return the {@link Map} of key IDs to declared algorithms, without the keys that declare none
+     */
+    @Override
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The map is made unmodifiable when the keys are parsed")
+    public Map<String, String> getKeyAlgorithms() {
+        return keyAlgorithms;
+    }
+
+    @Override
+    Map<String, String> parseKeys(HttpResponse response) throws IOException {
+        try (JsonReader reader = jsonReader(response)) {
+            Map<String, String> algorithms = new HashMap<>();
+            Map<String, String> signingKeys = readKeySet(reader, algorithms);
+            checkEndOfDocument(reader);
+            keyAlgorithms = Collections.unmodifiableMap(algorithms);
+            return signingKeys;
+        } catch (IllegalStateException e) {
+            // thrown by the reader when the JSON is well formed but not a JWK Set
+            throw new IOException(MALFORMED_RESPONSE_ERROR + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the usable signing keys from a JWK Set.
+     *
+     * @param reader     the reader, positioned at the start of the JWK Set
+     * @param algorithms the map the declared 'alg' of each usable key that has one is added to, keyed by key ID
+     * @return the base64 encoded X.509 public signing keys, keyed by key ID
+     * @throws IOException if the JWK Set is not well formed
+     */
+    static Map<String, String> readKeySet(JsonReader reader, Map<String, String> algorithms) throws IOException {
+        Map<String, String> signingKeys = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!KEYS_MEMBER.equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                JsonWebKey jwk = JsonWebKey.read(reader);
+                String signingKey = signingKey(jwk);
+                if (signingKey != null && signingKeys.putIfAbsent(jwk.getKeyId(), signingKey) == null
+                        && jwk.getAlgorithm() != null) {
+                    algorithms.put(jwk.getKeyId(), jwk.getAlgorithm());
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return signingKeys;
+    }
+
+    private static String signingKey(JsonWebKey jwk) {
+        if (jwk.getKeyId() == null || !jwk.isForVerification()) {
+            return null;
+        }
+
+        byte[] encodedKey;
+        try {
+            encodedKey = jwk.toX509();
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            return null;
+        }
+        if (encodedKey == null) {
+            return null;
+        }
+
+        SigningKeyType type = SigningKeyType.of(encodedKey);
+        if (type == null || !type.isSupportedByJvm()
+                || jwk.getAlgorithm() != null && !type.supports(jwk.getAlgorithm())) {
+            return null;
+        }
+        return Base64.getEncoder().encodeToString(encodedKey);
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.onsdigital;
 
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -8,5 +9,24 @@ import java.util.Map;
 
 public interface JWTKeyProvider {
     Map<String, String> getJwtKeys() throws Exception;
-}
 
+    /**
+     * Gets how long the signing keys returned by the last call to {@link #getJwtKeys()} may be used before they should
+     * be fetched again, for example from the 'Cache-Control: max-age' of the response they were fetched in.
+     *
+     * @return the max age in milliseconds, or zero or a negative value if the provider does not know
+     */
+    default long getMaxAgeMillis() {
+        return -1;
+    }
+
+    /**
+     * Gets the JWS 'alg' declared for each of the signing keys returned by the last call to {@link #getJwtKeys()},
+     * such as the 'alg' of a JWK. A key that declares an algorithm only verifies tokens signed with exactly it.
+     *
+     * @return the {@link Map} of key IDs to declared algorithms, without the keys that declare none
+     */
+    default Map<String, String> getKeyAlgorithms() {
+        return Collections.emptyMap();
+    }
+}
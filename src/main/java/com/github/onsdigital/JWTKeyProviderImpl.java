@@ -1,24 +1,53 @@
 package com.github.onsdigital;
 
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpMediaType;
 import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpStatusCodes;
-import com.google.api.client.util.Data;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * JWTKeyProviderImpl - Fetches JWT signing keys from a service according to the configs passed to it.
+ * <p>
+ * Each fetch after the first is a conditional request, sending the 'ETag' and 'Last-Modified' of the last keys
+ * fetched as 'If-None-Match' and 'If-Modified-Since'. A '304 Not Modified' response returns the very same map instance
+ * as the previous fetch, so callers can tell the keys are unchanged without comparing them. The 'max-age' of the
+ * response's 'Cache-Control' header is available from {@link #getMaxAgeMillis()}.
+ * <p>
+ * The response is parsed as a stream straight into the map of keys, and is rejected as soon as it is found to be
+ * malformed or larger than {@link #MAX_RESPONSE_BYTES}. Any other status fails the fetch with the status code and at
+ * most {@link #MAX_ERROR_BODY_BYTES} of the response body.
  */
 public class JWTKeyProviderImpl implements JWTKeyProvider {
+    static final int MAX_RESPONSE_BYTES = 1024 * 1024;
+    static final int MAX_ERROR_BODY_BYTES = 4 * 1024;
+    static final String MALFORMED_RESPONSE_ERROR = "Malformed jwt keys response: ";
+    static final String FETCH_FAILED_ERROR = "Failed to get jwt keys: status ";
     private static final String JWT_KEYS_ROUTE = "/v1/jwt-keys";
+    private static final String MAX_AGE_DIRECTIVE = "max-age=";
+    private static final long NO_MAX_AGE = -1;
     private RequestBuilder requestBuilder;
     private String identityApiUrl;
     private int initialInterval;
     private int maxElapsedTime;
     private int maxInterval;
+    private VerificationMetrics metrics;
+    private volatile FetchedKeys lastFetched;
+    private volatile long maxAgeMillis = NO_MAX_AGE;
 
     /**
      * Initialises a new instance of the {@link JWTKeyProviderImpl}.
@@ -30,12 +59,43 @@ public class JWTKeyProviderImpl implements JWTKeyProvider {
      * @param requestBuilder  the http request builder to be used to fetch the keys
      * @throws IllegalArgumentException if the public signing keys provided are invalid
      */
-    JWTKeyProviderImpl(String url, int initialInterval, int maxElapsedTime, int maxInterval, RequestBuilder requestBuilder) {
+    public JWTKeyProviderImpl(String url, int initialInterval, int maxElapsedTime, int maxInterval, RequestBuilder requestBuilder) {
+        this(url, initialInterval, maxElapsedTime, maxInterval, requestBuilder, VerificationMetrics.NOOP);
+    }
+
+    /**
+     * Initialises a new instance of the {@link JWTKeyProviderImpl} that fetches the signing keys with a default
+     * {@link RequestBuilder} and records the duration and outcome of every signing key fetch.
+     *
+     * @param url             used to fetch the signing keys
+     * @param initialInterval the initial interval in milliseconds to be used for exponential retries
+     * @param maxElapsedTime  the max elapsed time in milliseconds to be used for exponential retries
+     * @param maxInterval     the max interval in milliseconds to be used for exponential retries
+     * @param metrics         the sink for signing key refresh metrics
+     */
+    JWTKeyProviderImpl(String url, int initialInterval, int maxElapsedTime, int maxInterval, VerificationMetrics metrics) {
+        this(url, initialInterval, maxElapsedTime, maxInterval, new RequestBuilder(), metrics);
+    }
+
+    /**
+     * Initialises a new instance of the {@link JWTKeyProviderImpl} that records the duration and outcome of every
+     * signing key fetch.
+     *
+     * @param url             used to fetch the signing keys
+     * @param initialInterval the initial interval in milliseconds to be used for exponential retries
+     * @param maxElapsedTime  the max elapsed time in milliseconds to be used for exponential retries
+     * @param maxInterval     the max interval in milliseconds to be used for exponential retries
+     * @param requestBuilder  the http request builder to be used to fetch the keys
+     * @param metrics         the sink for signing key refresh metrics
+     */
+    public JWTKeyProviderImpl(String url, int initialInterval, int maxElapsedTime, int maxInterval, RequestBuilder requestBuilder,
+                              VerificationMetrics metrics) {
         this.identityApiUrl = url;
         this.initialInterval = initialInterval;
         this.maxElapsedTime = maxElapsedTime;
         this.maxInterval = maxInterval;
         this.requestBuilder = requestBuilder;
+        this.metrics = metrics;
     }
 
 
@@ -47,36 +107,231 @@ public class JWTKeyProviderImpl implements JWTKeyProvider {
      */
     @Override
     public Map<String, String> getJwtKeys() throws Exception {
+        long start = System.nanoTime();
+        Object event = FlightRecorderEvents.beginKeyFetch(identityApiUrl);
+        FetchAttempts attempts = new FetchAttempts();
+        boolean success = false;
+        try {
+            Map<String, String> jwtKeys = fetchJwtKeys(attempts);
+            success = true;
+            return jwtKeys;
+        } finally {
+            metrics.recordKeyRefresh(System.nanoTime() - start, success);
+            FlightRecorderEvents.endKeyFetch(event, attempts.count, attempts.statusCode, success);
+        }
+    }
+
+    /**
+     * Gets the 'Cache-Control: max-age' of the last response from the server.
+     *
+     * @return the max age in milliseconds, or a negative value if the last response did not allow caching
+     */
+    @Override
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    private Map<String, String> fetchJwtKeys(FetchAttempts attempts) throws Exception {
         HttpResponse response = null;
         try {
-            String jwtKeysEndpoint = identityApiUrl + JWT_KEYS_ROUTE;
-            HttpRequest request = requestBuilder.getRequest(jwtKeysEndpoint, initialInterval, maxElapsedTime, maxInterval);
+            HttpRequest request = requestBuilder.getRequest(keysEndpoint(), initialInterval, maxElapsedTime, maxInterval);
+            FetchedKeys previous = lastFetched;
+            if (previous != null) {
+                request.getHeaders()
+                        .setIfNoneMatch(previous.eTag)
+                        .setIfModifiedSince(previous.lastModified);
+            }
+            request.setThrowExceptionOnExecuteError(false);
+            request.setInterceptor(attempts.counting(request.getInterceptor()));
             response = request.execute();
 
             if (response == null) {
                 throw new Exception("Failed to get response from server:" + identityApiUrl);
             }
+            int statusCode = response.getStatusCode();
+            attempts.statusCode = statusCode;
+
+            HttpHeaders headers = response.getHeaders();
+            maxAgeMillis = maxAgeMillis(headers.getCacheControl());
+            if (previous != null && statusCode == HttpStatusCodes.STATUS_CODE_NOT_MODIFIED) {
+                return previous.keys;
+            }
 
-            if (response.getStatusCode() != HttpStatusCodes.STATUS_CODE_OK) {
-                throw new Exception("Failed to get jwt keys:" + response.parseAsString());
+            if (statusCode != HttpStatusCodes.STATUS_CODE_OK) {
+                throw new Exception(FETCH_FAILED_ERROR + statusCode + ": " + errorBody(response));
             }
-            Map<String, String> jwtKeys = getJwtKeysFromResponse(response);
+            Map<String, String> jwtKeys = parseKeys(response);
             if (jwtKeys.isEmpty()) {
                 throw new Exception("JWT keys not found in the response");
             }
-            return jwtKeys;
+            lastFetched = new FetchedKeys(jwtKeys, headers.getETag(), headers.getLastModified());
+            return lastFetched.keys;
         } finally {
             if (response != null) {
-                response.disconnect();
+                // release the connection back to the transport's keep-alive pool rather than closing it
+                response.ignore();
             }
         }
     }
 
-    private Map<String, String> getJwtKeysFromResponse(HttpResponse response) throws IOException {
-        Map<String, String> signingKeys = new HashMap<>();
-        response.parseAs(Data.newMapInstance(HashMap.class).getClass())
-                .forEach((key, value) -> signingKeys.put(String.valueOf(key), String.valueOf(value)));
-        return signingKeys;
+    /**
+     * Gets the endpoint the signing keys are fetched from.
+     *
+     * @return the url of the signing keys endpoint
+     */
+    String keysEndpoint() {
+        return identityApiUrl + JWT_KEYS_ROUTE;
+    }
+
+    /**
+     * Parses the signing keys from a successful response.
+     *
+     * @param response the response from the signing keys endpoint
+     * @return the base64 encoded public signing keys, keyed by key ID
+     * @throws IOException if the response could not be read or parsed
+     */
+    Map<String, String> parseKeys(HttpResponse response) throws IOException {
+        try (JsonReader reader = jsonReader(response)) {
+            Map<String, String> signingKeys = new HashMap<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String keyId = reader.nextName();
+                if (reader.peek() != JsonToken.STRING) {
+                    throw new IOException(MALFORMED_RESPONSE_ERROR + "the key '" + keyId + "' is not a string");
+                }
+                signingKeys.put(keyId, reader.nextString());
+            }
+            reader.endObject();
+            checkEndOfDocument(reader);
+            return signingKeys;
+        } catch (IllegalStateException e) {
+            // thrown by the reader when the JSON is well formed but not the expected structure
+            throw new IOException(MALFORMED_RESPONSE_ERROR + e.getMessage(), e);
+        }
     }
 
+    /**
+     * Opens a streaming JSON reader on the body of a response, which fails once more than
+     * {@link #MAX_RESPONSE_BYTES} have been read. A response whose 'Content-Length' is already larger is rejected
+     * without reading any of its body.
+     *
+     * @param response the response to read
+     * @return the reader of the response body
+     * @throws IOException if the response is too large or has no body
+     */
+    static JsonReader jsonReader(HttpResponse response) throws IOException {
+        Long contentLength = response.getHeaders().getContentLength();
+        if (contentLength != null && contentLength > MAX_RESPONSE_BYTES) {
+            throw new IOException(BoundedInputStream.TOO_LARGE_ERROR + MAX_RESPONSE_BYTES + " bytes");
+        }
+        InputStream content = response.getContent();
+        if (content == null) {
+            throw new IOException(MALFORMED_RESPONSE_ERROR + "the response has no body");
+        }
+        return new JsonReader(new InputStreamReader(new BoundedInputStream(content, MAX_RESPONSE_BYTES),
+                charset(response)));
+    }
+
+    /**
+     * Reads the start of the body of an error response, so that a large error page is neither read in full nor copied
+     * into the exception message.
+     *
+     * @param response the error response
+     * @return at most {@link #MAX_ERROR_BODY_BYTES} of the response body, or an empty string if it has no body
+     * @throws IOException if the response could not be read
+     */
+    static String errorBody(HttpResponse response) throws IOException {
+        InputStream content = response.getContent();
+        if (content == null) {
+            return "";
+        }
+        byte[] body = new byte[MAX_ERROR_BODY_BYTES];
+        int length = 0;
+        int read;
+        while (length < body.length && (read = content.read(body, length, body.length - length)) > 0) {
+            length += read;
+        }
+        return new String(body, 0, length, charset(response));
+    }
+
+    private static Charset charset(HttpResponse response) {
+        // JSON is UTF-8 unless the response says otherwise
+        HttpMediaType mediaType = response.getMediaType();
+        if (mediaType != null && mediaType.getCharsetParameter() != null) {
+            return mediaType.getCharsetParameter();
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Checks that nothing but whitespace follows the JSON document that has been read.
+     *
+     * @param reader the reader, positioned after the end of the document
+     * @throws IOException if there is more content after the document
+     */
+    static void checkEndOfDocument(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new IOException(MALFORMED_RESPONSE_ERROR + "unexpected content after the JSON document");
+        }
+    }
+
+    /**
+     * Parses the 'max-age' directive of a 'Cache-Control' header.
+     *
+     * @param cacheControl the value of the 'Cache-Control' header, which may be null
+     * @return the max age in milliseconds, or a negative value if there is no max age or caching is not allowed
+     */
+    static long maxAgeMillis(String cacheControl) {
+        if (cacheControl == null) {
+            return NO_MAX_AGE;
+        }
+
+        long maxAge = NO_MAX_AGE;
+        for (String directive : cacheControl.split(",")) {
+            String value = directive.trim().toLowerCase(Locale.ROOT);
+            if ("no-cache".equals(value) || "no-store".equals(value)) {
+                return NO_MAX_AGE;
+            }
+            if (value.startsWith(MAX_AGE_DIRECTIVE)) {
+                try {
+                    maxAge = TimeUnit.SECONDS.toMillis(Long.parseLong(value.substring(MAX_AGE_DIRECTIVE.length())));
+                } catch (NumberFormatException ignore) {
+                    // an invalid max-age is treated as no max-age
+                }
+            }
+        }
+        return maxAge;
+    }
+
+    /**
+     * The number of requests made by a single fetch, including retries, and the status code of the last response.
+     */
+    private static final class FetchAttempts {
+        private int count;
+        private int statusCode;
+
+        private FetchAttempts() {
+        }
+
+        private HttpExecuteInterceptor counting(HttpExecuteInterceptor interceptor) {
+            return request -> {
+                count++;
+                if (interceptor != null) {
+                    interceptor.intercept(request);
+                }
+            };
+        }
+    }
+
+    private static final class FetchedKeys {
+        private final Map<String, String> keys;
+        private final String eTag;
+        private final String lastModified;
+
+        private FetchedKeys(Map<String, String> keys, String eTag, String lastModified) {
+            this.keys = Collections.unmodifiableMap(keys);
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+    }
 }
@@ -4,9 +4,64 @@ import com.github.onsdigital.exceptions.JWTDecodeException;
 import com.github.onsdigital.exceptions.JWTTokenExpiredException;
 import com.github.onsdigital.exceptions.JWTVerificationException;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * JWTVerifier is the interface for a JWT verifier for decoding and verifying signed JWT tokens.
  */
 public interface JWTVerifier {
     UserDataPayload verify(String token) throws JWTVerificationException, JWTDecodeException, JWTTokenExpiredException;
+
+    /**
+     * Decodes and verifies the supplied JWT token, returning the outcome rather than throwing if it is rejected.
+     *
+     * @param token the JWT token to verify
+     * @return the {@link VerificationResult} holding the user details, or the outcome and exception if the token was
+     * rejected
+     */
+    default VerificationResult tryVerify(String token) {
+        return VerificationResult.of(this, token);
+    }
+
+    /**
+     * Verifies a batch of tokens in parallel on the common fork-join pool.
+     *
+     * @param tokens the JWT tokens to verify
+     * @return a {@link VerificationResult} for each token, in the same order as the tokens
+     * @see #verifyAll(Collection, Executor)
+     */
+    default List<VerificationResult> verifyAll(Collection<String> tokens) {
+        return verifyAll(tokens, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Verifies a batch of tokens in parallel on the supplied executor. A token that fails verification does not stop
+     * the rest of the batch; its exception is returned in its {@link VerificationResult} instead. Tokens that appear
+     * more than once in the batch are only verified once and share the same result.
+     *
+     * @param tokens   the JWT tokens to verify
+     * @param executor the executor to verify the tokens on
+     * @return a {@link VerificationResult} for each token, in the same order as the tokens
+     */
+    default List<VerificationResult> verifyAll(Collection<String> tokens, Executor executor) {
+        Map<String, CompletableFuture<VerificationResult>> pending = new HashMap<>();
+        List<CompletableFuture<VerificationResult>> ordered = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            ordered.add(pending.computeIfAbsent(token,
+                    t -> CompletableFuture.supplyAsync(() -> tryVerify(t), executor)));
+        }
+
+        List<VerificationResult> results = new ArrayList<>(ordered.size());
+        for (CompletableFuture<VerificationResult> result : ordered) {
+            results.add(result.join());
+        }
+        return results;
+    }
 }
@@ -0,0 +1,465 @@
+package com.github.onsdigital;
+
+import java.nio.file.Path;
+import java.security.Provider;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * JWTVerifierBuilder - builds a {@link JWTVerifierImpl} or an {@link AsyncJWTVerifierImpl}, obtained from
+ * {@link JWTVerifierImpl#builder()}. Exactly one source of signing keys must be set; every other component has a
+ * default:
+ * <ul>
+ *     <li>signing keys are fetched with exponential retries from an initial interval of 500ms, a max interval of
+ *     5s and a max elapsed time of 30s, through a {@link RequestBuilder} on the transport shared by the JVM</li>
+ *     <li>signing keys are not refreshed in the background or saved to a snapshot</li>
+ *     <li>verified tokens are not cached and no metrics are recorded</li>
+ *     <li>claims are validated with {@link ValidationOptions#DEFAULT}</li>
+ *     <li>each rejected token is thrown as a new exception with a stack trace</li>
+ *     <li>signature engines are taken from the most preferred installed JCA provider</li>
+ *     <li>tokens are not checked for revocation</li>
+ *     <li>an {@link AsyncJWTVerifierImpl} fetches signing keys and verifies tokens on a pool of daemon threads shared
+ *     by async verifiers, not on the common fork-join pool</li>
+ * </ul>
+ * Components are used as given rather than copied, so a cache, metrics sink, transport or executor set on the
+ * builder may be shared with other verifiers and must be thread-safe. Each verifier only sees the cache entries of
+ * the tokens it verified itself, so verifiers with different keys or validation options can share a cache without a
+ * token accepted by one skipping the checks of another. The builder itself is not thread-safe.
+ * <pre>{@code
+ * JWTVerifierImpl jwtVerifier = JWTVerifierImpl.builder()
+ *         .jwks("https://cognito-idp.eu-west-2.amazonaws.com/eu-west-2_example/.well-known/jwks.json")
+ *         .requestBuilder(new RequestBuilder(transport, 2000, 5000))
+ *         .refresh(900000, 60000)
+ *         .cache(new VerifiedTokenCache(10000, 300000))
+ *         .metrics(metrics)
+ *         .build();
+ * }</pre>
+ */
+public final class JWTVerifierBuilder {
+
+    static final String KEY_SOURCE_REQUIRED_ERROR = "A source of signing keys is required";
+    static final String KEY_SOURCE_CONFLICT_ERROR = "Only one source of signing keys may be set";
+    static final String KEY_PROVIDER_REQUIRED_ERROR =
+            "Refreshing, snapshots and asynchronous verification need signing keys fetched by a key provider";
+    static final String ASYNC_REFRESH_ERROR =
+            "An asynchronous verifier refreshes its signing keys on demand, not on a background thread";
+    static final String COMPONENT_REQUIRED_ERROR = "A verifier component must not be null";
+    static final int DEFAULT_INITIAL_INTERVAL_MILLIS = 500;
+    static final int DEFAULT_MAX_ELAPSED_TIME_MILLIS = 30000;
+    static final int DEFAULT_MAX_INTERVAL_MILLIS = 5000;
+
+    private Map<String, String> signingKeys;
+    private List<String> preWarmKeyIds;
+    private JWTKeyProvider keyProvider;
+    private List<String> identityApiUrls;
+    private String jwksUrl;
+    private int initialInterval = DEFAULT_INITIAL_INTERVAL_MILLIS;
+    private int maxElapsedTime = DEFAULT_MAX_ELAPSED_TIME_MILLIS;
+    private int maxInterval = DEFAULT_MAX_INTERVAL_MILLIS;
+    private RequestBuilder requestBuilder;
+    private Path snapshotPath;
+    private long maxStalenessMillis;
+    private long refreshIntervalMillis;
+    private long refreshJitterMillis;
+    private TokenCache cache;
+    private VerificationMetrics metrics = VerificationMetrics.NOOP;
+    private ValidationOptions options = ValidationOptions.DEFAULT;
+    private Executor executor = AsyncJWTVerifierImpl.defaultExecutor();
+    private boolean stacklessFailures;
+    private SignatureVerifiers signatureVerifiers = SignatureVerifiers.DEFAULT;
+    private RevocationList revocations;
+
+    JWTVerifierBuilder() {
+    }
+
+    /**
+     * Verifies tokens against a fixed set of signing keys.
+     *
+     * @param keys the map of public signing key IDs to the base64 encoded public keys in DER format
+     * @return this builder
+     * @throws IllegalArgumentException if the keys are null or another source of signing keys is already set
+     */
+    public JWTVerifierBuilder signingKeys(Map<String, String> keys) {
+        checkKeySource(keys);
+        this.signingKeys = new HashMap<>(keys);
+        return this;
+    }
+
+    /**
+     * Verifies tokens against a fixed set of signing keys, only checking their encoding up front and decoding each key
+     * the first time its 'kid' is located, as for {@link SigningKeyLocatorImpl#lazy(Map, Collection)}.
+     *
+     * @param keys            the map of public signing key IDs to the base64 encoded public keys in DER format
+     * @param keyIdsToPreWarm the IDs of the keys to decode up front, such as the current signing key
+     * @return this builder
+     * @throws IllegalArgumentException if the keys or key IDs are null or another source of signing keys is already set
+     */
+    public JWTVerifierBuilder lazySigningKeys(Map<String, String> keys, Collection<String> keyIdsToPreWarm) {
+        List<String> keyIds = new ArrayList<>(required(keyIdsToPreWarm));
+        signingKeys(keys);
+        this.preWarmKeyIds = keyIds;
+        return this;
+    }
+
+    /**
+     * Fetches the signing keys from a custom key provider.
+     *
+     * @param provider the provider used to fetch the signing keys
+     * @return this builder
+     * @throws IllegalArgumentException if the provider is null or another source of signing keys is already set
+     */
+    public JWTVerifierBuilder keyProvider(JWTKeyProvider provider) {
+        checkKeySource(provider);
+        this.keyProvider = provider;
+        return this;
+    }
+
+    /**
+     * Fetches the signing keys from identity api.
+     *
+     * @param url the identity api url to fetch jwt keys
+     * @return this builder
+     * @throws IllegalArgumentException if the url is null or another source of signing keys is already set
+     */
+    public JWTVerifierBuilder identityApi(String url) {
+        checkKeySource(url);
+        this.identityApiUrls = Collections.singletonList(url);
+        return this;
+    }
+
+    /**
+     * Fetches the signing keys from several instances of identity api, with a {@link HedgedKeyProvider} that hedges
+     * and fails over between them. Each instance is retried as set by {@link #retry(int, int, int)}.
+     *
+     * @param urls the identity api urls to fetch jwt keys, in order of preference
+     * @return this builder
+     * @throws IllegalArgumentException if the urls are null, empty or contain null, or another source of signing keys
+     *                                  is already set
+     */
+    public JWTVerifierBuilder identityApi(List<String> urls) {
+        checkKeySource(urls);
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException(HedgedKeyProvider.ENDPOINTS_REQUIRED_ERROR);
+        }
+        for (String url : urls) {
+            required(url);
+        }
+        this.identityApiUrls = new ArrayList<>(urls);
+        return this;
+    }
+
+    /**
+     * Fetches the signing keys from a JSON Web Key Set endpoint, with a {@link JWKSKeyProvider}.
+     *
+     * @param url the full url of the JWK Set
+     * @return this builder
+     * @throws IllegalArgumentException if the url is null or another source of signing keys is already set
+     */
+    public JWTVerifierBuilder jwks(String url) {
+        checkKeySource(url);
+        this.jwksUrl = url;
+        return this;
+    }
+
+    /**
+     * Sets the exponential retries used when fetching the signing keys from identity api or a JWK Set.
+     *
+     * @param initialIntervalMillis the initial interval in milliseconds to be used for exponential retries
+     * @param maxElapsedTimeMillis  the max elapsed time in milliseconds to be used for exponential retries
+     * @param maxIntervalMillis     the max interval in milliseconds to be used for exponential retries
+     * @return this builder
+     */
+    public JWTVerifierBuilder retry(int initialIntervalMillis, int maxElapsedTimeMillis, int maxIntervalMillis) {
+        this.initialInterval = initialIntervalMillis;
+        this.maxElapsedTime = maxElapsedTimeMillis;
+        this.maxInterval = maxIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Sets the request builder used when fetching the signing keys from identity api or a JWK Set, for example
+     * one with its own timeouts or built on an http transport shared with the rest of the service.
+     *
+     * @param keyRequestBuilder the http request builder to be used to fetch the keys
+     * @return this builder
+     * @throws IllegalArgumentException if the request builder is null
+     */
+    public JWTVerifierBuilder requestBuilder(RequestBuilder keyRequestBuilder) {
+        this.requestBuilder = required(keyRequestBuilder);
+        return this;
+    }
+
+    /**
+     * Saves the fetched signing keys to a snapshot file, and starts from the snapshot while it is fresh, with a
+     * {@link SnapshotKeyProvider}. A verifier started from the snapshot reconciles its keys with the live endpoint
+     * on a background thread straight away, retrying until a fetch succeeds, whether or not {@link #refresh} is set.
+     *
+     * @param path                 the path of the snapshot file
+     * @param stalenessLimitMillis the maximum age in milliseconds of a snapshot used in place of a fetch
+     * @return this builder
+     * @throws IllegalArgumentException if the path is null
+     */
+    public JWTVerifierBuilder snapshot(Path path, long stalenessLimitMillis) {
+        this.snapshotPath = required(path);
+        this.maxStalenessMillis = stalenessLimitMillis;
+        return this;
+    }
+
+    /**
+     * Refreshes the fetched signing keys on a background thread. Call {@link JWTVerifierImpl#close()} to stop
+     * refreshing once the verifier is no longer needed.
+     *
+     * @param intervalMillis the interval in milliseconds between signing key refreshes
+     * @param jitterMillis   the maximum random jitter in milliseconds added to each refresh interval
+     * @return this builder
+     * @throws IllegalArgumentException if the interval is not greater than zero or the jitter is negative
+     */
+    public JWTVerifierBuilder refresh(long intervalMillis, long jitterMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException(SigningKeyRefresher.REFRESH_INTERVAL_ERROR);
+        }
+        if (jitterMillis < 0) {
+            throw new IllegalArgumentException(SigningKeyRefresher.REFRESH_JITTER_ERROR);
+        }
+        this.refreshIntervalMillis = intervalMillis;
+        this.refreshJitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * Caches successfully verified tokens, such as in a {@link VerifiedTokenCache}. The cache may be shared with other
+     * verifiers, as each verifier's entries are kept apart from every other's.
+     *
+     * @param tokenCache the cache of verified tokens
+     * @return this builder
+     * @throws IllegalArgumentException if the cache is null
+     */
+    public JWTVerifierBuilder cache(TokenCache tokenCache) {
+        this.cache = required(tokenCache);
+        return this;
+    }
+
+    /**
+     * Records verification and signing key fetch metrics.
+     *
+     * @param metricsSink the sink for verification and signing key refresh metrics
+     * @return this builder
+     * @throws IllegalArgumentException if the metrics sink is null
+     */
+    public JWTVerifierBuilder metrics(VerificationMetrics metricsSink) {
+        this.metrics = required(metricsSink);
+        return this;
+    }
+
+    /**
+     * Sets the clock, clock skew and required claims tokens are validated against.
+     *
+     * @param validationOptions the validation options
+     * @return this builder
+     * @throws IllegalArgumentException if the options are null
+     */
+    public JWTVerifierBuilder validationOptions(ValidationOptions validationOptions) {
+        this.options = required(validationOptions);
+        return this;
+    }
+
+    /**
+     * Rejects tokens from {@link JWTVerifier#verify(String)} with shared, pre-allocated exceptions that have no stack
+     * trace or cause, so that a flood of invalid tokens is cheap to reject. Only the message and type of each
+     * exception identify why a token was rejected.
+     *
+     * @return this builder
+     */
+    public JWTVerifierBuilder stacklessFailures() {
+        this.stacklessFailures = true;
+        return this;
+    }
+
+    /**
+     * Rejects verified tokens that have been revoked, including tokens verified before they were revoked and served
+     * from the cache. The list is used as given, so its revocations must be fetched by the caller, for example with
+     * {@link RevocationList#start(long)}.
+     *
+     * @param revocationList the revoked tokens
+     * @return this builder
+     * @throws IllegalArgumentException if the revocation list is null
+     */
+    public JWTVerifierBuilder revocations(RevocationList revocationList) {
+        this.revocations = required(revocationList);
+        return this;
+    }
+
+    /**
+     * Sets the JCA provider the signature engines that verify 'RS256', 'RS384' and 'RS512' tokens are taken from, for
+     * example a native-backed provider with faster RSA verification than the provider JCA prefers. Signature engines
+     * initialised with a signing key are reused by each thread whichever provider is used. Other signatures are still
+     * verified with the most preferred installed provider.
+     *
+     * @param securityProvider the JCA provider
+     * @return this builder
+     * @throws IllegalArgumentException if the provider is null
+     */
+    public JWTVerifierBuilder securityProvider(Provider securityProvider) {
+        this.signatureVerifiers = SignatureVerifiers.using(required(securityProvider));
+        return this;
+    }
+
+    /**
+     * Sets the executor an {@link AsyncJWTVerifierImpl} fetches its signing keys and verifies tokens on.
+     *
+     * @param verificationExecutor the executor
+     * @return this builder
+     * @throws IllegalArgumentException if the executor is null
+     */
+    public JWTVerifierBuilder executor(Executor verificationExecutor) {
+        this.executor = required(verificationExecutor);
+        return this;
+    }
+
+    /**
+     * Builds a {@link JWTVerifierImpl}, fetching the signing keys from the key provider before returning.
+     *
+     * @return the {@link JWTVerifierImpl}
+     * @throws IllegalArgumentException if no source of signing keys is set, or the settings need fetched signing
+     *                                  keys but fixed signing keys are set, or the signing keys are invalid
+     * @throws Exception                if the signing keys could not be fetched
+     */
+    public JWTVerifierImpl build() throws Exception {
+        if (signingKeys != null) {
+            if (refreshIntervalMillis > 0 || snapshotPath != null) {
+                throw new IllegalArgumentException(KEY_PROVIDER_REQUIRED_ERROR);
+            }
+            return newVerifier(fixedKeyLocator(), null);
+        }
+
+        JWTKeyProvider source = keySource();
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.fromKeyProvider(source,
+                SigningKeyLocatorImpl.DEFAULT_UNKNOWN_KEY_ID_COOLDOWN_MILLIS, options.getClock());
+        SigningKeyRefresher keyRefresher = newKeyRefresher(keyLocator, source);
+        JWTVerifierImpl verifier = newVerifier(keyLocator, keyRefresher);
+        if (keyRefresher != null) {
+            keyRefresher.start();
+        }
+        return verifier;
+    }
+
+    /**
+     * Builds an {@link AsyncJWTVerifierImpl}, which returns straight away and fetches the signing keys on the
+     * executor.
+     *
+     * @return the {@link AsyncJWTVerifierImpl}
+     * @throws IllegalArgumentException if no key provider is set, or a background refresh is set
+     */
+    public AsyncJWTVerifierImpl buildAsync() {
+        if (signingKeys != null) {
+            throw new IllegalArgumentException(KEY_PROVIDER_REQUIRED_ERROR);
+        }
+        if (refreshIntervalMillis > 0) {
+            throw new IllegalArgumentException(ASYNC_REFRESH_ERROR);
+        }
+
+        JWTKeyProvider source = keySource();
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.withoutKeys(source,
+                SigningKeyLocatorImpl.DEFAULT_UNKNOWN_KEY_ID_COOLDOWN_MILLIS, options.getClock());
+        SigningKeyRefresher keyRefresher = newKeyRefresher(keyLocator, source);
+        AsyncJWTVerifierImpl asyncVerifier = new AsyncJWTVerifierImpl(newVerifier(keyLocator, keyRefresher),
+                keyLocator, executor);
+        if (keyRefresher != null) {
+            asyncVerifier.whenReady(keyRefresher::start);
+        }
+        return asyncVerifier;
+    }
+
+    private SigningKeyRefresher newKeyRefresher(SigningKeyLocatorImpl keyLocator, JWTKeyProvider source) {
+        SnapshotKeyProvider snapshot = null;
+        if (source instanceof SnapshotKeyProvider) {
+            snapshot = (SnapshotKeyProvider) source;
+        }
+        if (refreshIntervalMillis > 0) {
+            return new SigningKeyRefresher(keyLocator, refreshIntervalMillis, refreshJitterMillis, snapshot);
+        }
+        if (snapshot != null) {
+            return SigningKeyRefresher.reconciling(keyLocator, snapshot);
+        }
+        return null;
+    }
+
+    private JWTVerifierImpl newVerifier(SigningKeyLocatorImpl keyLocator, SigningKeyRefresher keyRefresher) {
+        SignedClaimsParser stacklessParser = new SignedClaimsParser(keyLocator, options, true, signatureVerifiers,
+                revocations);
+        SignedClaimsParser parser = stacklessParser;
+        if (!stacklessFailures) {
+            parser = new SignedClaimsParser(keyLocator, options, false, signatureVerifiers, revocations);
+        }
+        return new JWTVerifierImpl(parser, stacklessParser, cache, keyRefresher, metrics, options);
+    }
+
+    private SigningKeyLocatorImpl fixedKeyLocator() {
+        if (preWarmKeyIds == null) {
+            return new SigningKeyLocatorImpl(signingKeys);
+        }
+        return SigningKeyLocatorImpl.lazy(signingKeys, preWarmKeyIds);
+    }
+
+    private JWTKeyProvider keySource() {
+        JWTKeyProvider source = keyProvider;
+        if (identityApiUrls != null) {
+            source = identityApiSource();
+        } else if (jwksUrl != null) {
+            source = new JWKSKeyProvider(jwksUrl, initialInterval, maxElapsedTime, maxInterval,
+                    keyRequestBuilder(), metrics);
+        }
+        if (source == null) {
+            throw new IllegalArgumentException(KEY_SOURCE_REQUIRED_ERROR);
+        }
+
+        if (snapshotPath != null) {
+            source = new SnapshotKeyProvider(source, snapshotPath, maxStalenessMillis);
+        }
+        return source;
+    }
+
+    private JWTKeyProvider identityApiSource() {
+        if (identityApiUrls.size() == 1) {
+            return new JWTKeyProviderImpl(identityApiUrls.get(0), initialInterval, maxElapsedTime, maxInterval,
+                    keyRequestBuilder(), metrics);
+        }
+
+        // the hedged provider records one key refresh per fetch, however many instances it tries
+        RequestBuilder keyRequests = keyRequestBuilder();
+        List<JWTKeyProvider> instances = new ArrayList<>(identityApiUrls.size());
+        for (String url : identityApiUrls) {
+            instances.add(new JWTKeyProviderImpl(url, initialInterval, maxElapsedTime, maxInterval, keyRequests,
+                    VerificationMetrics.NOOP));
+        }
+        return new HedgedKeyProvider(instances, HedgedKeyProvider.DEFAULT_HEDGE_PERCENTILE,
+                HedgedKeyProvider.DEFAULT_INITIAL_HEDGE_DELAY_MILLIS, metrics);
+    }
+
+    private RequestBuilder keyRequestBuilder() {
+        if (requestBuilder == null) {
+            return new RequestBuilder();
+        }
+        return requestBuilder;
+    }
+
+    private void checkKeySource(Object source) {
+        required(source);
+        if (signingKeys != null || keyProvider != null || identityApiUrls != null || jwksUrl != null) {
+            throw new IllegalArgumentException(KEY_SOURCE_CONFLICT_ERROR);
+        }
+    }
+
+    private static <T> T required(T component) {
+        if (component == null) {
+            throw new IllegalArgumentException(COMPONENT_REQUIRED_ERROR);
+        }
+        return component;
+    }
+}
+
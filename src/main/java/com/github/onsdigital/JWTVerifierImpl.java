@@ -3,25 +3,25 @@ package com.github.onsdigital;
 import com.github.onsdigital.exceptions.JWTDecodeException;
 import com.github.onsdigital.exceptions.JWTTokenExpiredException;
 import com.github.onsdigital.exceptions.JWTVerificationException;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.ExpiredJwtException;
-import io.jsonwebtoken.JwtParser;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.Locator;
-import io.jsonwebtoken.MalformedJwtException;
-import io.jsonwebtoken.UnsupportedJwtException;
-import io.jsonwebtoken.security.SignatureException;
-
-import java.security.Key;
+
+import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 /**
  * JWTVerifier - decodes and verifies an access token according to
  * public keys passed to it.
+ * <p>
+ * A verifier is thread-safe once built, and is intended to be built once per JVM (or per key source) and shared by
+ * every thread verifying tokens: the decoded signing keys, the cache of verified tokens and the http connections
+ * used to fetch signing keys are then shared rather than duplicated. Use {@link #builder()} to choose the source of
+ * the signing keys and to plug in the other components.
  */
-public final class JWTVerifierImpl implements JWTVerifier {
+public final class JWTVerifierImpl implements JWTVerifier, Closeable {
 
     static final String SIGNATURE_VERIFICATION_ERROR = "JWT signature verification failed.";
     static final String ALGORITHM_ERROR = "JWT algorithm is not supported by the provided key.";
@@ -29,31 +29,41 @@ public final class JWTVerifierImpl implements JWTVerifier {
     static final String MISSING_USER_ID_ERROR = "JWT payload 'sub' (i.e. user id) claim not found.";
     static final String EXPIRED_TOKEN_ERROR = "JWT token has expired.";
     static final String TOKEN_NOT_VALID_ERROR = "JWT format not valid.";
-
-    private final JwtParser jwtParser;
+    static final String NOT_YET_VALID_ERROR = "JWT token is not valid yet.";
+    static final String ISSUER_ERROR = "JWT issuer is not trusted.";
+    static final String AUDIENCE_ERROR = "JWT audience is not accepted.";
+    static final String TOKEN_USE_ERROR = "JWT token use is not accepted.";
+    static final String REVOKED_TOKEN_ERROR = "JWT token has been revoked.";
+
+    private final SignedClaimsParser claimsParser;
+    private final SignedClaimsParser stacklessClaimsParser;
+    private final ScopedTokenCache cache;
+    private final SigningKeyRefresher keyRefresher;
+    private final VerificationMetrics metrics;
+    private final ValidationOptions options;
 
     /**
      * Initialises a new instance of the {@link JWTVerifierImpl}.
      *
      * @param signingKeys the map of public signing key IDs to the base64 encoded public keys in DER format
      * @throws IllegalArgumentException if the public signing keys provided are invalid
+     * @deprecated use {@link #builder()} with {@link JWTVerifierBuilder#signingKeys(Map)}
      */
+    @Deprecated
     public JWTVerifierImpl(Map<String, String> signingKeys) {
-        final Locator<Key> signingKeyLocator = new SigningKeyLocatorImpl(signingKeys);
-
-        this.jwtParser = Jwts.parser()
-                .keyLocator(signingKeyLocator)
-                .build();
+        this(new SigningKeyLocatorImpl(signingKeys), null, null, VerificationMetrics.NOOP, ValidationOptions.DEFAULT);
     }
 
-
+    /**
+     * Initialises a new instance of the {@link JWTVerifierImpl} that fetches its signing keys from the supplied key
+     * provider. Callers outside this package use {@link JWTVerifierBuilder#keyProvider(JWTKeyProvider)}.
+     *
+     * @param jwtKeyProvider the provider used to fetch the signing keys
+     * @throws Exception if the signing keys could not be fetched
+     */
     JWTVerifierImpl(JWTKeyProvider jwtKeyProvider) throws Exception {
-        Map<String, String> signingKeys = jwtKeyProvider.getJwtKeys();
-        final Locator<Key> signingKeyLocator = new SigningKeyLocatorImpl(signingKeys);
-
-        this.jwtParser = Jwts.parser()
-                .keyLocator(signingKeyLocator)
-                .build();
+        this(SigningKeyLocatorImpl.fromKeyProvider(jwtKeyProvider), null, null, VerificationMetrics.NOOP,
+                ValidationOptions.DEFAULT);
     }
 
     /**
@@ -64,9 +74,38 @@ public final class JWTVerifierImpl implements JWTVerifier {
      * @param maxElapsedTime  the max elapsed time in milliseconds to be used for exponential retries
      * @param maxInterval     the max interval in milliseconds to be used for exponential retries
      * @throws IllegalArgumentException if the public signing keys provided are invalid
+     * @deprecated use {@link #builder()} with {@link JWTVerifierBuilder#identityApi(String)} and
+     *             {@link JWTVerifierBuilder#retry(int, int, int)}
      */
+    @Deprecated
     public JWTVerifierImpl(String identityAPIURL, int initialInterval, int maxElapsedTime, int maxInterval) throws Exception {
-        this(new JWTKeyProviderImpl(identityAPIURL, initialInterval, maxElapsedTime, maxInterval, new RequestBuilder()));
+        this(new JWTKeyProviderImpl(identityAPIURL, initialInterval, maxElapsedTime, maxInterval, VerificationMetrics.NOOP));
+    }
+
+    JWTVerifierImpl(SigningKeyLocatorImpl signingKeyLocator, TokenCache cache, SigningKeyRefresher keyRefresher,
+                    VerificationMetrics metrics, ValidationOptions options) {
+        this(new SignedClaimsParser(signingKeyLocator, options, false),
+                new SignedClaimsParser(signingKeyLocator, options, true), cache, keyRefresher, metrics, options);
+    }
+
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "The cache and metrics are deliberately shared with the caller")
+    JWTVerifierImpl(SignedClaimsParser claimsParser, SignedClaimsParser stacklessClaimsParser, TokenCache cache,
+                    SigningKeyRefresher keyRefresher, VerificationMetrics metrics, ValidationOptions options) {
+        this.claimsParser = claimsParser;
+        this.stacklessClaimsParser = stacklessClaimsParser;
+        this.options = options;
+        this.cache = ScopedTokenCache.of(cache);
+        this.keyRefresher = keyRefresher;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Creates a builder of a {@link JWTVerifierImpl} or an {@link AsyncJWTVerifierImpl}.
+     *
+     * @return the {@link JWTVerifierBuilder}
+     */
+    public static JWTVerifierBuilder builder() {
+        return new JWTVerifierBuilder();
     }
 
     /**
@@ -74,55 +113,127 @@ public final class JWTVerifierImpl implements JWTVerifier {
      *
      * @param token the JWT token to verify
      * @return the {@link UserDataPayload} representing the user details from the JWT
-     * @throws JWTVerificationException if the JWT signature is invalid or uses an unsupported algorithm
+     * @throws JWTVerificationException if the JWT signature is invalid, uses an unsupported algorithm, the JWT is not
+     *                                  valid yet or its issuer, audience or token use is not accepted
      * @throws JWTDecodeException       if the JWT is malformed or does not contain the user's username (i.e. email) or ID
      * @throws JWTTokenExpiredException if the JWT token has expired
      */
     @Override
     public UserDataPayload verify(String token) throws JWTVerificationException, JWTDecodeException, JWTTokenExpiredException {
-        String userId;
-        String username;
-        List<String> groups;
+        return verify(token, claimsParser);
+    }
+
+    /**
+     * Decodes and verifies the supplied JWT token without throwing, for callers that expect to reject many tokens.
+     * Rejected tokens are always reported with shared stackless exceptions, so a rejection costs little more than a
+     * successful verification.
+     *
+     * @param token the JWT token to verify
+     * @return the {@link VerificationResult} holding the user details, or the outcome and exception if the token was
+     * rejected
+     */
+    @Override
+    public VerificationResult tryVerify(String token) {
         try {
-            Claims claims = jwtParser.parseSignedClaims(token).getPayload();
-
-            userId = claims.get("sub", String.class);
-            username = claims.get("username", String.class);
-            groups = convertGroupsToStrings(claims.get("cognito:groups", ArrayList.class));
-        } catch (ExpiredJwtException e) {
-            throw new JWTTokenExpiredException(EXPIRED_TOKEN_ERROR, e);
-        } catch (UnsupportedJwtException e) {
-            throw new JWTVerificationException(ALGORITHM_ERROR, e);
-        } catch (MalformedJwtException e) {
-            throw new JWTDecodeException(TOKEN_NOT_VALID_ERROR, e);
-        } catch (SignatureException e) {
-            throw new JWTVerificationException(SIGNATURE_VERIFICATION_ERROR, e);
+            return VerificationResult.valid(token, verify(token, stacklessClaimsParser));
+        } catch (JWTVerificationException | JWTDecodeException | JWTTokenExpiredException
+                 | IllegalArgumentException e) {
+            return VerificationResult.invalid(token, e);
         }
+    }
+
+    private UserDataPayload verify(String token, SignedClaimsParser parser) {
+        long start = System.nanoTime();
+        Object event = FlightRecorderEvents.beginVerification();
+        if (cache != null) {
+            UserDataPayload cached = cache.get(token, options.getClock().millis());
+            if (cached != null) {
+                if (parser.isRevoked(cached)) {
+                    record(VerificationOutcome.REVOKED, start, event);
+                    throw parser.revoked();
+                }
+                record(VerificationOutcome.CACHE_HIT, start, event);
+                return cached;
+            }
+        }
+
+        Claims claims;
+        UserDataPayload payload;
+        try {
+            claims = parser.parse(token);
+            payload = toUserDataPayload(claims);
+            if (parser.isRevoked(payload)) {
+                throw parser.revoked();
+            }
+        } catch (JWTVerificationException | JWTDecodeException | JWTTokenExpiredException
+                 | IllegalArgumentException e) {
+            // jjwt rejects a null or empty token with an IllegalArgumentException, which is recorded as malformed
+            record(outcomeOf(e), start, event);
+            throw e;
+        }
+        record(VerificationOutcome.SUCCESS, start, event);
 
-        if (username == null || username.isEmpty()) {
-            throw new JWTDecodeException(MISSING_USERNAME_ERROR);
+        if (cache != null) {
+            cache.put(token, payload, claims.getExpiration(), options.getClock().millis());
         }
+        return payload;
+    }
 
-        if (userId == null || userId.isEmpty()) {
-            throw new JWTDecodeException(MISSING_USER_ID_ERROR);
+    private void record(VerificationOutcome outcome, long start, Object event) {
+        metrics.recordVerification(outcome, System.nanoTime() - start);
+        FlightRecorderEvents.endVerification(event, outcome);
+    }
+
+    /**
+     * Stops the background refresh of signing keys, if enabled. The verifier keeps verifying tokens against the last
+     * signing keys it fetched.
+     */
+    @Override
+    public void close() {
+        if (keyRefresher != null) {
+            keyRefresher.close();
         }
+    }
 
-        // build pojo object to return to caller
-        return new UserDataPayload(userId, username, groups);
+    private static UserDataPayload toUserDataPayload(Claims claims) {
+        // the parser has checked the username and user ID are present, and that any groups are a list
+        List<String> groups = convertGroupsToStrings(claims.get("cognito:groups", List.class));
+        return UserDataPayload.ofClaims(claims.getSubject(), claims.get("username", String.class), groups, claims);
     }
 
-    private ArrayList<String> convertGroupsToStrings(ArrayList<?> in) {
-        ArrayList<String> out = new ArrayList<>();
+    static VerificationOutcome outcomeOf(RuntimeException e) {
+        return VerificationFailures.outcomeOf(e);
+    }
+
+    /**
+     * Converts the 'cognito:groups' claim into an unmodifiable list of group IDs. When every group is already a string,
+     * which is the usual case, the claim's own list is shared rather than copied.
+     *
+     * @param in the value of the claim, which may be null
+     * @return the unmodifiable list of group IDs
+     */
+    @SuppressWarnings("unchecked")
+    static List<String> convertGroupsToStrings(List<?> in) {
+        if (in == null || in.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-        if (in == null) {
-            return out;
+        for (Object o : in) {
+            if (!(o instanceof String)) {
+                return copyGroupsToStrings(in);
+            }
         }
+        // the claims are discarded once verified, so nothing else holds the list
+        return Collections.unmodifiableList((List<String>) in);
+    }
 
+    private static List<String> copyGroupsToStrings(List<?> in) {
+        List<String> out = new ArrayList<>(in.size());
         for (Object o : in) {
             if (o != null) {
                 out.add(o.toString());
             }
         }
-        return out;
+        return Collections.unmodifiableList(out);
     }
 }
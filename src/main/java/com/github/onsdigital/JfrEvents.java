@@ -0,0 +1,196 @@
+package com.github.onsdigital;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JfrEvents - the Java Flight Recorder events of the verifier, used only through {@link FlightRecorderEvents} so that
+ * this class, and the jdk.jfr classes it refers to, are only loaded on a JVM with Flight Recorder.
+ * <p>
+ * The events emitted once per verification are disabled unless a recording enables them by name, so that a recording
+ * started with the default settings does not pay for them; the key fetch and key set swap events are rare and enabled
+ * by default. Each event is only allocated while a recording has it enabled. The enabled check reads the state of the event type
+ * looked up once when this class is loaded, so a disabled event costs a field read and allocates nothing.
+ */
+final class JfrEvents {
+
+    private static final String CATEGORY = "JWT Verifier";
+
+    private static final EventType VERIFICATION = EventType.getEventType(VerificationEvent.class);
+    private static final EventType KEY_LOCATION = EventType.getEventType(KeyLocationEvent.class);
+    private static final EventType SIGNATURE_CHECK = EventType.getEventType(SignatureCheckEvent.class);
+    private static final EventType KEY_FETCH = EventType.getEventType(KeyFetchEvent.class);
+    private static final EventType KEY_SET_SWAP = EventType.getEventType(KeySetSwapEvent.class);
+
+    private JfrEvents() {
+    }
+
+    static Object beginVerification() {
+        if (!VERIFICATION.isEnabled()) {
+            return null;
+        }
+        VerificationEvent event = new VerificationEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endVerification(Object event, VerificationOutcome outcome) {
+        VerificationEvent verification = (VerificationEvent) event;
+        verification.outcome = outcome.name();
+        verification.commit();
+    }
+
+    static Object beginKeyLocation(String keyId, String algorithm) {
+        if (!KEY_LOCATION.isEnabled()) {
+            return null;
+        }
+        KeyLocationEvent event = new KeyLocationEvent();
+        event.keyId = keyId;
+        event.algorithm = algorithm;
+        event.begin();
+        return event;
+    }
+
+    static void endKeyLocation(Object event, boolean found) {
+        KeyLocationEvent location = (KeyLocationEvent) event;
+        location.found = found;
+        location.commit();
+    }
+
+    static Object beginSignatureCheck(String algorithm) {
+        if (!SIGNATURE_CHECK.isEnabled()) {
+            return null;
+        }
+        SignatureCheckEvent event = new SignatureCheckEvent();
+        event.algorithm = algorithm;
+        event.begin();
+        return event;
+    }
+
+    static void endSignatureCheck(Object event, boolean valid) {
+        SignatureCheckEvent check = (SignatureCheckEvent) event;
+        check.valid = valid;
+        check.commit();
+    }
+
+    static Object beginKeyFetch(String url) {
+        if (!KEY_FETCH.isEnabled()) {
+            return null;
+        }
+        KeyFetchEvent event = new KeyFetchEvent();
+        event.url = url;
+        event.begin();
+        return event;
+    }
+
+    static void endKeyFetch(Object event, int attempts, int statusCode, boolean success) {
+        KeyFetchEvent fetch = (KeyFetchEvent) event;
+        fetch.attempts = attempts;
+        fetch.statusCode = statusCode;
+        fetch.success = success;
+        fetch.commit();
+    }
+
+    static void keySetSwap(int previousKeyCount, int keyCount) {
+        if (KEY_SET_SWAP.isEnabled()) {
+            KeySetSwapEvent event = new KeySetSwapEvent();
+            event.previousKeyCount = previousKeyCount;
+            event.keyCount = keyCount;
+            event.commit();
+        }
+    }
+
+    @Name("com.github.onsdigital.Verification")
+    @Label("JWT Verification")
+    @Category(CATEGORY)
+    @Description("A call to JWTVerifier.verify or tryVerify, from the cache lookup to the returned payload")
+    @StackTrace(false)
+    @Enabled(false)
+    private static final class VerificationEvent extends Event {
+        @Label("Outcome")
+        private String outcome;
+
+        private VerificationEvent() {
+        }
+    }
+
+    @Name("com.github.onsdigital.KeyLocation")
+    @Label("JWT Signing Key Location")
+    @Category(CATEGORY)
+    @Description("The lookup of the signing key for a token's 'kid', including any refresh of the keys it triggers")
+    @StackTrace(false)
+    @Enabled(false)
+    private static final class KeyLocationEvent extends Event {
+        @Label("Key ID")
+        private String keyId;
+
+        @Label("Algorithm")
+        private String algorithm;
+
+        @Label("Found")
+        private boolean found;
+
+        private KeyLocationEvent() {
+        }
+    }
+
+    @Name("com.github.onsdigital.SignatureCheck")
+    @Label("JWT Signature Check")
+    @Category(CATEGORY)
+    @Description("The check of an RSA PKCS #1 signature against its signing key")
+    @StackTrace(false)
+    @Enabled(false)
+    private static final class SignatureCheckEvent extends Event {
+        @Label("Algorithm")
+        private String algorithm;
+
+        @Label("Valid")
+        private boolean valid;
+
+        private SignatureCheckEvent() {
+        }
+    }
+
+    @Name("com.github.onsdigital.KeyFetch")
+    @Label("JWT Signing Key Fetch")
+    @Category(CATEGORY)
+    @Description("A fetch of the signing keys, including every retry of the request")
+    private static final class KeyFetchEvent extends Event {
+        @Label("URL")
+        private String url;
+
+        @Label("Attempts")
+        private int attempts;
+
+        @Label("Status Code")
+        private int statusCode;
+
+        @Label("Success")
+        private boolean success;
+
+        private KeyFetchEvent() {
+        }
+    }
+
+    @Name("com.github.onsdigital.KeySetSwap")
+    @Label("JWT Signing Key Set Swap")
+    @Category(CATEGORY)
+    @Description("The replacement of the signing keys tokens are verified against by a newly fetched set")
+    @StackTrace(false)
+    private static final class KeySetSwapEvent extends Event {
+        @Label("Previous Key Count")
+        private int previousKeyCount;
+
+        @Label("Key Count")
+        private int keyCount;
+
+        private KeySetSwapEvent() {
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.github.onsdigital;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * JsonWebKey - the public parameters of a single JSON Web Key (RFC 7517), read from a JWK Set.
+ * <p>
+ * Only the members needed to build a public signing key are kept; any other member, including the private parameters
+ * of a key that should not have been published, is skipped without being read into memory.
+ */
+final class JsonWebKey {
+
+    static final String SIGNATURE_USE = "sig";
+    static final String VERIFY_OPERATION = "verify";
+
+    private static final String RSA = "RSA";
+    private static final String EC = "EC";
+    private static final String OKP = "OKP";
+    private static final String ED25519 = "Ed25519";
+    private static final int ED25519_KEY_LENGTH = 32;
+    private static final String BYTES = " bytes";
+    // the DER encoded SubjectPublicKeyInfo of an Ed25519 key, up to the 32 bytes of the key itself
+    private static final byte[] ED25519_X509_PREFIX = {
+        0x30, 0x2A, 0x30, 0x05, 0x06, 0x03, 0x2B, 0x65, 0x70, 0x03, 0x21, 0x00,
+    };
+
+    private String kty;
+    private String kid;
+    private String use;
+    private String alg;
+    private List<String> keyOps;
+    private String crv;
+    private String n;
+    private String e;
+    private String x;
+    private String y;
+
+    private JsonWebKey() {
+    }
+
+    /**
+     * Reads the next JWK object from the reader.
+     *
+     * @param reader the reader, positioned at the start of a JWK object
+     * @return the {@link JsonWebKey}
+     * @throws IOException if the JWK is not a well formed JSON object
+     */
+    static JsonWebKey read(JsonReader reader) throws IOException {
+        JsonWebKey jwk = new JsonWebKey();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("key_ops".equals(name)) {
+                jwk.keyOps = readStrings(reader);
+            } else {
+                jwk.setMember(name, reader);
+            }
+        }
+        reader.endObject();
+        return jwk;
+    }
+
+    private void setMember(String name, JsonReader reader) throws IOException {
+        switch (name) {
+            case "kty":
+                kty = readString(reader);
+                break;
+            case "kid":
+                kid = readString(reader);
+                break;
+            case "use":
+                use = readString(reader);
+                break;
+            case "alg":
+                alg = readString(reader);
+                break;
+            case "crv":
+                crv = readString(reader);
+                break;
+            case "n":
+                n = readString(reader);
+                break;
+            case "e":
+                e = readString(reader);
+                break;
+            case "x":
+                x = readString(reader);
+                break;
+            case "y":
+                y = readString(reader);
+                break;
+            default:
+                reader.skipValue();
+        }
+    }
+
+    String getKeyId() {
+        return kid;
+    }
+
+    String getAlgorithm() {
+        return alg;
+    }
+
+    /**
+     * Checks whether the key may be used to verify signatures, according to its 'use' and 'key_ops'.
+     *
+     * @return true if neither member rules out verifying signatures with the key
+     */
+    boolean isForVerification() {
+        return (use == null || SIGNATURE_USE.equals(use))
+                && (keyOps == null || keyOps.contains(VERIFY_OPERATION));
+    }
+
+    /**
+     * Builds the DER encoded X.509 SubjectPublicKeyInfo of the key from its JWK parameters.
+     *
+     * @return the encoded public key, or null if the key type or curve is not supported
+     * @throws GeneralSecurityException if the parameters do not describe a valid public key
+     * @throws IllegalArgumentException if a parameter is missing or not base64url encoded
+     */
+    byte[] toX509() throws GeneralSecurityException {
+        if (RSA.equals(kty)) {
+            RSAPublicKeySpec spec = new RSAPublicKeySpec(unsigned(n), unsigned(e));
+            return KeyFactory.getInstance(RSA).generatePublic(spec).getEncoded();
+        }
+        if (EC.equals(kty)) {
+            return ecX509();
+        }
+        if (OKP.equals(kty) && ED25519.equals(crv)) {
+            byte[] key = decode(x);
+            if (key.length != ED25519_KEY_LENGTH) {
+                throw new IllegalArgumentException("Ed25519 key is not " + ED25519_KEY_LENGTH + BYTES);
+            }
+            byte[] encoded = new byte[ED25519_X509_PREFIX.length + ED25519_KEY_LENGTH];
+            System.arraycopy(ED25519_X509_PREFIX, 0, encoded, 0, ED25519_X509_PREFIX.length);
+            System.arraycopy(key, 0, encoded, ED25519_X509_PREFIX.length, ED25519_KEY_LENGTH);
+            return encoded;
+        }
+        return null;
+    }
+
+    private byte[] ecX509() throws GeneralSecurityException {
+        String curveName = curveName(crv);
+        if (curveName == null) {
+            return null;
+        }
+        AlgorithmParameters parameters = AlgorithmParameters.getInstance(EC);
+        parameters.init(new ECGenParameterSpec(curveName));
+        ECParameterSpec curve = parameters.getParameterSpec(ECParameterSpec.class);
+
+        // coordinates are the full, zero padded length of the curve's field
+        int coordinateLength = (curve.getCurve().getField().getFieldSize() + Byte.SIZE - 1) / Byte.SIZE;
+        byte[] xBytes = decode(x);
+        byte[] yBytes = decode(y);
+        if (xBytes.length != coordinateLength || yBytes.length != coordinateLength) {
+            throw new IllegalArgumentException("EC coordinates are not " + coordinateLength + BYTES);
+        }
+        ECPoint point = new ECPoint(new BigInteger(1, xBytes), new BigInteger(1, yBytes));
+        return KeyFactory.getInstance(EC).generatePublic(new ECPublicKeySpec(point, curve)).getEncoded();
+    }
+
+    private static String curveName(String crv) {
+        if ("P-256".equals(crv)) {
+            return "secp256r1";
+        }
+        if ("P-384".equals(crv)) {
+            return "secp384r1";
+        }
+        if ("P-521".equals(crv)) {
+            return "secp521r1";
+        }
+        return null;
+    }
+
+    private static BigInteger unsigned(String value) {
+        return new BigInteger(1, decode(value));
+    }
+
+    private static byte[] decode(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("a required key parameter is missing");
+        }
+        return Base64.getUrlDecoder().decode(value);
+    }
+
+    private static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.STRING) {
+            reader.skipValue();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static List<String> readStrings(JsonReader reader) throws IOException {
+        List<String> values = new ArrayList<>();
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return values;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String value = readString(reader);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        reader.endArray();
+        return values;
+    }
+}
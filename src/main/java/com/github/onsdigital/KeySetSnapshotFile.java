@@ -0,0 +1,174 @@
+package com.github.onsdigital;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * KeySetSnapshotFile - reads and writes a snapshot of the signing keys to a local file.
+ * <p>
+ * The snapshot holds the time it was written and the key IDs and keys, followed by a SHA-256 digest of everything
+ * before it. It is written to a temporary file in the same directory, forced to disk and then atomically renamed over
+ * the previous snapshot, so a reader never sees a partially written snapshot. A snapshot that is truncated, has the
+ * wrong digest or is from another format version is rejected.
+ */
+final class KeySetSnapshotFile {
+
+    static final String CORRUPT_SNAPSHOT_ERROR = "Signing key snapshot is corrupt: ";
+    static final String SNAPSHOT_DIRECTORY_ERROR = "Signing key snapshot path has no parent directory: ";
+    static final int MAX_SNAPSHOT_BYTES = 1024 * 1024;
+    private static final int MAGIC = 0x4A574B53;
+    private static final int VERSION = 1;
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int DIGEST_LENGTH = 32;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path path;
+
+    /**
+     * Construct a new {@link KeySetSnapshotFile}.
+     *
+     * @param path the path of the snapshot file
+     */
+    KeySetSnapshotFile(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Atomically replaces the snapshot with the supplied signing keys.
+     *
+     * @param signingKeys     the {@link Map} of key IDs to base 64 encoded, DER formatted public signing keys
+     * @param writtenAtMillis the time the snapshot was taken, in milliseconds since the epoch
+     * @throws IOException if the snapshot could not be written
+     */
+    @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "The snapshot path is configured by the application")
+    void write(Map<String, String> signingKeys, long writtenAtMillis) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(writtenAtMillis);
+            out.writeInt(signingKeys.size());
+            for (Map.Entry<String, String> signingKey : signingKeys.entrySet()) {
+                out.writeUTF(signingKey.getKey());
+                out.writeUTF(signingKey.getValue());
+            }
+            out.write(digest(bytes.toByteArray()));
+        }
+
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory == null) {
+            throw new IOException(SNAPSHOT_DIRECTORY_ERROR + path);
+        }
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, String.valueOf(path.getFileName()), TEMP_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            move(temp);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads the snapshot.
+     *
+     * @return the snapshot, or null if there is no snapshot file
+     * @throws IOException if the snapshot could not be read or is corrupt
+     */
+    Snapshot read() throws IOException {
+        byte[] bytes;
+        try {
+            if (Files.size(path) > MAX_SNAPSHOT_BYTES) {
+                throw new IOException(CORRUPT_SNAPSHOT_ERROR + "too large");
+            }
+            bytes = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        if (bytes.length < DIGEST_LENGTH) {
+            throw new IOException(CORRUPT_SNAPSHOT_ERROR + "truncated");
+        }
+        byte[] body = Arrays.copyOf(bytes, bytes.length - DIGEST_LENGTH);
+        byte[] expectedDigest = Arrays.copyOfRange(bytes, body.length, bytes.length);
+        if (!MessageDigest.isEqual(expectedDigest, digest(body))) {
+            throw new IOException(CORRUPT_SNAPSHOT_ERROR + "digest mismatch");
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(CORRUPT_SNAPSHOT_ERROR + "unknown format");
+            }
+            long writtenAtMillis = in.readLong();
+            int count = in.readInt();
+            Map<String, String> signingKeys = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                signingKeys.put(in.readUTF(), in.readUTF());
+            }
+            return new Snapshot(Collections.unmodifiableMap(signingKeys), writtenAtMillis);
+        }
+    }
+
+    private void move(Path temp) throws IOException {
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static byte[] digest(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Snapshot - the signing keys read from a snapshot file.
+     */
+    static final class Snapshot {
+        private final Map<String, String> signingKeys;
+        private final long writtenAtMillis;
+
+        Snapshot(Map<String, String> signingKeys, long writtenAtMillis) {
+            this.signingKeys = signingKeys;
+            this.writtenAtMillis = writtenAtMillis;
+        }
+
+        Map<String, String> getSigningKeys() {
+            return signingKeys;
+        }
+
+        long getWrittenAtMillis() {
+            return writtenAtMillis;
+        }
+    }
+}
@@ -3,20 +3,64 @@ package com.github.onsdigital;
 import com.google.api.client.http.GenericUrl;
 import com.google.api.client.http.HttpBackOffUnsuccessfulResponseHandler;
 import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.JsonObjectParser;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.client.util.ExponentialBackOff;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import java.io.IOException;
 
 
 /**
  * RequestBuilder - builds the http request to fetch data.
+ * <p>
+ * Requests are built from a single, reusable {@link HttpTransport}. By default every {@link RequestBuilder} in the JVM
+ * shares one {@link NetHttpTransport}, whose connections are kept alive and reused between key fetches. Another
+ * transport, such as one backed by Apache HttpClient, can be supplied instead.
  */
 public class RequestBuilder {
 
-    RequestBuilder() { }
+    static final String TRANSPORT_REQUIRED_ERROR = "An http transport is required";
+    static final String TIMEOUT_ERROR = "Http timeouts must not be negative";
+    static final int DEFAULT_TIMEOUT_MILLIS = 20000;
+
+    private static final HttpTransport SHARED_TRANSPORT = new NetHttpTransport();
+    private static final JsonObjectParser JSON_PARSER = new JsonObjectParser(GsonFactory.getDefaultInstance());
+
+    private final HttpRequestFactory requestFactory;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    RequestBuilder() {
+        this(SHARED_TRANSPORT, DEFAULT_TIMEOUT_MILLIS, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Initialises a new instance of the {@link RequestBuilder} that builds requests on the supplied transport.
+     *
+     * @param transport            the http transport to send requests on, which should be shared rather than created
+     *                             per {@link RequestBuilder} so that its connections are reused
+     * @param connectTimeoutMillis the timeout in milliseconds to establish a connection, or zero for no timeout
+     * @param readTimeoutMillis    the timeout in milliseconds to read from an established connection, or zero for no
+     *                             timeout
+     * @throws IllegalArgumentException if the transport is null or either timeout is negative
+     */
+    @SuppressFBWarnings(value = "CT_CONSTRUCTOR_THROW", justification = "Rejects invalid settings before any state is held")
+    public RequestBuilder(HttpTransport transport, int connectTimeoutMillis, int readTimeoutMillis) {
+        if (transport == null) {
+            throw new IllegalArgumentException(TRANSPORT_REQUIRED_ERROR);
+        }
+        if (connectTimeoutMillis < 0 || readTimeoutMillis < 0) {
+            throw new IllegalArgumentException(TIMEOUT_ERROR);
+        }
+
+        this.requestFactory = transport.createRequestFactory();
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
 
     /**
      * Builds the http get request with exponential retries.
@@ -34,10 +78,11 @@ public class RequestBuilder {
                 .setMaxIntervalMillis(maxInterval)
                 .build();
 
-        return new NetHttpTransport()
-                .createRequestFactory()
+        return requestFactory
                 .buildGetRequest(new GenericUrl(url))
+                .setConnectTimeout(connectTimeoutMillis)
+                .setReadTimeout(readTimeoutMillis)
                 .setUnsuccessfulResponseHandler(new HttpBackOffUnsuccessfulResponseHandler(backoff))
-                .setParser(new JsonObjectParser(new GsonFactory()));
+                .setParser(JSON_PARSER);
     }
 }
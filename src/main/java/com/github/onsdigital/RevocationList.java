@@ -0,0 +1,255 @@
+package com.github.onsdigital;
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * RevocationList - the revoked tokens a {@link JWTVerifierImpl} rejects once their signature and claims have been
+ * verified, fed by a {@link RevocationSource}.
+ * <p>
+ * A token is revoked if its 'jti' claim, or its 'sub' and 'iat' claims, match a revocation. The keys are held in an
+ * exact set fronted by a Bloom filter sized for the expected number of revocations, so that the common case of a token
+ * that is not revoked is answered from a few bits without allocating, and only probable hits are looked up in the
+ * set. Revocations beyond the expected number raise the false positive rate of the filter, making more lookups in the
+ * set, but never cause a token to be wrongly rejected.
+ * <p>
+ * Revocations are fetched by {@link #refresh()}, or on a background thread once {@link #start(long)} is called. The
+ * list is safe to share between verifiers and threads.
+ */
+public final class RevocationList implements Closeable {
+
+    static final String EXPECTED_REVOCATIONS_ERROR = "Expected number of revocations must be greater than zero";
+    static final String FALSE_POSITIVE_RATE_ERROR = "False positive rate must be between 0 and 1";
+    static final String REFRESH_INTERVAL_ERROR = "Revocation refresh interval must be greater than zero";
+    static final int DEFAULT_EXPECTED_REVOCATIONS = 100000;
+    static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    private static final String THREAD_NAME = "jwt-revocation-refresher";
+    private static final char SESSION_SEPARATOR = ':';
+    private static final int BITS_PER_WORD = 64;
+    private static final int WORD_SHIFT = 6;
+    private static final int DECIMAL = 10;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long MIX_MULTIPLIER_1 = 0xff51afd7ed558ccdL;
+    private static final long MIX_MULTIPLIER_2 = 0xc4ceb9fe1a85ec53L;
+    private static final int MIX_SHIFT = 33;
+    private static final int HALF_SHIFT = 32;
+    private static final long LOW_HALF = 0xffffffffL;
+
+    private final RevocationSource source;
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final Set<String> revoked = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Construct a new {@link RevocationList} sized for 100,000 revocations with a 1% false positive rate.
+     *
+     * @param source the source of revoked tokens
+     */
+    public RevocationList(RevocationSource source) {
+        this(source, DEFAULT_EXPECTED_REVOCATIONS, DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * Construct a new {@link RevocationList}. No revocations are fetched until {@link #refresh()} or
+     * {@link #start(long)} is called.
+     *
+     * @param source              the source of revoked tokens
+     * @param expectedRevocations the number of revocations the Bloom filter is sized for
+     * @param falsePositiveRate   the rate of probable hits for tokens that are not revoked, once the expected number
+     *                            of tokens are revoked
+     * @throws IllegalArgumentException if the expected number of revocations is not positive, or the false positive
+     *                                  rate is not between 0 and 1
+     */
+    public RevocationList(RevocationSource source, int expectedRevocations, double falsePositiveRate) {
+        if (expectedRevocations <= 0) {
+            throw new IllegalArgumentException(EXPECTED_REVOCATIONS_ERROR);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(FALSE_POSITIVE_RATE_ERROR);
+        }
+
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-expectedRevocations * Math.log(falsePositiveRate) / (ln2 * ln2));
+        int words = (int) Math.max(1, (optimalBits + BITS_PER_WORD - 1) / BITS_PER_WORD);
+        this.source = source;
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * BITS_PER_WORD;
+        this.hashCount = (int) Math.max(1, Math.round((double) bitCount / expectedRevocations * ln2));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Builds the revocation key of a single session's token, from its 'sub' and 'iat' claims.
+     *
+     * @param subject         the token's 'sub' claim
+     * @param issuedAtSeconds the token's 'iat' claim in seconds since the epoch
+     * @return the revocation key
+     */
+    public static String sessionKey(String subject, long issuedAtSeconds) {
+        return subject + SESSION_SEPARATOR + issuedAtSeconds;
+    }
+
+    /**
+     * Fetches the tokens revoked since the last refresh from the source.
+     *
+     * @throws Exception if the revocations could not be fetched
+     */
+    public void refresh() throws Exception {
+        Collection<String> keys = source.fetchRevocations();
+        for (String key : keys) {
+            add(key);
+        }
+    }
+
+    /**
+     * Fetches the revoked tokens, then keeps fetching newly revoked tokens on a background thread at a fixed interval.
+     * A failed background refresh is retried at the next interval.
+     *
+     * @param refreshIntervalMillis the interval in milliseconds between refreshes
+     * @throws IllegalArgumentException if the interval is not positive
+     * @throws Exception                if the revoked tokens could not be fetched
+     */
+    public void start(long refreshIntervalMillis) throws Exception {
+        if (refreshIntervalMillis <= 0) {
+            throw new IllegalArgumentException(REFRESH_INTERVAL_ERROR);
+        }
+        refresh();
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, refreshIntervalMillis, refreshIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops any further background refreshes.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Gets the number of revoked tokens.
+     *
+     * @return the number of revocation keys fetched
+     */
+    public int size() {
+        return revoked.size();
+    }
+
+    /**
+     * Checks whether a verified token has been revoked, by its 'jti' claim or by its 'sub' and 'iat' claims.
+     *
+     * @param payload the user details of the verified token
+     * @return true if the token has been revoked
+     */
+    public boolean isRevoked(UserDataPayload payload) {
+        String tokenId = payload.getTokenId();
+        if (tokenId != null && mightContain(hash(FNV_OFFSET_BASIS, tokenId)) && revoked.contains(tokenId)) {
+            return true;
+        }
+
+        String subject = payload.getId();
+        Instant issuedAt = payload.getIssuedAt();
+        if (subject == null || issuedAt == null) {
+            return false;
+        }
+        long issuedAtSeconds = issuedAt.getEpochSecond();
+        return mightContain(sessionHash(subject, issuedAtSeconds))
+                && revoked.contains(sessionKey(subject, issuedAtSeconds));
+    }
+
+    void add(String key) {
+        if (revoked.add(key)) {
+            long hash = mix(hash(FNV_OFFSET_BASIS, key));
+            for (int i = 0; i < hashCount; i++) {
+                setBit(index(hash, i));
+            }
+        }
+    }
+
+    private boolean mightContain(long unmixedHash) {
+        long hash = mix(unmixedHash);
+        for (int i = 0; i < hashCount; i++) {
+            long index = index(hash, i);
+            if ((bits.get((int) (index >>> WORD_SHIFT)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setBit(long index) {
+        int word = (int) (index >>> WORD_SHIFT);
+        long mask = 1L << index;
+        long current = bits.get(word);
+        while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+            current = bits.get(word);
+        }
+    }
+
+    private long index(long hash, int i) {
+        // double hashing derives each of the filter's hashes from the two halves of one 64-bit hash
+        long combined = (hash >>> HALF_SHIFT) + i * (hash & LOW_HALF);
+        return (combined & Long.MAX_VALUE) % bitCount;
+    }
+
+    /**
+     * Hashes the key {@link #sessionKey(String, long)} would build, without building it.
+     */
+    private static long sessionHash(String subject, long issuedAtSeconds) {
+        long hash = hash(hash(FNV_OFFSET_BASIS, subject), SESSION_SEPARATOR);
+        if (issuedAtSeconds < 0) {
+            return hash(hash, Long.toString(issuedAtSeconds));
+        }
+        long divisor = 1;
+        while (issuedAtSeconds / divisor >= DECIMAL) {
+            divisor *= DECIMAL;
+        }
+        for (; divisor > 0; divisor /= DECIMAL) {
+            hash = hash(hash, (char) ('0' + issuedAtSeconds / divisor % DECIMAL));
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, String value) {
+        long result = hash;
+        for (int i = 0; i < value.length(); i++) {
+            result = hash(result, value.charAt(i));
+        }
+        return result;
+    }
+
+    private static long hash(long hash, char c) {
+        return (hash ^ c) * FNV_PRIME;
+    }
+
+    private static long mix(long hash) {
+        long result = (hash ^ (hash >>> MIX_SHIFT)) * MIX_MULTIPLIER_1;
+        result = (result ^ (result >>> MIX_SHIFT)) * MIX_MULTIPLIER_2;
+        return result ^ (result >>> MIX_SHIFT);
+    }
+
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception ignore) {
+            // the revocation source may throw any exception, and one escaping the scheduler thread would stop
+            // refreshes, so keep the revocations fetched so far until the next refresh
+        }
+    }
+}
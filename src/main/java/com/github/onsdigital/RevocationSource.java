@@ -0,0 +1,23 @@
+package com.github.onsdigital;
+
+import java.util.Collection;
+
+/**
+ * RevocationSource - a source of revoked tokens for a {@link RevocationList}, such as a deny-list of logged out
+ * sessions and disabled users.
+ * <p>
+ * Each revocation is keyed either by a token's 'jti' claim, or by its 'sub' and 'iat' claims as built by
+ * {@link RevocationList#sessionKey(String, long)}. Sources are incremental: each fetch returns only the keys revoked
+ * since the previous fetch, so a large deny-list is transferred once rather than on every refresh. A revocation cannot
+ * be withdrawn.
+ */
+public interface RevocationSource {
+
+    /**
+     * Fetches the keys of the tokens revoked since the last fetch, or of every revoked token on the first fetch.
+     *
+     * @return the keys of the newly revoked tokens, which may be empty
+     * @throws Exception if the revocations could not be fetched, in which case they are returned by the next fetch
+     */
+    Collection<String> fetchRevocations() throws Exception;
+}
@@ -0,0 +1,48 @@
+package com.github.onsdigital;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ScopedTokenCache - a view of a {@link TokenCache} whose entries are only visible to the verifier that owns the view.
+ * <p>
+ * Each verifier checks tokens against its own signing keys, issuer, audience and other claims, so a token one
+ * verifier accepted must never be a cache hit for another. Every view looks up and caches tokens under a scope unique
+ * to the view, so verifiers can share one cache, and its size limit, without seeing each other's entries.
+ */
+final class ScopedTokenCache {
+
+    private static final AtomicLong SCOPES = new AtomicLong();
+
+    private final TokenCache cache;
+    private final long scope;
+
+    private ScopedTokenCache(TokenCache cache) {
+        this.cache = cache;
+        this.scope = SCOPES.incrementAndGet();
+    }
+
+    /**
+     * Creates a view of the cache in a new scope.
+     *
+     * @param cache the cache of verified tokens, or null if tokens are not cached
+     * @return the view, or null if the cache is null
+     */
+    static ScopedTokenCache of(TokenCache cache) {
+        if (cache == null) {
+            return null;
+        }
+        return new ScopedTokenCache(cache);
+    }
+
+    UserDataPayload get(String token, long now) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        return cache.get(scope, token, now);
+    }
+
+    void put(String token, UserDataPayload payload, Date expiration, long now) {
+        cache.put(scope, token, payload, expiration, now);
+    }
+}
@@ -0,0 +1,191 @@
+package com.github.onsdigital;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.InvalidKeyException;
+import io.jsonwebtoken.security.SecureDigestAlgorithm;
+import io.jsonwebtoken.security.SecureRequest;
+import io.jsonwebtoken.security.VerifySecureDigestRequest;
+import io.jsonwebtoken.security.WeakKeyException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.RSAKey;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SignatureVerifiers - the algorithms a {@link SignedClaimsParser} verifies RSA PKCS #1 signatures ('RS256', 'RS384'
+ * and 'RS512') with, in place of jjwt's own.
+ * <p>
+ * jjwt looks up a new {@link Signature} engine from the JCA providers and initialises it with the public key for
+ * every token. These algorithms instead keep, for each thread, an engine already initialised with each of the last
+ * few keys used, so verifying a token only feeds its signing input to the engine. The engines can be taken from a
+ * specific JCA provider, such as a native-backed provider on the classpath, rather than the most preferred installed
+ * provider. The provider only applies to these engines: the signatures left to jjwt (RSASSA-PSS, ECDSA and EdDSA) are
+ * verified with engines from the most preferred installed provider, which a provider with only RSA signatures lacks.
+ */
+final class SignatureVerifiers {
+
+    /** The verifiers used when no provider is given, taking engines from the most preferred installed provider. */
+    static final SignatureVerifiers DEFAULT = new SignatureVerifiers(null);
+
+    static final String KEY_TYPE_ERROR = "RSA signatures can only be verified with an RSA public key";
+    static final String WEAK_KEY_ERROR = "RSA signing keys must be at least 2048 bits";
+    static final String ENGINE_ERROR = "Unable to verify a signature with ";
+    static final int MAX_CACHED_KEYS = 16;
+
+    private static final int MIN_RSA_KEY_BITS = 2048;
+    private static final int BUFFER_SIZE = 1024;
+
+    private final List<RsaVerifier> algorithms;
+
+    private SignatureVerifiers(Provider provider) {
+        this.algorithms = Collections.unmodifiableList(Arrays.asList(
+                new RsaVerifier(Jwts.SIG.RS256, "SHA256withRSA", provider),
+                new RsaVerifier(Jwts.SIG.RS384, "SHA384withRSA", provider),
+                new RsaVerifier(Jwts.SIG.RS512, "SHA512withRSA", provider)));
+    }
+
+    /**
+     * Gets the verifiers that take their signature engines from a JCA provider.
+     *
+     * @param provider the JCA provider, or null for the most preferred installed provider
+     * @return the {@link SignatureVerifiers}
+     */
+    static SignatureVerifiers using(Provider provider) {
+        if (provider == null) {
+            return DEFAULT;
+        }
+        return new SignatureVerifiers(provider);
+    }
+
+    /**
+     * Gets the algorithms that replace jjwt's algorithms of the same IDs.
+     *
+     * @return the algorithms
+     */
+    List<? extends SecureDigestAlgorithm<PrivateKey, PublicKey>> getAlgorithms() {
+        return algorithms;
+    }
+
+    /**
+     * Verifies the RSA PKCS #1 signatures of one JWS algorithm with engines cached per thread and per key. Signing is
+     * rare, so it is delegated to jjwt's algorithm of the same ID.
+     */
+    private static final class RsaVerifier implements SecureDigestAlgorithm<PrivateKey, PublicKey> {
+        private final SecureDigestAlgorithm<PrivateKey, PublicKey> signer;
+        private final String id;
+        private final String jcaName;
+        private final Provider provider;
+        private final ThreadLocal<Engines> engines = ThreadLocal.withInitial(Engines::new);
+
+        private RsaVerifier(SecureDigestAlgorithm<PrivateKey, PublicKey> signer, String jcaName, Provider provider) {
+            this.signer = signer;
+            this.id = signer.getId();
+            this.jcaName = jcaName;
+            this.provider = provider;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public byte[] digest(SecureRequest<InputStream, PrivateKey> request) {
+            return signer.digest(request);
+        }
+
+        @Override
+        public boolean verify(VerifySecureDigestRequest<PublicKey> request) {
+            PublicKey key = request.getKey();
+            if (!(key instanceof RSAKey)) {
+                throw new InvalidKeyException(KEY_TYPE_ERROR);
+            }
+            if (((RSAKey) key).getModulus().bitLength() < MIN_RSA_KEY_BITS) {
+                throw new WeakKeyException(WEAK_KEY_ERROR);
+            }
+
+            Object event = FlightRecorderEvents.beginSignatureCheck(id);
+            boolean valid = false;
+            try {
+                valid = verifySignature(key, request);
+                return valid;
+            } finally {
+                FlightRecorderEvents.endSignatureCheck(event, valid);
+            }
+        }
+
+        private boolean verifySignature(PublicKey key, VerifySecureDigestRequest<PublicKey> request) {
+            Engines cache = engines.get();
+            Signature signature = cache.get(key);
+            try {
+                if (signature == null) {
+                    signature = newEngine(key);
+                    cache.put(key, signature);
+                }
+                InputStream signingInput = request.getPayload();
+                int read;
+                while ((read = signingInput.read(cache.buffer)) > 0) {
+                    signature.update(cache.buffer, 0, read);
+                }
+                return signature.verify(request.getDigest());
+            } catch (SignatureException e) {
+                // the signature is not a valid encoding, which leaves the engine in an unknown state
+                cache.remove(key);
+                return false;
+            } catch (IOException | GeneralSecurityException e) {
+                cache.remove(key);
+                throw new io.jsonwebtoken.security.SignatureException(ENGINE_ERROR + jcaName, e);
+            }
+        }
+
+        private Signature newEngine(PublicKey key) throws GeneralSecurityException {
+            Signature signature;
+            if (provider == null) {
+                signature = Signature.getInstance(jcaName);
+            } else {
+                signature = Signature.getInstance(jcaName, provider);
+            }
+            signature.initVerify(key);
+            return signature;
+        }
+    }
+
+    /**
+     * The signature engines of one thread, keyed by the identity of the public key they were initialised with. Keys
+     * are decoded once per key set, so a refresh of the keys replaces the engines rather than growing the cache.
+     */
+    private static final class Engines {
+        private final Map<PublicKey, Signature> byKey = new IdentityHashMap<>();
+        private final byte[] buffer;
+
+        private Engines() {
+            this.buffer = new byte[BUFFER_SIZE];
+        }
+
+        private Signature get(PublicKey key) {
+            return byKey.get(key);
+        }
+
+        private void put(PublicKey key, Signature signature) {
+            if (byKey.size() >= MAX_CACHED_KEYS) {
+                byKey.clear();
+            }
+            byKey.put(key, signature);
+        }
+
+        private void remove(PublicKey key) {
+            byKey.remove(key);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.github.onsdigital;
+
+import com.github.onsdigital.exceptions.JWTDecodeException;
+import com.github.onsdigital.exceptions.JWTTokenExpiredException;
+import com.github.onsdigital.exceptions.JWTVerificationException;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.PrematureJwtException;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.SignatureException;
+
+import java.time.Clock;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SignedClaimsParser - parses and verifies the signature of a signed JWT, translating the jjwt exceptions into the
+ * exceptions thrown by {@link JWTVerifier}. Each token is first checked by a {@link TokenPreValidator}, so that
+ * malformed and expired tokens are rejected without a full decode and signature check. Once the signature is verified,
+ * the 'iss', 'aud'/'client_id' and 'token_use' claims are checked against the {@link ValidationOptions}, and the
+ * 'sub' and 'username' claims are checked to be present, and the 'cognito:groups' claim to be a list if present.
+ * <p>
+ * RSA PKCS #1 signatures are verified by the {@link SignatureVerifiers}, which reuse initialised signature engines,
+ * and jjwt verifies any other signature with engines from the most preferred installed JCA provider.
+ * <p>
+ * Verified tokens can also be checked against a {@link RevocationList}.
+ * <p>
+ * Every rejection is thrown as one of the {@link VerificationFailures}, so that a stackless parser throws no
+ * exception with a stack trace other than those jjwt builds itself when a signature check fails.
+ */
+final class SignedClaimsParser {
+
+    private static final String CLIENT_ID = "client_id";
+    private static final String TOKEN_USE = "token_use";
+    private static final String SUBJECT = "sub";
+    private static final String USERNAME = "username";
+    private static final String GROUPS = "cognito:groups";
+
+    private final TokenPreValidator preValidator;
+    private final JwtParser jwtParser;
+    private final ValidationOptions options;
+    private final VerificationFailures failures;
+    private final RevocationList revocations;
+
+    /**
+     * Construct a new {@link SignedClaimsParser}.
+     *
+     * @param signingKeyLocator the locator of the signing key for each token
+     * @param options           the checks made on the claims of each token
+     */
+    SignedClaimsParser(SigningKeyLocatorImpl signingKeyLocator, ValidationOptions options) {
+        this(signingKeyLocator, options, false);
+    }
+
+    /**
+     * Construct a new {@link SignedClaimsParser}.
+     *
+     * @param signingKeyLocator the locator of the signing key for each token
+     * @param options           the checks made on the claims of each token
+     * @param stackless         true to reject tokens with shared stackless exceptions
+     */
+    SignedClaimsParser(SigningKeyLocatorImpl signingKeyLocator, ValidationOptions options, boolean stackless) {
+        this(signingKeyLocator, options, stackless, SignatureVerifiers.DEFAULT);
+    }
+
+    /**
+     * Construct a new {@link SignedClaimsParser}.
+     *
+     * @param signingKeyLocator  the locator of the signing key for each token
+     * @param options            the checks made on the claims of each token
+     * @param stackless          true to reject tokens with shared stackless exceptions
+     * @param signatureVerifiers the algorithms RSA signatures are verified with
+     */
+    SignedClaimsParser(SigningKeyLocatorImpl signingKeyLocator, ValidationOptions options, boolean stackless,
+                       SignatureVerifiers signatureVerifiers) {
+        this(signingKeyLocator, options, stackless, signatureVerifiers, null);
+    }
+
+    /**
+     * Construct a new {@link SignedClaimsParser}.
+     *
+     * @param signingKeyLocator  the locator of the signing key for each token
+     * @param options            the checks made on the claims of each token
+     * @param stackless          true to reject tokens with shared stackless exceptions
+     * @param signatureVerifiers the algorithms RSA signatures are verified with
+     * @param revocations        the revoked tokens, or null if tokens are not checked for revocation
+     */
+    SignedClaimsParser(SigningKeyLocatorImpl signingKeyLocator, ValidationOptions options, boolean stackless,
+                       SignatureVerifiers signatureVerifiers, RevocationList revocations) {
+        Clock clock = options.getClock();
+        this.failures = VerificationFailures.of(stackless);
+        this.preValidator = new TokenPreValidator(signingKeyLocator, TokenPreValidator.DEFAULT_MAX_TOKEN_LENGTH, options,
+                failures);
+        this.jwtParser = Jwts.parser()
+                .keyLocator(signingKeyLocator)
+                .clock(() -> new Date(clock.millis()))
+                .clockSkewSeconds(options.getClockSkewSeconds())
+                .sig()
+                .remove(Jwts.SIG.RS256).remove(Jwts.SIG.RS384).remove(Jwts.SIG.RS512)
+                .add(signatureVerifiers.getAlgorithms())
+                .and()
+                .build();
+        this.options = options;
+        this.revocations = revocations;
+    }
+
+    /**
+     * Parses the token and verifies its signature.
+     *
+     * @param token the JWT token to parse
+     * @return the claims in the token payload
+     * @throws JWTVerificationException if the JWT signature is invalid, uses an unsupported algorithm, the JWT is not
+     *                                  valid yet or its claims are not accepted
+     * @throws JWTDecodeException       if the JWT is malformed, its signing key cannot be found or it does not
+     *                                  contain the user's username (i.e. email) or ID
+     * @throws JWTTokenExpiredException if the JWT token has expired
+     */
+    Claims parse(String token) {
+        preValidator.validate(token);
+        Claims claims;
+        try {
+            claims = jwtParser.parseSignedClaims(token).getPayload();
+        } catch (ExpiredJwtException e) {
+            throw failures.expired(JWTVerifierImpl.EXPIRED_TOKEN_ERROR, e);
+        } catch (PrematureJwtException e) {
+            throw failures.verification(VerificationOutcome.INVALID_CLAIM, JWTVerifierImpl.NOT_YET_VALID_ERROR, e);
+        } catch (UnsupportedJwtException e) {
+            throw failures.verification(VerificationOutcome.UNSUPPORTED_ALGORITHM, JWTVerifierImpl.ALGORITHM_ERROR, e);
+        } catch (MalformedJwtException e) {
+            throw failures.decode(VerificationOutcome.MALFORMED, JWTVerifierImpl.TOKEN_NOT_VALID_ERROR, e);
+        } catch (SignatureException e) {
+            throw failures.verification(VerificationOutcome.SIGNATURE_FAILURE, JWTVerifierImpl.SIGNATURE_VERIFICATION_ERROR, e);
+        } catch (JwtException e) {
+            // any other failure jjwt reports, such as a signing key it rejects, leaves the token unusable
+            throw failures.decode(VerificationOutcome.MALFORMED, JWTVerifierImpl.TOKEN_NOT_VALID_ERROR, e);
+        } catch (JWTDecodeException e) {
+            // thrown stackless by the key locator, so rethrown as this parser's own failure
+            throw failures.decode(VerificationFailures.outcomeOf(e), e.getMessage(), e.getCause());
+        } catch (JWTVerificationException e) {
+            throw failures.verification(VerificationFailures.outcomeOf(e), e.getMessage(), e.getCause());
+        }
+        checkClaims(claims);
+        return claims;
+    }
+
+    /**
+     * Checks whether a verified token has been revoked. Tokens served from a cache are checked as well as parsed
+     * tokens, as they may have been revoked since they were verified.
+     *
+     * @param payload the user details of the verified token
+     * @return true if the token has been revoked
+     */
+    boolean isRevoked(UserDataPayload payload) {
+        return revocations != null && revocations.isRevoked(payload);
+    }
+
+    /**
+     * Gets the failure for a verified token that has been revoked.
+     *
+     * @return the {@link JWTVerificationException}
+     */
+    JWTVerificationException revoked() {
+        return failures.verification(VerificationOutcome.REVOKED, JWTVerifierImpl.REVOKED_TOKEN_ERROR);
+    }
+
+    private void checkClaims(Claims claims) {
+        if (options.getIssuer() != null && !options.getIssuer().equals(claims.getIssuer())) {
+            throw failures.verification(VerificationOutcome.INVALID_CLAIM, JWTVerifierImpl.ISSUER_ERROR);
+        }
+
+        Set<String> audiences = options.getAudiences();
+        if (audiences != null && !audiences.contains(stringClaim(claims, CLIENT_ID))
+                && !containsAny(audiences, claims.getAudience())) {
+            throw failures.verification(VerificationOutcome.INVALID_CLAIM, JWTVerifierImpl.AUDIENCE_ERROR);
+        }
+
+        Set<String> tokenUses = options.getTokenUses();
+        if (tokenUses != null && !tokenUses.contains(stringClaim(claims, TOKEN_USE))) {
+            throw failures.verification(VerificationOutcome.INVALID_CLAIM, JWTVerifierImpl.TOKEN_USE_ERROR);
+        }
+        checkUserClaims(claims);
+    }
+
+    private void checkUserClaims(Claims claims) {
+        if (isEmpty(stringClaim(claims, USERNAME))) {
+            throw failures.decode(VerificationOutcome.MISSING_CLAIM, JWTVerifierImpl.MISSING_USERNAME_ERROR);
+        }
+        if (isEmpty(stringClaim(claims, SUBJECT))) {
+            throw failures.decode(VerificationOutcome.MISSING_CLAIM, JWTVerifierImpl.MISSING_USER_ID_ERROR);
+        }
+        Object groups = claims.get(GROUPS);
+        if (groups != null && !(groups instanceof List)) {
+            throw failures.decode(VerificationOutcome.MALFORMED, JWTVerifierImpl.TOKEN_NOT_VALID_ERROR);
+        }
+    }
+
+    /**
+     * Gets a claim that should be a string, without jjwt's typed lookup, which throws when the claim has another type.
+     *
+     * @param claims the claims of the token
+     * @param name   the name of the claim
+     * @return the claim, or null if it is missing or not a string
+     */
+    private static String stringClaim(Claims claims, String name) {
+        Object value = claims.get(name);
+        if (value instanceof String) {
+            return (String) value;
+        }
+        return null;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static boolean containsAny(Set<String> accepted, Set<String> values) {
+        if (values == null) {
+            return false;
+        }
+        for (String value : values) {
+            if (accepted.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
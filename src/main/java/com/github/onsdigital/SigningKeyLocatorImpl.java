@@ -1,31 +1,58 @@
 package com.github.onsdigital;
 
 import com.github.onsdigital.exceptions.JWTDecodeException;
+import com.github.onsdigital.exceptions.JWTVerificationException;
 import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.LocatorAdapter;
 
 import java.security.Key;
-import java.security.KeyFactory;
-import java.security.NoSuchAlgorithmException;
-import java.security.PublicKey;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.X509EncodedKeySpec;
-import java.util.Base64;
-import java.util.HashMap;
+import java.time.Clock;
+import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
 
 /**
  * A {@link LocatorAdapter} implementation for determining the correct, configured signing key to use based
  * on the 'kid' field in a JWT header.
+ * <p>
+ * The signing keys are held as an immutable key set behind a single atomic reference, so a refreshed key set can be
+ * published without blocking concurrent calls to {@link #locate(JwsHeader)}. By default every key is decoded when the
+ * key set is built; a locator created with {@link #lazy(Map, Collection)} instead decodes each key the first time its
+ * 'kid' is located.
+ * <p>
+ * When created with a {@link JWTKeyProvider}, a 'kid' that is not in the current key set triggers a refresh from the
+ * provider. Concurrent refreshes are coalesced into a single in-flight fetch that every caller waits on. To stop junk
+ * 'kid' values from hammering the provider, on-demand refreshes are throttled to one per cool-down period and a 'kid'
+ * still unknown after a refresh is remembered and rejected outright until its cool-down expires. The cool-downs are
+ * timed with the same {@link Clock} as the rest of the verifier's checks.
+ * <p>
+ * RSA, RSA-PSS, EC (P-256, P-384 and P-521) and Ed25519 keys are supported, and a key is only returned for a JWS whose
+ * 'alg' that type of key can verify.
  */
 public final class SigningKeyLocatorImpl extends LocatorAdapter<Key> {
 
     static final String KEYS_REQUIRED_ERROR = "Public signing keys are required";
     static final String PUBLIC_KEY_CHECK_ERROR = "Public key check failed: ";
     static final String PUBLIC_KEY_ERROR = "Public Key not found matching 'kid'";
-    private static final String RSA = "RSA";
+    static final String KEY_PROVIDER_REQUIRED_ERROR = "A JWT key provider is required to refresh the signing keys";
+    static final String COOLDOWN_ERROR = "Unknown 'kid' cool-down must not be negative";
+    static final String REFRESH_INCOMPLETE_ERROR = "Signing key refresh did not complete";
+    static final long DEFAULT_UNKNOWN_KEY_ID_COOLDOWN_MILLIS = 30000;
+    static final int MAX_UNKNOWN_KEY_IDS = 1024;
 
-    private final Map<String, Key> signingKeys;
+    private final AtomicReference<SigningKeySet> signingKeys;
+    private final BiFunction<Map<String, String>, Map<String, String>, SigningKeySet> keySetFactory;
+    private final JWTKeyProvider keyProvider;
+    private final long unknownKeyIdCooldownMillis;
+    private final Clock clock;
+    private final AtomicReference<CompletableFuture<SigningKeySet>> inFlightRefresh = new AtomicReference<>();
+    private final Map<String, Long> unknownKeyIds = new ConcurrentHashMap<>();
+    private volatile long nextOnDemandRefreshAt;
+    private volatile Map<String, String> sourceKeys;
 
     /**
      * Construct a new {@link SigningKeyLocatorImpl}.
@@ -33,25 +60,147 @@ public final class SigningKeyLocatorImpl extends LocatorAdapter<Key> {
      * @param signingKeys the {@link Map} of key IDs to base 64 encoded, DER formatted public signing keys
      */
     public SigningKeyLocatorImpl(Map<String, String> signingKeys) {
-        if (signingKeys == null || signingKeys.isEmpty()) {
-            throw new IllegalArgumentException(KEYS_REQUIRED_ERROR);
+        this(SigningKeySet.eager(signingKeys), SigningKeySet::eager, null, 0, Clock.systemUTC());
+    }
+
+    private SigningKeyLocatorImpl(SigningKeySet keySet,
+                                  BiFunction<Map<String, String>, Map<String, String>, SigningKeySet> keySetFactory,
+                                  JWTKeyProvider keyProvider, long unknownKeyIdCooldownMillis, Clock clock) {
+        this.signingKeys = new AtomicReference<>(keySet);
+        this.keySetFactory = keySetFactory;
+        this.keyProvider = keyProvider;
+        this.unknownKeyIdCooldownMillis = unknownKeyIdCooldownMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates a new {@link SigningKeyLocatorImpl} that only checks the signing keys are base 64 encoded and DER
+     * formatted up front, and decodes each public key the first time its 'kid' is located.
+     *
+     * @param signingKeys   the {@link Map} of key IDs to base 64 encoded, DER formatted public signing keys
+     * @param preWarmKeyIds the IDs of the keys to decode up front, such as the current signing key
+     * @return the key locator
+     * @throws IllegalArgumentException if the signing keys are not DER encoded or a pre-warmed key is invalid
+     */
+    public static SigningKeyLocatorImpl lazy(Map<String, String> signingKeys, Collection<String> preWarmKeyIds) {
+        return new SigningKeyLocatorImpl(SigningKeySet.lazy(signingKeys, preWarmKeyIds),
+                (keys, algorithms) -> SigningKeySet.lazy(keys, preWarmKeyIds), null, 0, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a new {@link SigningKeyLocatorImpl} that fetches its signing keys, and any refreshed signing keys,
+     * from the supplied {@link JWTKeyProvider}.
+     *
+     * @param keyProvider the provider used to fetch the signing keys
+     * @return the key locator holding the fetched signing keys
+     * @throws Exception if the signing keys could not be fetched
+     */
+    static SigningKeyLocatorImpl fromKeyProvider(JWTKeyProvider keyProvider) throws Exception {
+        return fromKeyProvider(keyProvider, DEFAULT_UNKNOWN_KEY_ID_COOLDOWN_MILLIS, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a new {@link SigningKeyLocatorImpl} that fetches its signing keys, and any refreshed signing keys,
+     * from the supplied {@link JWTKeyProvider}.
+     *
+     * @param keyProvider                the provider used to fetch the signing keys
+     * @param unknownKeyIdCooldownMillis the minimum time in milliseconds between refreshes triggered by an unknown
+     *                                   'kid', and for which a 'kid' still unknown after a refresh is rejected outright
+     * @return the key locator holding the fetched signing keys
+     * @throws Exception if the signing keys could not be fetched
+     */
+    static SigningKeyLocatorImpl fromKeyProvider(JWTKeyProvider keyProvider, long unknownKeyIdCooldownMillis) throws Exception {
+        return fromKeyProvider(keyProvider, unknownKeyIdCooldownMillis, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a new {@link SigningKeyLocatorImpl} that fetches its signing keys, and any refreshed signing keys,
+     * from the supplied {@link JWTKeyProvider}, timing the unknown 'kid' cool-downs with the supplied clock.
+     *
+     * @param keyProvider                the provider used to fetch the signing keys
+     * @param unknownKeyIdCooldownMillis the minimum time in milliseconds between refreshes triggered by an unknown
+     *                                   'kid', and for which a 'kid' still unknown after a refresh is rejected outright
+     * @param clock                      the clock used to time the unknown 'kid' cool-downs
+     * @return the key locator holding the fetched signing keys
+     * @throws Exception if the signing keys could not be fetched
+     */
+    static SigningKeyLocatorImpl fromKeyProvider(JWTKeyProvider keyProvider, long unknownKeyIdCooldownMillis,
+                                                 Clock clock) throws Exception {
+        checkKeyProvider(keyProvider, unknownKeyIdCooldownMillis);
+        Map<String, String> fetchedKeys = keyProvider.getJwtKeys();
+        SigningKeyLocatorImpl keyLocator = new SigningKeyLocatorImpl(
+                SigningKeySet.eager(fetchedKeys, keyProvider.getKeyAlgorithms()),
+                SigningKeySet::eager, keyProvider, unknownKeyIdCooldownMillis, clock);
+        keyLocator.sourceKeys = fetchedKeys;
+        return keyLocator;
+    }
+
+    /**
+     * Creates a new {@link SigningKeyLocatorImpl} with no signing keys, that fetches its signing keys from the
+     * supplied {@link JWTKeyProvider} on the first call to {@link #refresh()} or the first unknown 'kid'.
+     *
+     * @param keyProvider                the provider used to fetch the signing keys
+     * @param unknownKeyIdCooldownMillis the minimum time in milliseconds between refreshes triggered by an unknown
+     *                                   'kid', and for which a 'kid' still unknown after a refresh is rejected outright
+     * @return the key locator with an empty key set
+     */
+    static SigningKeyLocatorImpl withoutKeys(JWTKeyProvider keyProvider, long unknownKeyIdCooldownMillis) {
+        return withoutKeys(keyProvider, unknownKeyIdCooldownMillis, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a new {@link SigningKeyLocatorImpl} with no signing keys, that fetches its signing keys from the
+     * supplied {@link JWTKeyProvider} on the first call to {@link #refresh()} or the first unknown 'kid', timing the
+     * unknown 'kid' cool-downs with the supplied clock.
+     *
+     * @param keyProvider                the provider used to fetch the signing keys
+     * @param unknownKeyIdCooldownMillis the minimum time in milliseconds between refreshes triggered by an unknown
+     *                                   'kid', and for which a 'kid' still unknown after a refresh is rejected outright
+     * @param clock                      the clock used to time the unknown 'kid' cool-downs
+     * @return the key locator with an empty key set
+     */
+    static SigningKeyLocatorImpl withoutKeys(JWTKeyProvider keyProvider, long unknownKeyIdCooldownMillis,
+                                             Clock clock) {
+        checkKeyProvider(keyProvider, unknownKeyIdCooldownMillis);
+        return new SigningKeyLocatorImpl(SigningKeySet.EMPTY, SigningKeySet::eager, keyProvider,
+                unknownKeyIdCooldownMillis, clock);
+    }
+
+    private static void checkKeyProvider(JWTKeyProvider keyProvider, long unknownKeyIdCooldownMillis) {
+        if (keyProvider == null) {
+            throw new IllegalArgumentException(KEY_PROVIDER_REQUIRED_ERROR);
         }
+        if (unknownKeyIdCooldownMillis < 0) {
+            throw new IllegalArgumentException(COOLDOWN_ERROR);
+        }
+    }
 
-        this.signingKeys = new HashMap<>();
+    /**
+     * Fetches the signing keys from the key provider and publishes them in place of the current key set. If the
+     * fetch fails or returns invalid keys, the current key set is left untouched. If the provider returns the same map
+     * instance as the last fetch, the keys are unchanged and the current key set is kept without being rebuilt. If a
+     * refresh is already in flight, waits for and shares its outcome rather than fetching again.
+     *
+     * @throws Exception if the signing keys could not be fetched or are invalid
+     */
+    void refresh() throws Exception {
+        if (keyProvider == null) {
+            throw new IllegalStateException(KEY_PROVIDER_REQUIRED_ERROR);
+        }
+        refreshKeys();
+    }
 
-        Base64.Decoder decoder = Base64.getDecoder();
-        for (Map.Entry<String, String> publicKey : signingKeys.entrySet()) {
-            try {
-                KeyFactory kf = KeyFactory.getInstance(RSA);
-                byte[] encodedKey = decoder.decode(publicKey.getValue());
-                PublicKey pubKey = kf.generatePublic(new X509EncodedKeySpec(encodedKey));
-                this.signingKeys.put(publicKey.getKey(), pubKey);
-            } catch (NoSuchAlgorithmException ignore) {
-                // ignore this as the algorithm is specified as a constant so will be valid
-            } catch (InvalidKeySpecException e) {
-                throw new IllegalArgumentException(PUBLIC_KEY_CHECK_ERROR + e.getMessage());
-            }
+    /**
+     * Gets how long the current signing keys may be used before they should be refreshed, as reported by the key
+     * provider.
+     *
+     * @return the max age in milliseconds, or zero or a negative value if it is not known
+     */
+    long getKeysMaxAgeMillis() {
+        if (keyProvider == null) {
+            return -1;
         }
+        return keyProvider.getMaxAgeMillis();
     }
 
     /**
@@ -61,13 +210,140 @@ public final class SigningKeyLocatorImpl extends LocatorAdapter<Key> {
      * @param jwsHeader the header of the JWS to validate
      * @return the signing key that should be used to validate a digital signature for the JWS with the specified
      * header.
+     * @throws JWTDecodeException       if there is no signing key for the 'kid'
+     * @throws JWTVerificationException if the signing key for the 'kid' does not support the 'alg'
      */
     @Override
     public Key locate(JwsHeader jwsHeader) {
-        Key key = signingKeys.get(jwsHeader.getKeyId());
+        String keyId = jwsHeader.getKeyId();
+        String algorithm = jwsHeader.getAlgorithm();
+        Object event = FlightRecorderEvents.beginKeyLocation(keyId, algorithm);
+        Key key = keyOf(signingKeys.get(), keyId, algorithm);
+        if (key == null && keyProvider != null && keyId != null) {
+            key = locateAfterRefresh(keyId, algorithm);
+        }
+        FlightRecorderEvents.endKeyLocation(event, key != null);
+        if (key == null) {
+            // thrown for every token with an unknown 'kid', so shared and stackless; the verifier rethrows its own
+            throw VerificationFailures.STACKLESS.decode(VerificationOutcome.UNKNOWN_KID, PUBLIC_KEY_ERROR);
+        }
+        return key;
+    }
+
+    /**
+     * Cheaply checks whether {@link #locate(JwsHeader)} could return a key for the 'kid', without fetching any keys.
+     *
+     * @param keyId the 'kid' from a JWT header
+     * @return true if the 'kid' is in the current key set, or an unknown 'kid' could still trigger a refresh
+     */
+    boolean mayLocate(String keyId) {
+        if (signingKeys.get().contains(keyId)) {
+            return true;
+        }
+        if (keyProvider == null || keyId == null) {
+            return false;
+        }
+        Long retryAt = unknownKeyIds.get(keyId);
+        return retryAt == null || clock.millis() >= retryAt;
+    }
+
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private Key locateAfterRefresh(String keyId, String algorithm) {
+        long now = clock.millis();
+        Long retryAt = unknownKeyIds.get(keyId);
+        if (retryAt != null && now < retryAt) {
+            return null;
+        }
+
+        SigningKeySet keys;
+        long unknownUntil;
+        long refreshAllowedAt = nextOnDemandRefreshAt;
+        if (inFlightRefresh.get() == null && now < refreshAllowedAt) {
+            // throttled, so no refresh ran for this 'kid': retry it as soon as the next refresh is allowed
+            keys = signingKeys.get();
+            unknownUntil = refreshAllowedAt;
+        } else {
+            try {
+                keys = refreshKeys();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                keys = signingKeys.get();
+            } catch (Exception ignore) {
+                // the key provider may throw any exception, and a failed refresh must not fail the token's
+                // verification, so carry on with the last known good signing keys
+                keys = signingKeys.get();
+            }
+            unknownUntil = now + unknownKeyIdCooldownMillis;
+        }
+
+        Key key = keyOf(keys, keyId, algorithm);
         if (key == null) {
-            throw new JWTDecodeException(PUBLIC_KEY_ERROR);
+            if (unknownKeyIds.size() >= MAX_UNKNOWN_KEY_IDS) {
+                unknownKeyIds.clear();
+            }
+            unknownKeyIds.put(keyId, unknownUntil);
         }
         return key;
     }
+
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private SigningKeySet refreshKeys() throws Exception {
+        CompletableFuture<SigningKeySet> refresh = new CompletableFuture<>();
+        CompletableFuture<SigningKeySet> existing = inFlightRefresh.get();
+        while (existing == null && !inFlightRefresh.compareAndSet(null, refresh)) {
+            existing = inFlightRefresh.get();
+        }
+        if (existing != null) {
+            return awaitRefresh(existing);
+        }
+
+        nextOnDemandRefreshAt = clock.millis() + unknownKeyIdCooldownMillis;
+        try {
+            Map<String, String> fetchedKeys = keyProvider.getJwtKeys();
+            SigningKeySet keys;
+            if (fetchedKeys != null && fetchedKeys == sourceKeys) {
+                keys = signingKeys.get();
+            } else {
+                keys = keySetFactory.apply(fetchedKeys, keyProvider.getKeyAlgorithms());
+                SigningKeySet previousKeys = signingKeys.getAndSet(keys);
+                FlightRecorderEvents.keySetSwap(previousKeys.size(), keys.size());
+                sourceKeys = fetchedKeys;
+            }
+            refresh.complete(keys);
+            return keys;
+        } catch (Exception e) {
+            // the key provider may throw any exception, which is handed to the waiters as well as rethrown
+            refresh.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightRefresh.set(null);
+            // releases any waiters if the fetch failed with an Error, otherwise a no-op as the refresh is complete
+            refresh.completeExceptionally(new IllegalStateException(REFRESH_INCOMPLETE_ERROR));
+        }
+    }
+
+    private static SigningKeySet awaitRefresh(CompletableFuture<SigningKeySet> refresh) throws Exception {
+        try {
+            return refresh.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static Key keyOf(SigningKeySet keys, String keyId, String algorithm) {
+        // jjwt always supplies the 'alg' of a JWS, so a missing 'alg' only comes from a caller looking up a key directly
+        if (algorithm != null && keys.contains(keyId) && !keys.supports(keyId, algorithm)) {
+            throw VerificationFailures.STACKLESS.verification(VerificationOutcome.UNSUPPORTED_ALGORITHM,
+                    JWTVerifierImpl.ALGORITHM_ERROR);
+        }
+        try {
+            return keys.get(keyId);
+        } catch (IllegalArgumentException e) {
+            // a lazily decoded key that turns out to be invalid cannot verify anything
+            throw VerificationFailures.WITH_STACK_TRACES.decode(VerificationOutcome.UNKNOWN_KID, PUBLIC_KEY_ERROR, e);
+        }
+    }
 }
@@ -0,0 +1,168 @@
+package com.github.onsdigital;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SigningKeyRefresher - periodically refreshes the signing keys of a {@link SigningKeyLocatorImpl} on a background
+ * thread, and reconciles keys started from a {@link SnapshotKeyProvider} snapshot with the live endpoint.
+ * <p>
+ * Each refresh is scheduled after the configured interval plus a random jitter, so that a fleet of verifiers does
+ * not poll the key endpoint in lockstep. When the key provider reports a max age for the keys, such as from a
+ * 'Cache-Control: max-age' header, that max age is used in place of the configured interval, but never below the
+ * on-demand refresh cool-down (or the configured interval, if shorter), so that a tiny max age from a misconfigured
+ * server cannot make every verifier poll the key endpoint. A failed refresh leaves the last known good keys in place
+ * and the next refresh is scheduled as normal.
+ * <p>
+ * While the keys started from a snapshot are pending reconciliation, a refresh runs straight away and is retried
+ * after the same floor until a fetch from the live endpoint succeeds, whether or not periodic refreshes are set.
+ */
+final class SigningKeyRefresher implements Closeable {
+
+    static final String REFRESH_INTERVAL_ERROR = "Signing key refresh interval must be greater than zero";
+    static final String REFRESH_JITTER_ERROR = "Signing key refresh jitter must not be negative";
+    static final long MIN_MAX_AGE_MILLIS = SigningKeyLocatorImpl.DEFAULT_UNKNOWN_KEY_ID_COOLDOWN_MILLIS;
+    private static final String THREAD_NAME = "jwt-signing-key-refresher";
+
+    private final SigningKeyLocatorImpl keyLocator;
+    private final long refreshIntervalMillis;
+    private final long refreshJitterMillis;
+    private final SnapshotKeyProvider snapshot;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Construct a new {@link SigningKeyRefresher}. No refresh is scheduled until {@link #start()} is called.
+     *
+     * @param keyLocator            the key locator to refresh, which must have been created with a key provider
+     * @param refreshIntervalMillis the interval in milliseconds between refreshes
+     * @param refreshJitterMillis   the maximum random jitter in milliseconds added to each interval
+     */
+    SigningKeyRefresher(SigningKeyLocatorImpl keyLocator, long refreshIntervalMillis, long refreshJitterMillis) {
+        this(keyLocator, refreshIntervalMillis, refreshJitterMillis, null);
+    }
+
+    /**
+     * Construct a new {@link SigningKeyRefresher} that also reconciles keys started from a snapshot. No refresh is
+     * scheduled until {@link #start()} is called.
+     *
+     * @param keyLocator            the key locator to refresh, which must have been created with a key provider
+     * @param refreshIntervalMillis the interval in milliseconds between refreshes
+     * @param refreshJitterMillis   the maximum random jitter in milliseconds added to each interval
+     * @param snapshot              the snapshot provider of the key locator, or null if it has none
+     */
+    SigningKeyRefresher(SigningKeyLocatorImpl keyLocator, long refreshIntervalMillis, long refreshJitterMillis,
+                        SnapshotKeyProvider snapshot) {
+        if (refreshIntervalMillis <= 0) {
+            throw new IllegalArgumentException(REFRESH_INTERVAL_ERROR);
+        }
+        if (refreshJitterMillis < 0) {
+            throw new IllegalArgumentException(REFRESH_JITTER_ERROR);
+        }
+
+        this.keyLocator = keyLocator;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.refreshJitterMillis = refreshJitterMillis;
+        this.snapshot = snapshot;
+        this.scheduler = newScheduler();
+    }
+
+    private SigningKeyRefresher(SigningKeyLocatorImpl keyLocator, SnapshotKeyProvider snapshot) {
+        this.keyLocator = keyLocator;
+        this.refreshIntervalMillis = 0;
+        this.refreshJitterMillis = 0;
+        this.snapshot = snapshot;
+        this.scheduler = newScheduler();
+    }
+
+    /**
+     * Creates a {@link SigningKeyRefresher} that only reconciles keys started from a snapshot, and stops refreshing
+     * once they are reconciled. No refresh is scheduled until {@link #start()} is called.
+     *
+     * @param keyLocator the key locator to refresh, which must have been created with the snapshot provider
+     * @param snapshot   the snapshot provider of the key locator
+     * @return the refresher
+     */
+    static SigningKeyRefresher reconciling(SigningKeyLocatorImpl keyLocator, SnapshotKeyProvider snapshot) {
+        return new SigningKeyRefresher(keyLocator, snapshot);
+    }
+
+    /**
+     * Schedules the first refresh, straight away if the keys are pending reconciliation with the live endpoint.
+     */
+    void start() {
+        if (isReconcilePending()) {
+            schedule(0);
+        } else {
+            scheduleNext();
+        }
+    }
+
+    /**
+     * Stops any further refreshes, interrupting a refresh that is in progress.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    @SuppressFBWarnings(value = "PREDICTABLE_RANDOM", justification = "Jitter only spreads refreshes, it is not security sensitive")
+    long nextDelayMillis() {
+        long intervalMillis = keyLocator.getKeysMaxAgeMillis();
+        if (intervalMillis <= 0) {
+            intervalMillis = refreshIntervalMillis;
+        } else {
+            intervalMillis = Math.max(intervalMillis, Math.min(MIN_MAX_AGE_MILLIS, refreshIntervalMillis));
+        }
+        return intervalMillis + ThreadLocalRandom.current().nextLong(refreshJitterMillis + 1);
+    }
+
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private void refresh() {
+        try {
+            keyLocator.refresh();
+        } catch (Exception ignore) {
+            // the key provider may throw any exception, and one escaping the scheduler thread would stop refreshes,
+            // so keep serving the last known good signing keys until the next refresh
+        } finally {
+            scheduleNext();
+        }
+    }
+
+    private void scheduleNext() {
+        if (isReconcilePending()) {
+            schedule(reconcileRetryMillis());
+        } else if (refreshIntervalMillis > 0) {
+            schedule(nextDelayMillis());
+        }
+    }
+
+    private long reconcileRetryMillis() {
+        if (refreshIntervalMillis > 0) {
+            return Math.min(MIN_MAX_AGE_MILLIS, refreshIntervalMillis);
+        }
+        return MIN_MAX_AGE_MILLIS;
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private boolean isReconcilePending() {
+        return snapshot != null && snapshot.isReconcilePending();
+    }
+
+    private void schedule(long delayMillis) {
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(this::refresh, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
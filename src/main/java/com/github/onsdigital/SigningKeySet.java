@@ -0,0 +1,162 @@
+package com.github.onsdigital;
+
+import java.security.Key;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SigningKeySet - an immutable set of signing keys, keyed by 'kid'.
+ * <p>
+ * The type of each key (RSA, RSA-PSS, EC or Ed25519) is detected from its X.509 SubjectPublicKeyInfo when the key set
+ * is built. An eager key set decodes every public key up front. A lazy key set only base64 decodes the keys and
+ * detects their type when it is built, and materialises each {@link Key} the first time its 'kid' is looked up,
+ * caching it for every later lookup. Chosen keys can be pre-warmed so the first tokens signed with them do not pay to
+ * decode them.
+ * <p>
+ * A key may also declare the single JWS 'alg' it is for, such as the 'alg' of a JWK. Such a key only verifies tokens
+ * signed with exactly that algorithm, rather than every algorithm its type of key can verify.
+ */
+final class SigningKeySet {
+
+    static final SigningKeySet EMPTY = new SigningKeySet(Collections.emptyMap());
+
+    private final Map<String, EncodedKey> encodedKeys;
+    private final Map<String, Key> publicKeys = new ConcurrentHashMap<>();
+
+    private SigningKeySet(Map<String, EncodedKey> encodedKeys) {
+        this.encodedKeys = encodedKeys;
+    }
+    /**
+     * Builds a key set that decodes every public key up front.
+     *
+     * @param signingKeys the {@link Map} of key IDs to base 64 encoded, DER formatted public signing keys
+     * @return the key set
+     * @throws IllegalArgumentException if there are no signing keys or any of them is invalid
+     */
+    static SigningKeySet eager(Map<String, String> signingKeys) {
+        return eager(signingKeys, Collections.emptyMap());
+    }
+
+    /**
+     * Builds a key set that decodes every public key up front, restricting keys that declare an algorithm to it.
+     *
+     * @param signingKeys the {@link Map} of key IDs to base 64 encoded, DER formatted public signing keys
+     * @param algorithms  the {@link Map} of key IDs to the JWS 'alg' declared for the key, for the keys that declare one
+     * @return the key set
+     * @throws IllegalArgumentException if there are no signing keys or any of them is invalid
+     */
+    static SigningKeySet eager(Map<String, String> signingKeys, Map<String, String> algorithms) {
+        SigningKeySet keySet = new SigningKeySet(decode(signingKeys, algorithms));
+        keySet.preWarm(keySet.encodedKeys.keySet());
+        return keySet;
+    }
+
+    /**
+     * Builds a key set that decodes each public key the first time it is looked up, other than the pre-warmed keys.
+     *
+     * @param signingKeys    the {@link Map} of key IDs to base 64 encoded, DER formatted public signing keys
+     * @param preWarmKeyIds the IDs of the keys to decode up front, which need not be in the key set
+     * @return the key set
+     * @throws IllegalArgumentException if there are no signing keys, any of them is not a supported type of DER
+     *                                  encoded public key or a pre-warmed key is invalid
+     */
+    static SigningKeySet lazy(Map<String, String> signingKeys, Collection<String> preWarmKeyIds) {
+        SigningKeySet keySet = new SigningKeySet(decode(signingKeys, Collections.emptyMap()));
+        keySet.preWarm(preWarmKeyIds);
+        return keySet;
+    }
+
+    /**
+     * Gets the signing key for a 'kid', decoding it if this is the first time it has been looked up.
+     *
+     * @param keyId the 'kid' from a JWT header
+     * @return the signing key, or null if there is no key for the 'kid'
+     * @throws IllegalArgumentException if the key is not a valid public key
+     */
+    Key get(String keyId) {
+        if (keyId == null) {
+            return null;
+        }
+        Key key = publicKeys.get(keyId);
+        if (key != null) {
+            return key;
+        }
+        EncodedKey encodedKey = encodedKeys.get(keyId);
+        if (encodedKey == null) {
+            return null;
+        }
+        return publicKeys.computeIfAbsent(keyId, id -> encodedKey.type.toPublicKey(encodedKey.bytes));
+    }
+
+    /**
+     * Checks whether the signing key for a 'kid' can verify a JWS signed with the algorithm.
+     *
+     * @param keyId     the 'kid' from a JWT header
+     * @param algorithm the 'alg' from a JWT header
+     * @return true if there is a key for the 'kid' and it declares exactly the algorithm, or declares none and its type
+     *         supports the algorithm
+     */
+    boolean supports(String keyId, String algorithm) {
+        if (keyId == null) {
+            return false;
+        }
+        EncodedKey encodedKey = encodedKeys.get(keyId);
+        return encodedKey != null && encodedKey.supports(algorithm);
+    }
+
+    boolean contains(String keyId) {
+        return keyId != null && encodedKeys.containsKey(keyId);
+    }
+
+    int size() {
+        return encodedKeys.size();
+    }
+
+    private void preWarm(Collection<String> keyIds) {
+        for (String keyId : keyIds) {
+            get(keyId);
+        }
+    }
+
+    private static Map<String, EncodedKey> decode(Map<String, String> signingKeys, Map<String, String> algorithms) {
+        if (signingKeys == null || signingKeys.isEmpty()) {
+            throw new IllegalArgumentException(SigningKeyLocatorImpl.KEYS_REQUIRED_ERROR);
+        }
+
+        Map<String, EncodedKey> encodedKeys = new HashMap<>();
+        Base64.Decoder decoder = Base64.getDecoder();
+        for (Map.Entry<String, String> signingKey : signingKeys.entrySet()) {
+            byte[] bytes = decoder.decode(signingKey.getValue());
+            SigningKeyType type = SigningKeyType.of(bytes);
+            if (type == null) {
+                throw new IllegalArgumentException(SigningKeyLocatorImpl.PUBLIC_KEY_CHECK_ERROR
+                        + "key '" + signingKey.getKey() + "' is not a supported X.509 public key");
+            }
+            encodedKeys.put(signingKey.getKey(), new EncodedKey(bytes, type, algorithms.get(signingKey.getKey())));
+        }
+        return Collections.unmodifiableMap(encodedKeys);
+    }
+
+    private static final class EncodedKey {
+        private final byte[] bytes;
+        private final SigningKeyType type;
+        private final String algorithm;
+
+        private EncodedKey(byte[] bytes, SigningKeyType type, String algorithm) {
+            this.bytes = bytes;
+            this.type = type;
+            this.algorithm = algorithm;
+        }
+
+        private boolean supports(String tokenAlgorithm) {
+            if (algorithm != null) {
+                return algorithm.equals(tokenAlgorithm);
+            }
+            return type.supports(tokenAlgorithm);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.github.onsdigital;
+
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * SigningKeyType - the types of public signing key supported, detected from the algorithm identifier of an X.509
+ * SubjectPublicKeyInfo, along with the JWS 'alg' values each type of key can verify.
+ */
+enum SigningKeyType {
+    RSA(Oids.RSA, null, "RSA", "RS256", "RS384", "RS512", Names.PS256, Names.PS384, Names.PS512),
+    RSASSA_PSS(Oids.RSASSA_PSS, null, "RSASSA-PSS", Names.PS256, Names.PS384, Names.PS512),
+    EC_P256(Oids.EC, Oids.P256, Names.EC, "ES256"),
+    EC_P384(Oids.EC, Oids.P384, Names.EC, "ES384"),
+    EC_P521(Oids.EC, Oids.P521, Names.EC, "ES512"),
+    ED25519(Oids.ED25519, null, "Ed25519", "EdDSA");
+
+    private static final int SEQUENCE = 0x30;
+    private static final int OBJECT_IDENTIFIER = 0x06;
+    private static final int LONG_FORM = 0x80;
+    private static final int LENGTH_MASK = 0x7F;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int BITS_PER_BYTE = 8;
+    private static final int MAX_LENGTH_BYTES = 3;
+    private static final int NOT_FOUND = -1;
+
+    private final byte[] algorithmOid;
+    private final byte[] curveOid;
+    private final String keyFactoryAlgorithm;
+    private final Set<String> algorithms;
+    private final boolean supportedByJvm;
+    private final ThreadLocal<KeyFactory> keyFactory = ThreadLocal.withInitial(this::newKeyFactory);
+
+    SigningKeyType(byte[] algorithmOid, byte[] curveOid, String keyFactoryAlgorithm, String... algorithms) {
+        this.algorithmOid = algorithmOid;
+        this.curveOid = curveOid;
+        this.keyFactoryAlgorithm = keyFactoryAlgorithm;
+        this.algorithms = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(algorithms)));
+        this.supportedByJvm = hasKeyFactory(keyFactoryAlgorithm);
+    }
+
+    /**
+     * Detects the type of a DER encoded X.509 SubjectPublicKeyInfo.
+     *
+     * @param encodedKey the DER encoded public key
+     * @return the key type, or null if the key is not a well formed SubjectPublicKeyInfo of a supported type
+     */
+    static SigningKeyType of(byte[] encodedKey) {
+        // SubjectPublicKeyInfo ::= SEQUENCE { algorithm SEQUENCE { OID, parameters OPTIONAL }, BIT STRING }
+        if (end(encodedKey, 0, SEQUENCE) != encodedKey.length) {
+            return null;
+        }
+        int algorithm = contentOffset(encodedKey, 0);
+        int algorithmEnd = end(encodedKey, algorithm, SEQUENCE);
+        if (algorithmEnd == NOT_FOUND) {
+            return null;
+        }
+        int oid = contentOffset(encodedKey, algorithm);
+        int oidEnd = end(encodedKey, oid, OBJECT_IDENTIFIER);
+        if (oidEnd == NOT_FOUND || oidEnd > algorithmEnd) {
+            return null;
+        }
+
+        for (SigningKeyType type : values()) {
+            if (type.matches(encodedKey, oid, oidEnd, algorithmEnd)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether a key of this type can verify a JWS signed with the algorithm.
+     *
+     * @param algorithm the 'alg' from a JWS header
+     * @return true if this type of key can verify the algorithm
+     */
+    boolean supports(String algorithm) {
+        return algorithms.contains(algorithm);
+    }
+
+    /**
+     * Checks whether the JVM can decode keys of this type, as Ed25519 keys need Java 15 or later.
+     *
+     * @return true if the JVM has a key factory for this type of key
+     */
+    boolean isSupportedByJvm() {
+        return supportedByJvm;
+    }
+
+    /**
+     * Decodes a public key of this type.
+     *
+     * @param encodedKey the DER encoded public key
+     * @return the public key
+     * @throws IllegalArgumentException if the key is invalid or this type of key is not supported by the JVM
+     */
+    PublicKey toPublicKey(byte[] encodedKey) {
+        try {
+            return keyFactory.get().generatePublic(new X509EncodedKeySpec(encodedKey));
+        } catch (InvalidKeySpecException e) {
+            throw new IllegalArgumentException(SigningKeyLocatorImpl.PUBLIC_KEY_CHECK_ERROR + e.getMessage());
+        }
+    }
+
+    private boolean matches(byte[] encodedKey, int oid, int oidEnd, int algorithmEnd) {
+        if (!regionEquals(encodedKey, oid, oidEnd, algorithmOid)) {
+            return false;
+        }
+        if (curveOid == null) {
+            return true;
+        }
+        return end(encodedKey, oidEnd, OBJECT_IDENTIFIER) == algorithmEnd
+                && regionEquals(encodedKey, oidEnd, algorithmEnd, curveOid);
+    }
+
+    private KeyFactory newKeyFactory() {
+        try {
+            return KeyFactory.getInstance(keyFactoryAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(SigningKeyLocatorImpl.PUBLIC_KEY_CHECK_ERROR + keyFactoryAlgorithm
+                    + " keys are not supported by this JVM");
+        }
+    }
+
+    private static boolean hasKeyFactory(String keyFactoryAlgorithm) {
+        try {
+            KeyFactory.getInstance(keyFactoryAlgorithm);
+            return true;
+        } catch (NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Finds the end of the DER element at the offset.
+     *
+     * @return the offset just past the element, or {@link #NOT_FOUND} if it is not a well formed element of the tag
+     */
+    private static int end(byte[] der, int offset, int tag) {
+        if (offset < 0 || offset + 2 > der.length || (der[offset] & BYTE_MASK) != tag) {
+            return NOT_FOUND;
+        }
+        int content = contentOffset(der, offset);
+        if (content == NOT_FOUND) {
+            return NOT_FOUND;
+        }
+
+        int first = der[offset + 1] & BYTE_MASK;
+        long length = first;
+        if ((first & LONG_FORM) != 0) {
+            length = 0;
+            for (int i = offset + 2; i < content; i++) {
+                length = (length << BITS_PER_BYTE) | (der[i] & BYTE_MASK);
+            }
+        }
+        long end = content + length;
+        if (end > der.length) {
+            return NOT_FOUND;
+        }
+        return (int) end;
+    }
+
+    private static int contentOffset(byte[] der, int offset) {
+        if (offset < 0 || offset + 2 > der.length) {
+            return NOT_FOUND;
+        }
+        int first = der[offset + 1] & BYTE_MASK;
+        if ((first & LONG_FORM) == 0) {
+            return offset + 2;
+        }
+        int lengthBytes = first & LENGTH_MASK;
+        if (lengthBytes == 0 || lengthBytes > MAX_LENGTH_BYTES || offset + 2 + lengthBytes > der.length) {
+            return NOT_FOUND;
+        }
+        return offset + 2 + lengthBytes;
+    }
+
+    private static boolean regionEquals(byte[] der, int from, int to, byte[] expected) {
+        return to - from == expected.length
+                && Arrays.equals(Arrays.copyOfRange(der, from, to), expected);
+    }
+
+    /**
+     * The DER encoded object identifiers of the supported key algorithms and curves.
+     */
+    private static final class Oids {
+        // 1.2.840.113549.1.1.1
+        private static final byte[] RSA = {0x06, 0x09, 0x2A, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xF7, 0x0D, 0x01, 0x01, 0x01};
+        // 1.2.840.113549.1.1.10
+        private static final byte[] RSASSA_PSS = {0x06, 0x09, 0x2A, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xF7, 0x0D, 0x01, 0x01, 0x0A};
+        // 1.2.840.10045.2.1
+        private static final byte[] EC = {0x06, 0x07, 0x2A, (byte) 0x86, 0x48, (byte) 0xCE, 0x3D, 0x02, 0x01};
+        // 1.2.840.10045.3.1.7
+        private static final byte[] P256 = {0x06, 0x08, 0x2A, (byte) 0x86, 0x48, (byte) 0xCE, 0x3D, 0x03, 0x01, 0x07};
+        // 1.3.132.0.34
+        private static final byte[] P384 = {0x06, 0x05, 0x2B, (byte) 0x81, 0x04, 0x00, 0x22};
+        // 1.3.132.0.35
+        private static final byte[] P521 = {0x06, 0x05, 0x2B, (byte) 0x81, 0x04, 0x00, 0x23};
+        // 1.3.101.112
+        private static final byte[] ED25519 = {0x06, 0x03, 0x2B, 0x65, 0x70};
+
+        private Oids() {
+        }
+    }
+
+    /**
+     * The names shared by more than one key type.
+     */
+    private static final class Names {
+        private static final String EC = "EC";
+        private static final String PS256 = "PS256";
+        private static final String PS384 = "PS384";
+        private static final String PS512 = "PS512";
+
+        private Names() {
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.onsdigital;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * SnapshotKeyProvider - a {@link JWTKeyProvider} that keeps a local snapshot of the signing keys fetched by another
+ * provider, so that a verifier can start while the key endpoint is unavailable.
+ * <p>
+ * The first call to {@link #getJwtKeys()} returns the keys from the snapshot file straight away, provided the snapshot
+ * is intact and no older than the max staleness, and the keys stay pending reconciliation until a fetch from the
+ * live endpoint succeeds, which verifiers built with a snapshot retry in the background. Every other call fetches
+ * from the wrapped provider and writes any new
+ * keys to the snapshot. If a fetch fails, the keys from a snapshot that is still within the max staleness are
+ * returned instead of the failure. Unchanged keys are only rewritten once the snapshot is half way to its max
+ * staleness. Failing to write the snapshot never fails a fetch. The snapshot holds only the keys, so keys served from
+ * it do not declare the algorithms the wrapped provider reported for them until a fetch succeeds.
+ */
+public final class SnapshotKeyProvider implements JWTKeyProvider {
+
+    static final String KEY_PROVIDER_REQUIRED_ERROR = "A JWT key provider is required to snapshot the signing keys";
+    static final String SNAPSHOT_PATH_REQUIRED_ERROR = "A path is required for the signing key snapshot";
+    static final String MAX_STALENESS_ERROR = "Signing key snapshot max staleness must be greater than zero";
+
+    private final JWTKeyProvider keyProvider;
+    private final KeySetSnapshotFile snapshotFile;
+    private final long maxStalenessMillis;
+    private volatile boolean started;
+    private volatile boolean reconcilePending;
+    private volatile KeySetSnapshotFile.Snapshot snapshot;
+    private volatile Map<String, String> keyAlgorithms = Collections.emptyMap();
+
+    /**
+     * Construct a new {@link SnapshotKeyProvider}.
+     *
+     * @param keyProvider        the provider to fetch the live signing keys from, such as a {@link JWTKeyProviderImpl}
+     * @param snapshotPath       the path of the snapshot file, which is created if it does not exist
+     * @param maxStalenessMillis the maximum age in milliseconds of a snapshot that can be used in place of a fetch
+     * @throws IllegalArgumentException if the provider or path is null or the max staleness is not greater than zero
+     */
+    public SnapshotKeyProvider(JWTKeyProvider keyProvider, Path snapshotPath, long maxStalenessMillis) {
+        if (keyProvider == null) {
+            throw new IllegalArgumentException(KEY_PROVIDER_REQUIRED_ERROR);
+        }
+        if (snapshotPath == null) {
+            throw new IllegalArgumentException(SNAPSHOT_PATH_REQUIRED_ERROR);
+        }
+        if (maxStalenessMillis <= 0) {
+            throw new IllegalArgumentException(MAX_STALENESS_ERROR);
+        }
+
+        this.keyProvider = keyProvider;
+        this.snapshotFile = new KeySetSnapshotFile(snapshotPath);
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    /**
+     * Gets the signing keys, from the snapshot on the first call if it is fresh enough, otherwise from the wrapped
+     * provider, falling back to a fresh enough snapshot if the wrapped provider fails.
+     *
+     * @return the signing keys used for decoding JWT tokens
+     * @throws Exception if the wrapped provider failed and there is no fresh enough snapshot
+     */
+    @Override
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    public Map<String, String> getJwtKeys() throws Exception {
+        if (!started) {
+            started = true;
+            Map<String, String> snapshotKeys = freshSnapshotKeys();
+            if (snapshotKeys != null) {
+                reconcilePending = true;
+                return snapshotKeys;
+            }
+        }
+
+        Map<String, String> signingKeys;
+        try {
+            signingKeys = keyProvider.getJwtKeys();
+            keyAlgorithms = keyProvider.getKeyAlgorithms();
+            reconcilePending = false;
+        } catch (Exception e) {
+            // the wrapped provider may throw any exception, and every failure falls back to the snapshot
+            Map<String, String> snapshotKeys = freshSnapshotKeys();
+            if (snapshotKeys == null) {
+                throw e;
+            }
+            return snapshotKeys;
+        }
+
+        KeySetSnapshotFile.Snapshot current = snapshot;
+        if (current == null || current.getSigningKeys() != signingKeys
+                || System.currentTimeMillis() - current.getWrittenAtMillis() > maxStalenessMillis / 2) {
+            // rewrite unchanged keys half way through the max staleness, so a confirmed snapshot never goes stale
+            save(signingKeys);
+        }
+        return signingKeys;
+    }
+
+    /**
+     * Gets how long the signing keys may be used before they should be fetched again, as reported by the wrapped
+     * provider.
+     *
+     * @return the max age in milliseconds, or zero or a negative value if it is not known
+     */
+    @Override
+    public long getMaxAgeMillis() {
+        return keyProvider.getMaxAgeMillis();
+    }
+
+    /**
+     * Gets the algorithms the wrapped provider declared for the keys of its last successful fetch.
+     *
+     * @return the {@link Map} of key IDs to declared algorithms, without the keys that declare none
+     */
+    @Override
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The map is returned as reported by the wrapped provider")
+    public Map<String, String> getKeyAlgorithms() {
+        return keyAlgorithms;
+    }
+
+    /**
+     * Reports whether the keys were started from the snapshot and no fetch from the wrapped provider has succeeded
+     * since.
+     *
+     * @return true while the keys still need reconciling with the live endpoint
+     */
+    boolean isReconcilePending() {
+        return reconcilePending;
+    }
+
+    private Map<String, String> freshSnapshotKeys() {
+        KeySetSnapshotFile.Snapshot current = snapshot;
+        if (current == null) {
+            try {
+                current = snapshotFile.read();
+            } catch (IOException ignore) {
+                // a corrupt snapshot is treated as no snapshot at all
+                return null;
+            }
+            if (current == null) {
+                return null;
+            }
+            snapshot = current;
+        }
+
+        if (System.currentTimeMillis() - current.getWrittenAtMillis() > maxStalenessMillis) {
+            return null;
+        }
+        return current.getSigningKeys();
+    }
+
+    private void save(Map<String, String> signingKeys) {
+        long now = System.currentTimeMillis();
+        try {
+            snapshotFile.write(signingKeys, now);
+            snapshot = new KeySetSnapshotFile.Snapshot(signingKeys, now);
+        } catch (IOException ignore) {
+            // the snapshot is best effort, so keep serving the fetched keys
+        }
+    }
+}
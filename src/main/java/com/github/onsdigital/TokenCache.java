@@ -0,0 +1,35 @@
+package com.github.onsdigital;
+
+import java.util.Date;
+
+/**
+ * TokenCache is the interface for a cache of successfully verified tokens, such as {@link VerifiedTokenCache}.
+ * <p>
+ * A single cache is shared by every thread verifying tokens, so implementations must be thread-safe. Implementations
+ * must never return a payload after the token's 'exp' claim has passed, as a cache hit skips the signature check and
+ * every claim check entirely. Each verifier looks up and caches tokens in its own scope, so implementations must key
+ * their entries by both the scope and the token, so one cache can safely be shared by several verifiers.
+ */
+public interface TokenCache {
+
+    /**
+     * Returns the payload previously cached for the token, or null if the token is not cached or its entry expired.
+     *
+     * @param scope the scope of the verifier looking up the token
+     * @param token the JWT token
+     * @param now   the current time in milliseconds, from the verifier's clock
+     * @return the cached {@link UserDataPayload}, or null on a cache miss
+     */
+    UserDataPayload get(long scope, String token, long now);
+
+    /**
+     * Caches the payload of a successfully verified token.
+     *
+     * @param scope      the scope of the verifier that verified the token
+     * @param token      the JWT token that was verified
+     * @param payload    the {@link UserDataPayload} built from the token
+     * @param expiration the value of the token's 'exp' claim, or null if the token does not expire
+     * @param now        the current time in milliseconds, from the verifier's clock
+     */
+    void put(long scope, String token, UserDataPayload payload, Date expiration, long now);
+}
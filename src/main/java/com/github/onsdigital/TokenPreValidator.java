@@ -0,0 +1,369 @@
+package com.github.onsdigital;
+
+import com.github.onsdigital.exceptions.JWTDecodeException;
+import com.github.onsdigital.exceptions.JWTTokenExpiredException;
+import com.github.onsdigital.exceptions.JWTVerificationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.Arrays;
+
+/**
+ * TokenPreValidator - cheaply rejects tokens that are bound to fail verification, before they reach the full jjwt
+ * decode and signature check.
+ * <p>
+ * The token size, its three segment structure and base64url alphabet are checked, and the header and payload are
+ * decoded into a per-thread scratch buffer and scanned, without building any JSON objects, for a supported 'alg', a
+ * 'kid' the key locator may resolve and an 'exp' that has not passed, allowing for the configured clock skew. Anything
+ * the scan cannot be sure about, such as escaped JSON strings, is left for jjwt to decide. Rejections throw the same exceptions, with the same messages, as
+ * full verification would; the one difference is that an expired token is reported as expired even if its signature
+ * is also invalid.
+ */
+final class TokenPreValidator {
+
+    static final int DEFAULT_MAX_TOKEN_LENGTH = 16 * 1024;
+
+    private static final int NOT_FOUND = -1;
+    private static final int BITS_PER_CHAR = 6;
+    private static final int BITS_PER_BYTE = 8;
+    private static final int CHARS_PER_QUANTUM = 4;
+    private static final int BYTES_PER_QUANTUM = 3;
+    private static final int ASCII_LIMIT = 128;
+    private static final int MAX_SAFE_DIGITS = 15;
+    private static final int RADIX = 10;
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final String BASE64URL_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+    private static final int[] BASE64URL_VALUES = new int[ASCII_LIMIT];
+    private static final byte[] ALG = ascii("alg");
+    private static final byte[] KID = ascii("kid");
+    private static final byte[] EXP = ascii("exp");
+    private static final byte[][] SUPPORTED_ALGORITHMS = {
+            ascii("RS256"), ascii("RS384"), ascii("RS512"),
+            ascii("PS256"), ascii("PS384"), ascii("PS512"),
+            ascii("ES256"), ascii("ES384"), ascii("ES512"),
+            ascii("EdDSA"),
+    };
+
+    static {
+        Arrays.fill(BASE64URL_VALUES, NOT_FOUND);
+        for (int i = 0; i < BASE64URL_ALPHABET.length(); i++) {
+            BASE64URL_VALUES[BASE64URL_ALPHABET.charAt(i)] = i;
+        }
+    }
+
+    private final SigningKeyLocatorImpl keyLocator;
+    private final int maxTokenLength;
+    private final Clock clock;
+    private final long clockSkewMillis;
+    private final ThreadLocal<byte[]> scratch;
+    private final VerificationFailures failures;
+
+    /**
+     * Construct a new {@link TokenPreValidator} that checks 'exp' against the system clock.
+     *
+     * @param keyLocator     the key locator used to check the token 'kid'
+     * @param maxTokenLength the maximum length of token accepted
+     */
+    TokenPreValidator(SigningKeyLocatorImpl keyLocator, int maxTokenLength) {
+        this(keyLocator, maxTokenLength, ValidationOptions.DEFAULT);
+    }
+
+    /**
+     * Construct a new {@link TokenPreValidator}.
+     *
+     * @param keyLocator     the key locator used to check the token 'kid'
+     * @param maxTokenLength the maximum length of token accepted
+     * @param options        the clock and clock skew 'exp' is checked against
+     */
+    TokenPreValidator(SigningKeyLocatorImpl keyLocator, int maxTokenLength, ValidationOptions options) {
+        this(keyLocator, maxTokenLength, options, VerificationFailures.WITH_STACK_TRACES);
+    }
+
+    /**
+     * Construct a new {@link TokenPreValidator} that rejects tokens with the supplied failures.
+     *
+     * @param keyLocator     the key locator used to check the token 'kid'
+     * @param maxTokenLength the maximum length of token accepted
+     * @param options        the clock and clock skew 'exp' is checked against
+     * @param failures       the exceptions thrown when a token is rejected
+     */
+    TokenPreValidator(SigningKeyLocatorImpl keyLocator, int maxTokenLength, ValidationOptions options,
+                      VerificationFailures failures) {
+        this.failures = failures;
+        this.keyLocator = keyLocator;
+        this.maxTokenLength = maxTokenLength;
+        this.clock = options.getClock();
+        this.clockSkewMillis = options.getClockSkewMillis();
+        final int scratchLength = maxTokenLength / CHARS_PER_QUANTUM * BYTES_PER_QUANTUM + BYTES_PER_QUANTUM;
+        this.scratch = ThreadLocal.withInitial(() -> new byte[scratchLength]);
+    }
+
+    /**
+     * Rejects the token if it cannot pass verification. Null and empty tokens are left for jjwt to reject.
+     *
+     * @param token the JWT token
+     * @throws JWTDecodeException       if the token is malformed, including a missing 'alg', too large or its 'kid'
+     *                                  cannot be resolved
+     * @throws JWTVerificationException if the token 'alg' is not a supported signature algorithm
+     * @throws JWTTokenExpiredException if the token 'exp' has passed
+     */
+    void validate(String token) {
+        if (token == null || token.isEmpty()) {
+            return;
+        }
+        if (token.length() > maxTokenLength) {
+            throw malformed();
+        }
+
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = token.indexOf('.', headerEnd + 1);
+        if (headerEnd <= 0 || payloadEnd <= headerEnd + 1 || token.indexOf('.', payloadEnd + 1) >= 0
+                || !isBase64Url(token, payloadEnd + 1, token.length())) {
+            throw malformed();
+        }
+
+        byte[] buffer = scratch.get();
+        validateHeader(buffer, decode(token, 0, headerEnd, buffer), payloadEnd + 1 < token.length());
+        validatePayload(buffer, decode(token, headerEnd + 1, payloadEnd, buffer));
+    }
+
+    private void validateHeader(byte[] header, int length, boolean signed) {
+        if (firstNonWhitespace(header, 0, length) != '{') {
+            throw malformed();
+        }
+
+        validateAlgorithm(header, length);
+        if (!signed) {
+            throw malformed();
+        }
+
+        int kid = findTopLevelValue(header, length, KID);
+        if (!isStringAt(header, kid, length)) {
+            throw failures.decode(VerificationOutcome.UNKNOWN_KID, SigningKeyLocatorImpl.PUBLIC_KEY_ERROR);
+        }
+        int kidEnd = endOfString(header, kid + 1, length);
+        if (isUnescaped(header, kid + 1, kidEnd, length)
+                && !keyLocator.mayLocate(new String(header, kid + 1, kidEnd - kid - 1, StandardCharsets.UTF_8))) {
+            throw failures.decode(VerificationOutcome.UNKNOWN_KID, SigningKeyLocatorImpl.PUBLIC_KEY_ERROR);
+        }
+    }
+
+    private void validateAlgorithm(byte[] header, int length) {
+        // as for jjwt, an 'alg' that is missing, empty or not a string makes the header malformed
+        int alg = findTopLevelValue(header, length, ALG);
+        if (!isStringAt(header, alg, length)) {
+            throw malformed();
+        }
+        int algEnd = endOfString(header, alg + 1, length);
+        if (algEnd == alg + 1) {
+            throw malformed();
+        }
+        if (isUnescaped(header, alg + 1, algEnd, length) && !isSupportedAlgorithm(header, alg + 1, algEnd)) {
+            throw failures.verification(VerificationOutcome.UNSUPPORTED_ALGORITHM, JWTVerifierImpl.ALGORITHM_ERROR);
+        }
+    }
+
+    private void validatePayload(byte[] payload, int length) {
+        int exp = findTopLevelValue(payload, length, EXP);
+        if (exp == NOT_FOUND) {
+            return;
+        }
+
+        long seconds = 0;
+        int i = exp;
+        while (i < length && isDigit(payload[i])) {
+            seconds = seconds * RADIX + (payload[i] - '0');
+            i++;
+        }
+        int digits = i - exp;
+        if (digits == 0 || digits > MAX_SAFE_DIGITS || hasExponent(payload, i, length)) {
+            // not a plain integral NumericDate, so leave it for jjwt to interpret
+            return;
+        }
+        if (seconds * MILLIS_PER_SECOND + clockSkewMillis < clock.millis()) {
+            throw failures.expired(JWTVerifierImpl.EXPIRED_TOKEN_ERROR);
+        }
+    }
+
+    private static boolean hasExponent(byte[] json, int from, int length) {
+        int i = from;
+        if (i < length && json[i] == '.') {
+            i++;
+            while (i < length && isDigit(json[i])) {
+                i++;
+            }
+        }
+        return i < length && (json[i] == 'e' || json[i] == 'E');
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Decodes the unpadded base64url segment of the token into the buffer.
+     *
+     * @return the number of bytes decoded
+     * @throws JWTDecodeException if the segment is not valid base64url
+     */
+    private int decode(String token, int from, int to, byte[] buffer) {
+        if ((to - from) % CHARS_PER_QUANTUM == 1) {
+            throw malformed();
+        }
+
+        int bits = 0;
+        int accumulator = 0;
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            int value = base64UrlValue(token.charAt(i));
+            if (value == NOT_FOUND) {
+                throw malformed();
+            }
+            accumulator = (accumulator << BITS_PER_CHAR) | value;
+            bits += BITS_PER_CHAR;
+            if (bits >= BITS_PER_BYTE) {
+                bits -= BITS_PER_BYTE;
+                buffer[length++] = (byte) (accumulator >> bits);
+                accumulator &= (1 << bits) - 1;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isBase64Url(String token, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (base64UrlValue(token.charAt(i)) == NOT_FOUND) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int base64UrlValue(char c) {
+        if (c >= ASCII_LIMIT) {
+            return NOT_FOUND;
+        }
+        return BASE64URL_VALUES[c];
+    }
+
+    /**
+     * Finds the value of a key in the top level object of a JSON document.
+     *
+     * @return the index of the first byte of the value, or {@link #NOT_FOUND}
+     */
+    private static int findTopLevelValue(byte[] json, int length, byte[] key) {
+        int depth = 0;
+        int i = 0;
+        while (i < length) {
+            byte b = json[i];
+            if (b == '"') {
+                int end = endOfString(json, i + 1, length);
+                if (depth == 1 && regionEquals(json, i + 1, end, key)) {
+                    int colon = skipWhitespace(json, end + 1, length);
+                    if (colon < length && json[colon] == ':') {
+                        return skipWhitespace(json, colon + 1, length);
+                    }
+                }
+                i = end;
+            } else {
+                depth += depthChange(b);
+            }
+            i++;
+        }
+        return NOT_FOUND;
+    }
+
+    private static int depthChange(byte b) {
+        switch (b) {
+            case '{':
+            case '[':
+                return 1;
+            case '}':
+            case ']':
+                return -1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Finds the closing quote of a JSON string, skipping escaped characters.
+     *
+     * @return the index of the closing quote, or the length if the string is not terminated
+     */
+    private static int endOfString(byte[] json, int from, int length) {
+        int i = from;
+        while (i < length && json[i] != '"') {
+            if (json[i] == '\\') {
+                i++;
+            }
+            i++;
+        }
+        return Math.min(i, length);
+    }
+
+    private static boolean isStringAt(byte[] json, int index, int length) {
+        return index != NOT_FOUND && index < length && json[index] == '"';
+    }
+
+    private static boolean isUnescaped(byte[] json, int from, int to, int length) {
+        if (to >= length) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (json[i] == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSupportedAlgorithm(byte[] json, int from, int to) {
+        for (byte[] algorithm : SUPPORTED_ALGORITHMS) {
+            if (regionEquals(json, from, to, algorithm)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionEquals(byte[] json, int from, int to, byte[] expected) {
+        if (to - from != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (json[from + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(byte[] json, int from, int length) {
+        int i = from;
+        while (i < length && isWhitespace(json[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int firstNonWhitespace(byte[] json, int from, int length) {
+        int i = skipWhitespace(json, from, length);
+        if (i >= length) {
+            return NOT_FOUND;
+        }
+        return json[i];
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private JWTDecodeException malformed() {
+        return failures.decode(VerificationOutcome.MALFORMED, JWTVerifierImpl.TOKEN_NOT_VALID_ERROR);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,19 +1,40 @@
 package com.github.onsdigital;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.jsonwebtoken.Claims;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * UserDataPayload model contains the user detail fields from the JWT tokens.
+ * <p>
+ * A payload built by a {@link JWTVerifier} shares one immutable list of groups with the verified claims rather than
+ * copying it, and is safe to share between threads (for example through a {@link VerifiedTokenCache}).
  */
 public final class UserDataPayload {
 
+    /**
+     * The number of groups from which {@link #isMemberOf(String)} looks groups up in a hash set rather than scanning
+     * the list.
+     */
+    static final int GROUP_SET_THRESHOLD = 8;
+
     private final String id;
     private final String email;
     private final List<String> groups;
+    private final String clientId;
+    private final String scope;
+    private final Instant issuedAt;
+    private final Instant expiresAt;
+    private final String tokenId;
+    private volatile Set<String> groupSet;
+    private volatile GroupMembership groupMembership;
 
     /**
      * Constructs a new {@link UserDataPayload}.
@@ -23,14 +44,37 @@ public final class UserDataPayload {
      * @param groups the list of group IDs for the groups the user is a member of
      */
     public UserDataPayload(String id, String email, List<String> groups) {
+        this(id, email, copyOf(groups), null, null, null, null, null);
+    }
+
+    private UserDataPayload(String id, String email, List<String> groups, String clientId, String scope,
+                            Instant issuedAt, Instant expiresAt, String tokenId) {
         this.id = id;
         this.email = email;
+        this.groups = groups;
+        this.clientId = clientId;
+        this.scope = scope;
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+        this.tokenId = tokenId;
+    }
 
-        if (groups == null) {
-            this.groups = Collections.unmodifiableList(new ArrayList<>());
-        } else {
-            this.groups = Collections.unmodifiableList(new ArrayList<>(groups));
-        }
+    /**
+     * Constructs a new {@link UserDataPayload} from verified claims.
+     *
+     * @param id     the user's ID
+     * @param email  the user's email
+     * @param groups the unmodifiable list of group IDs, which is held rather than copied
+     * @param claims the verified claims to take the remaining user details from
+     * @return the {@link UserDataPayload}
+     */
+    static UserDataPayload ofClaims(String id, String email, List<String> groups, Claims claims) {
+        return new UserDataPayload(id, email, groups,
+                claims.get("client_id", String.class),
+                claims.get("scope", String.class),
+                toInstant(claims.getIssuedAt()),
+                toInstant(claims.getExpiration()),
+                claims.getId());
     }
 
     public String getId() {
@@ -50,4 +94,113 @@ public final class UserDataPayload {
     public List<String> getGroups() {
         return groups;
     }
+
+    /**
+     * Checks whether the user is a member of a group. Large lists of groups are indexed in a hash set the first time
+     * this is called, so each check takes constant time.
+     *
+     * @param group the ID of the group
+     * @return true if the user is a member of the group
+     */
+    public boolean isMemberOf(String group) {
+        if (groups.size() < GROUP_SET_THRESHOLD) {
+            return groups.contains(group);
+        }
+
+        Set<String> set = groupSet;
+        if (set == null) {
+            // racing threads build equal sets, so whichever is kept does not matter
+            set = Collections.unmodifiableSet(new HashSet<>(groups));
+            groupSet = set;
+        }
+        return set.contains(group);
+    }
+
+    /**
+     * Gets the user's groups compiled into a bitset by a {@link GroupPolicy}, compiling them if this payload was last
+     * checked against a different policy.
+     *
+     * @param policy the policy being checked
+     * @return the bitset of the user's groups
+     */
+    long[] groupMembership(GroupPolicy policy) {
+        GroupMembership membership = groupMembership;
+        if (membership == null || membership.policy != policy) {
+            membership = new GroupMembership(policy, policy.compile(groups));
+            groupMembership = membership;
+        }
+        return membership.bits;
+    }
+
+    /**
+     * Gets the ID of the client the token was issued to.
+     *
+     * @return the token's 'client_id' claim, or null if it has none
+     */
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Gets the scopes the token was issued for.
+     *
+     * @return the token's space separated 'scope' claim, or null if it has none
+     */
+    public String getScope() {
+        return scope;
+    }
+
+    /**
+     * Gets the time the token was issued.
+     *
+     * @return the token's 'iat' claim, or null if it has none
+     */
+    public Instant getIssuedAt() {
+        return issuedAt;
+    }
+
+    /**
+     * Gets the time the token expires.
+     *
+     * @return the token's 'exp' claim, or null if it does not expire
+     */
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Gets the unique ID of the token.
+     *
+     * @return the token's 'jti' claim, or null if it has none
+     */
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    private static List<String> copyOf(List<String> groups) {
+        if (groups == null || groups.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(groups));
+    }
+
+    private static Instant toInstant(Date date) {
+        if (date == null) {
+            return null;
+        }
+        return date.toInstant();
+    }
+
+    /**
+     * The groups of a user compiled by a {@link GroupPolicy}.
+     */
+    private static final class GroupMembership {
+        private final GroupPolicy policy;
+        private final long[] bits;
+
+        private GroupMembership(GroupPolicy policy, long[] bits) {
+            this.policy = policy;
+            this.bits = bits;
+        }
+    }
 }
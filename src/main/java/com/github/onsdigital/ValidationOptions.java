@@ -0,0 +1,182 @@
+package com.github.onsdigital;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ValidationOptions - the checks made on the claims of a token once its signature is verified, and the clock they
+ * are made against.
+ * <p>
+ * By default no issuer, audience or token use is required, no clock skew is allowed and the system clock is used. The
+ * same clock and skew are used by every stage of verification, including the early rejection of expired tokens and
+ * the expiry of entries in a {@link VerifiedTokenCache}.
+ * <pre>{@code
+ * ValidationOptions options = ValidationOptions.builder()
+ *         .clockSkewSeconds(30)
+ *         .requireIssuer("https://cognito-idp.eu-west-2.amazonaws.com/eu-west-2_example")
+ *         .requireAudience("57cbishk4j24pabc1234567890")
+ *         .requireTokenUse("access")
+ *         .build();
+ * }</pre>
+ */
+public final class ValidationOptions {
+
+    /** The options used when none are given: no claims are required and no clock skew is allowed. */
+    public static final ValidationOptions DEFAULT = builder().build();
+
+    static final String CLOCK_REQUIRED_ERROR = "A clock is required";
+    static final String CLOCK_SKEW_ERROR = "Clock skew must not be negative";
+    static final String VALUE_REQUIRED_ERROR = "At least one non-null value is required";
+
+    private final Clock clock;
+    private final long clockSkewSeconds;
+    private final String issuer;
+    private final Set<String> audiences;
+    private final Set<String> tokenUses;
+
+    private ValidationOptions(Builder builder) {
+        this.clock = builder.clock;
+        this.clockSkewSeconds = builder.clockSkewSeconds;
+        this.issuer = builder.issuer;
+        this.audiences = builder.audiences;
+        this.tokenUses = builder.tokenUses;
+    }
+
+    /**
+     * Creates a builder of {@link ValidationOptions}.
+     *
+     * @return the {@link Builder}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    Clock getClock() {
+        return clock;
+    }
+
+    long getClockSkewSeconds() {
+        return clockSkewSeconds;
+    }
+
+    long getClockSkewMillis() {
+        return TimeUnit.SECONDS.toMillis(clockSkewSeconds);
+    }
+
+    String getIssuer() {
+        return issuer;
+    }
+
+    Set<String> getAudiences() {
+        return audiences;
+    }
+
+    Set<String> getTokenUses() {
+        return tokenUses;
+    }
+
+    /**
+     * Builder of {@link ValidationOptions}.
+     */
+    public static final class Builder {
+        private Clock clock = Clock.systemUTC();
+        private long clockSkewSeconds;
+        private String issuer;
+        private Set<String> audiences;
+        private Set<String> tokenUses;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the clock tokens are validated against, for example a fixed clock in tests and benchmarks.
+         *
+         * @param validationClock the clock
+         * @return this builder
+         * @throws IllegalArgumentException if the clock is null
+         */
+        public Builder clock(Clock validationClock) {
+            if (validationClock == null) {
+                throw new IllegalArgumentException(CLOCK_REQUIRED_ERROR);
+            }
+            this.clock = validationClock;
+            return this;
+        }
+
+        /**
+         * Sets the clock skew allowed when checking the 'exp' and 'nbf' claims, so that small differences between the
+         * clocks of the issuer and of this service do not reject valid tokens.
+         *
+         * @param skewSeconds the allowed clock skew in seconds
+         * @return this builder
+         * @throws IllegalArgumentException if the skew is negative
+         */
+        public Builder clockSkewSeconds(long skewSeconds) {
+            if (skewSeconds < 0) {
+                throw new IllegalArgumentException(CLOCK_SKEW_ERROR);
+            }
+            this.clockSkewSeconds = skewSeconds;
+            return this;
+        }
+
+        /**
+         * Requires the token's 'iss' claim to be the issuer.
+         *
+         * @param trustedIssuer the trusted issuer
+         * @return this builder
+         * @throws IllegalArgumentException if the issuer is null
+         */
+        public Builder requireIssuer(String trustedIssuer) {
+            if (trustedIssuer == null) {
+                throw new IllegalArgumentException(VALUE_REQUIRED_ERROR);
+            }
+            this.issuer = trustedIssuer;
+            return this;
+        }
+
+        /**
+         * Requires the token to be issued to one of the audiences, matched against both the 'aud' claim of ID tokens
+         * and the 'client_id' claim of Cognito access tokens.
+         *
+         * @param acceptedAudiences the accepted audiences
+         * @return this builder
+         * @throws IllegalArgumentException if no audiences are given or any audience is null
+         */
+        public Builder requireAudience(String... acceptedAudiences) {
+            this.audiences = setOf(acceptedAudiences);
+            return this;
+        }
+
+        /**
+         * Requires the token's 'token_use' claim to be one of the token uses, such as 'access'.
+         *
+         * @param acceptedTokenUses the accepted token uses
+         * @return this builder
+         * @throws IllegalArgumentException if no token uses are given or any token use is null
+         */
+        public Builder requireTokenUse(String... acceptedTokenUses) {
+            this.tokenUses = setOf(acceptedTokenUses);
+            return this;
+        }
+
+        /**
+         * Builds the {@link ValidationOptions}.
+         *
+         * @return the {@link ValidationOptions}
+         */
+        public ValidationOptions build() {
+            return new ValidationOptions(this);
+        }
+
+        private static Set<String> setOf(String... values) {
+            if (values == null || values.length == 0 || Arrays.asList(values).contains(null)) {
+                throw new IllegalArgumentException(VALUE_REQUIRED_ERROR);
+            }
+            return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(values)));
+        }
+    }
+}
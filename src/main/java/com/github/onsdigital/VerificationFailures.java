@@ -0,0 +1,188 @@
+package com.github.onsdigital;
+
+import com.github.onsdigital.exceptions.JWTDecodeException;
+import com.github.onsdigital.exceptions.JWTTokenExpiredException;
+import com.github.onsdigital.exceptions.JWTVerificationException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * VerificationFailures - creates the exceptions thrown when a token is rejected.
+ * <p>
+ * By default each failure is a new exception with a stack trace. Under rejection-heavy traffic, such as a flood of
+ * forged or expired tokens, filling in those stack traces dominates the cost of rejecting a token, so failures can
+ * instead be stackless: a single pre-allocated exception per message, with no stack trace or cause, shared by every
+ * thread. The messages of failures are constants, so only a handful of instances are ever allocated.
+ * <p>
+ * Every failure carries the {@link VerificationOutcome} it is recorded as, so that metrics do not depend on the
+ * wording of its message.
+ */
+final class VerificationFailures {
+
+    static final VerificationFailures WITH_STACK_TRACES = new VerificationFailures(false);
+    static final VerificationFailures STACKLESS = new VerificationFailures(true);
+
+    private final boolean stackless;
+    private final Map<String, JWTDecodeException> decodeFailures = new ConcurrentHashMap<>();
+    private final Map<String, JWTVerificationException> verificationFailures = new ConcurrentHashMap<>();
+    private final Map<String, JWTTokenExpiredException> expiredFailures = new ConcurrentHashMap<>();
+
+    private VerificationFailures(boolean stackless) {
+        this.stackless = stackless;
+    }
+
+    /**
+     * Gets the failures for a verifier.
+     *
+     * @param stackless true for shared stackless failures, false for a new exception with a stack trace per failure
+     * @return the {@link VerificationFailures}
+     */
+    static VerificationFailures of(boolean stackless) {
+        if (stackless) {
+            return STACKLESS;
+        }
+        return WITH_STACK_TRACES;
+    }
+
+    boolean isStackless() {
+        return stackless;
+    }
+
+    /**
+     * Gets the outcome a rejection is recorded as.
+     *
+     * @param e the exception a token was rejected with
+     * @return the outcome carried by a failure, or {@link VerificationOutcome#MALFORMED} for any other exception
+     */
+    static VerificationOutcome outcomeOf(RuntimeException e) {
+        if (e instanceof Rejection) {
+            return ((Rejection) e).getOutcome();
+        }
+        return VerificationOutcome.MALFORMED;
+    }
+
+    JWTDecodeException decode(VerificationOutcome outcome, String message) {
+        return decode(outcome, message, null);
+    }
+
+    /**
+     * Gets the failure for a token that is malformed, or whose claims or signing key cannot be decoded.
+     *
+     * @param outcome the outcome the failure is recorded as
+     * @param message the exception message, which must be a constant
+     * @param cause   the cause of the failure, which stackless failures drop
+     * @return the {@link JWTDecodeException}
+     */
+    JWTDecodeException decode(VerificationOutcome outcome, String message, Throwable cause) {
+        if (!stackless) {
+            return new DecodeFailure(outcome, message, cause, true);
+        }
+        JWTDecodeException failure = decodeFailures.get(message);
+        if (failure == null) {
+            decodeFailures.putIfAbsent(message, new DecodeFailure(outcome, message, null, false));
+            failure = decodeFailures.get(message);
+        }
+        return failure;
+    }
+
+    JWTVerificationException verification(VerificationOutcome outcome, String message) {
+        return verification(outcome, message, null);
+    }
+
+    /**
+     * Gets the failure for a token whose signature, algorithm or claims are not accepted.
+     *
+     * @param outcome the outcome the failure is recorded as
+     * @param message the exception message, which must be a constant
+     * @param cause   the cause of the failure, which stackless failures drop
+     * @return the {@link JWTVerificationException}
+     */
+    JWTVerificationException verification(VerificationOutcome outcome, String message, Throwable cause) {
+        if (!stackless) {
+            return new VerificationFailure(outcome, message, cause, true);
+        }
+        JWTVerificationException failure = verificationFailures.get(message);
+        if (failure == null) {
+            verificationFailures.putIfAbsent(message, new VerificationFailure(outcome, message, null, false));
+            failure = verificationFailures.get(message);
+        }
+        return failure;
+    }
+
+    JWTTokenExpiredException expired(String message) {
+        return expired(message, null);
+    }
+
+    /**
+     * Gets the failure for a token that has expired, which is recorded as {@link VerificationOutcome#EXPIRED}.
+     *
+     * @param message the exception message, which must be a constant
+     * @param cause   the cause of the failure, which stackless failures drop
+     * @return the {@link JWTTokenExpiredException}
+     */
+    JWTTokenExpiredException expired(String message, Throwable cause) {
+        if (!stackless) {
+            return new ExpiredFailure(message, cause, true);
+        }
+        JWTTokenExpiredException failure = expiredFailures.get(message);
+        if (failure == null) {
+            expiredFailures.putIfAbsent(message, new ExpiredFailure(message, null, false));
+            failure = expiredFailures.get(message);
+        }
+        return failure;
+    }
+
+    /**
+     * A rejection that carries the outcome it is recorded as.
+     */
+    interface Rejection {
+        VerificationOutcome getOutcome();
+    }
+
+    private static final class DecodeFailure extends JWTDecodeException implements Rejection {
+        private static final long serialVersionUID = 1L;
+
+        private final VerificationOutcome outcome;
+
+        private DecodeFailure(VerificationOutcome outcome, String message, Throwable cause, boolean writableStackTrace) {
+            super(message, cause, writableStackTrace);
+            this.outcome = outcome;
+        }
+
+        @Override
+        public VerificationOutcome getOutcome() {
+            return outcome;
+        }
+    }
+
+    private static final class VerificationFailure extends JWTVerificationException implements Rejection {
+        private static final long serialVersionUID = 1L;
+
+        private final VerificationOutcome outcome;
+
+        private VerificationFailure(VerificationOutcome outcome, String message, Throwable cause,
+                                    boolean writableStackTrace) {
+            super(message, cause, writableStackTrace);
+            this.outcome = outcome;
+        }
+
+        @Override
+        public VerificationOutcome getOutcome() {
+            return outcome;
+        }
+    }
+
+    private static final class ExpiredFailure extends JWTTokenExpiredException implements Rejection {
+        private static final long serialVersionUID = 1L;
+
+        private ExpiredFailure(String message, Throwable cause, boolean writableStackTrace) {
+            super(message, cause, writableStackTrace);
+        }
+
+        @Override
+        public VerificationOutcome getOutcome() {
+            return VerificationOutcome.EXPIRED;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.onsdigital;
+
+/**
+ * VerificationMetrics is the interface for a sink of token verification and signing key refresh metrics.
+ * <p>
+ * Implementations are called on the verification hot path from many threads at once, so must be thread-safe and
+ * should neither block nor allocate.
+ */
+public interface VerificationMetrics {
+
+    /**
+     * A {@link VerificationMetrics} that discards everything recorded.
+     */
+    VerificationMetrics NOOP = new VerificationMetrics() {
+        @Override
+        public void recordVerification(VerificationOutcome outcome, long durationNanos) {
+            // metrics disabled
+        }
+
+        @Override
+        public void recordKeyRefresh(long durationNanos, boolean success) {
+            // metrics disabled
+        }
+    };
+
+    /**
+     * Records the outcome and duration of a single token verification.
+     *
+     * @param outcome       the outcome of the verification
+     * @param durationNanos the time taken to verify the token in nanoseconds
+     */
+    void recordVerification(VerificationOutcome outcome, long durationNanos);
+
+    /**
+     * Records the duration and success of a single fetch of the signing keys.
+     *
+     * @param durationNanos the time taken to fetch the signing keys in nanoseconds, including any retries
+     * @param success       true if the signing keys were fetched, false if the fetch failed
+     */
+    void recordKeyRefresh(long durationNanos, boolean success);
+}
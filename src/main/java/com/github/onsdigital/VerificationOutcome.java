@@ -0,0 +1,28 @@
+package com.github.onsdigital;
+
+/**
+ * VerificationOutcome - the outcome of a call to {@link JWTVerifier#verify(String)}, as recorded by
+ * {@link VerificationMetrics}.
+ */
+public enum VerificationOutcome {
+    /** The token was verified and its user details returned. */
+    SUCCESS,
+    /** The token was verified earlier and its user details were returned from the cache. */
+    CACHE_HIT,
+    /** The token has expired. */
+    EXPIRED,
+    /** The token signature did not match the signing key. */
+    SIGNATURE_FAILURE,
+    /** The token was signed with an algorithm not supported by the signing key. */
+    UNSUPPORTED_ALGORITHM,
+    /** The token 'kid' did not match any of the signing keys. */
+    UNKNOWN_KID,
+    /** The token was verified but is missing the user's username or ID. */
+    MISSING_CLAIM,
+    /** The token was verified but is not valid yet, or its issuer, audience or token use is not accepted. */
+    INVALID_CLAIM,
+    /** The token was verified but has been revoked. */
+    REVOKED,
+    /** The token is null, empty or not a well formed JWT. */
+    MALFORMED
+}
@@ -0,0 +1,88 @@
+package com.github.onsdigital;
+
+import com.github.onsdigital.exceptions.JWTDecodeException;
+import com.github.onsdigital.exceptions.JWTTokenExpiredException;
+import com.github.onsdigital.exceptions.JWTVerificationException;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * VerificationResult - the result of verifying a single token, on its own with {@link JWTVerifier#tryVerify(String)}
+ * or as part of a batch, holding either the verified user details or the outcome and exception of the rejection.
+ */
+public final class VerificationResult {
+
+    private final String token;
+    private final UserDataPayload payload;
+    private final RuntimeException error;
+    private final VerificationOutcome outcome;
+
+    private VerificationResult(String token, UserDataPayload payload, RuntimeException error,
+                               VerificationOutcome outcome) {
+        this.token = token;
+        this.payload = payload;
+        this.error = error;
+        this.outcome = outcome;
+    }
+
+    static VerificationResult valid(String token, UserDataPayload payload) {
+        return new VerificationResult(token, payload, null, VerificationOutcome.SUCCESS);
+    }
+
+    static VerificationResult invalid(String token, RuntimeException error) {
+        return new VerificationResult(token, null, error, JWTVerifierImpl.outcomeOf(error));
+    }
+
+    /**
+     * Verifies the token, capturing the exception of a rejection rather than propagating it.
+     *
+     * @param verifier the verifier to verify the token with
+     * @param token    the JWT token to verify
+     * @return the {@link VerificationResult} for the token
+     */
+    static VerificationResult of(JWTVerifier verifier, String token) {
+        try {
+            return valid(token, verifier.verify(token));
+        } catch (JWTVerificationException | JWTDecodeException | JWTTokenExpiredException
+                 | IllegalArgumentException e) {
+            // the exceptions a JWTVerifier rejects a token with, including jjwt's for a null or empty token
+            return invalid(token, e);
+        }
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Gets the user details from the token.
+     *
+     * @return the {@link UserDataPayload} if the token is valid, otherwise null
+     */
+    public UserDataPayload getPayload() {
+        return payload;
+    }
+
+    /**
+     * Gets the exception thrown when verifying the token. The exceptions returned by
+     * {@link JWTVerifierImpl#tryVerify(String)} are shared and have no stack trace.
+     *
+     * @return the exception that {@link JWTVerifier#verify(String)} threw, or null if the token is valid
+     */
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The exception is returned as thrown by the verifier")
+    public RuntimeException getError() {
+        return error;
+    }
+
+    /**
+     * Gets the reason code for the result, without inspecting the exception.
+     *
+     * @return {@link VerificationOutcome#SUCCESS} if the token is valid, otherwise the reason it was rejected
+     */
+    public VerificationOutcome getOutcome() {
+        return outcome;
+    }
+
+    public boolean isValid() {
+        return error == null;
+    }
+}
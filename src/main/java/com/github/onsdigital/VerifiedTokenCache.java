@@ -0,0 +1,246 @@
+package com.github.onsdigital;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * VerifiedTokenCache - a bounded, least recently used cache of successfully verified tokens.
+ * <p>
+ * Entries are keyed by the SHA-256 digest of the verifier's scope and the token, so the raw token is never retained,
+ * and expire no later than the token's 'exp' claim. A cache hit returns the {@link UserDataPayload} built when the
+ * token was first verified, skipping the signature check entirely.
+ * <p>
+ * Large caches are split into up to {@value #MAX_SEGMENTS} segments, each with its own lock and an equal share of the
+ * max size, so verifiers sharing the cache do not all contend on one lock. Least recently used entries are evicted per
+ * segment.
+ */
+public final class VerifiedTokenCache implements TokenCache {
+
+    static final String MAX_SIZE_ERROR = "Cache max size must be greater than zero";
+    static final String MAX_TTL_ERROR = "Cache max time to live must be greater than zero";
+    static final int MAX_SEGMENTS = 16;
+    static final int MIN_SEGMENT_SIZE = 64;
+    private static final long UNSCOPED = 0;
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final long maxTtlMillis;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Construct a new {@link VerifiedTokenCache}.
+     *
+     * @param maxSize      the maximum number of verified tokens to hold, least recently used entries are evicted first
+     * @param maxTtlMillis the maximum time in milliseconds an entry is held for, regardless of the token's 'exp' claim
+     * @throws IllegalArgumentException if either limit is not greater than zero
+     */
+    public VerifiedTokenCache(int maxSize, long maxTtlMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException(MAX_SIZE_ERROR);
+        }
+        if (maxTtlMillis <= 0) {
+            throw new IllegalArgumentException(MAX_TTL_ERROR);
+        }
+
+        this.maxTtlMillis = maxTtlMillis;
+        this.segments = new Segment[segmentCount(maxSize)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(maxSize / segments.length);
+        }
+    }
+
+    private static int segmentCount(int maxSize) {
+        int count = 1;
+        while (count < MAX_SEGMENTS && maxSize / (count * 2) >= MIN_SEGMENT_SIZE) {
+            count *= 2;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the payload previously cached for the token, or null if the token is not cached or its entry expired.
+     *
+     * @param token the JWT token
+     * @return the cached {@link UserDataPayload}, or null on a cache miss
+     */
+    UserDataPayload get(String token) {
+        return get(UNSCOPED, token, System.currentTimeMillis());
+    }
+
+    @Override
+    public UserDataPayload get(long scope, String token, long now) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+
+        TokenDigest key = TokenDigest.of(scope, token);
+        UserDataPayload payload = segmentFor(key).get(key, now);
+        if (payload == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return payload;
+    }
+
+    /**
+     * Caches the payload of a successfully verified token.
+     *
+     * @param token      the JWT token that was verified
+     * @param payload    the {@link UserDataPayload} built from the token
+     * @param expiration the value of the token's 'exp' claim, or null if the token does not expire
+     */
+    void put(String token, UserDataPayload payload, Date expiration) {
+        put(UNSCOPED, token, payload, expiration, System.currentTimeMillis());
+    }
+
+    @Override
+    public void put(long scope, String token, UserDataPayload payload, Date expiration, long now) {
+        long expiresAt = now + maxTtlMillis;
+        if (expiration != null) {
+            expiresAt = Math.min(expiresAt, expiration.getTime());
+        }
+        if (expiresAt <= now) {
+            return;
+        }
+
+        TokenDigest key = TokenDigest.of(scope, token);
+        segmentFor(key).put(key, new Entry(payload, expiresAt));
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return the cache hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that were not answered from the cache.
+     *
+     * @return the cache miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of entries currently held, including any expired entries not yet evicted.
+     *
+     * @return the number of cached entries
+     */
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.count();
+        }
+        return size;
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private Segment segmentFor(TokenDigest key) {
+        return segments[key.hash & (segments.length - 1)];
+    }
+
+    private static final class Segment {
+        private final Map<TokenDigest, Entry> entries;
+
+        private Segment(int maxSize) {
+            this.entries = new LinkedHashMap<TokenDigest, Entry>(maxSize, LOAD_FACTOR, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<TokenDigest, Entry> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        private synchronized UserDataPayload get(TokenDigest key, long now) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt <= now) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.payload;
+        }
+
+        private synchronized void put(TokenDigest key, Entry entry) {
+            entries.put(key, entry);
+        }
+
+        private synchronized int count() {
+            return entries.size();
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+        }
+    }
+
+    private static final class Entry {
+        private final UserDataPayload payload;
+        private final long expiresAt;
+
+        private Entry(UserDataPayload payload, long expiresAt) {
+            this.payload = payload;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class TokenDigest {
+        private final byte[] digest;
+        private final int hash;
+
+        private TokenDigest(byte[] digest) {
+            this.digest = digest;
+            this.hash = Arrays.hashCode(digest);
+        }
+
+        private static TokenDigest of(long scope, String token) {
+            MessageDigest messageDigest = DIGEST.get();
+            for (int i = Long.BYTES - 1; i >= 0; i--) {
+                messageDigest.update((byte) (scope >>> (i * Byte.SIZE)));
+            }
+            return new TokenDigest(messageDigest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TokenDigest && Arrays.equals(digest, ((TokenDigest) o).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
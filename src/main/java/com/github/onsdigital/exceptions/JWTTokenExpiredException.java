@@ -23,4 +23,16 @@ public class JWTTokenExpiredException extends RuntimeException {
     public JWTTokenExpiredException(String message, Throwable cause) {
         super(message, cause);
     }
+
+    /**
+     * Construct a new {@link JWTTokenExpiredException}, optionally without a stack trace. An exception without a stack trace also
+     * ignores suppressed exceptions, so a single instance can be shared and thrown by many threads.
+     *
+     * @param message            the exception message
+     * @param cause              the {@link Throwable} that originally caused the issue, or null
+     * @param writableStackTrace false to skip filling in the stack trace
+     */
+    public JWTTokenExpiredException(String message, Throwable cause, boolean writableStackTrace) {
+        super(message, cause, writableStackTrace, writableStackTrace);
+    }
 }
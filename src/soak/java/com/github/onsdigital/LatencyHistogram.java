@@ -0,0 +1,83 @@
+package com.github.onsdigital;
+
+/**
+ * LatencyHistogram - a fixed size, log-linear histogram of latencies in nanoseconds, recorded by a single thread
+ * without allocating.
+ * <p>
+ * Each power of two is split into 64 linear sub-buckets, so a recorded latency is reported to within about 1.6% of its
+ * value. Histograms recorded by separate threads are merged once recording has finished.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAGNITUDES = Long.SIZE - SUB_BUCKET_BITS + 1;
+    private static final int TOP_BITS = SUB_BUCKET_BITS + 1;
+
+    private final long[] counts = new long[MAGNITUDES * SUB_BUCKETS];
+    private long totalCount;
+    private long maxValue;
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[bucketOf(value)]++;
+        totalCount++;
+        maxValue = Math.max(maxValue, value);
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    long getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * Gets the latency at a percentile.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the highest latency in the bucket holding the percentile, in nanoseconds
+     */
+    long valueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // the top seven bits of the value, from 64 to 127, pick the sub-bucket within its power of two
+        int magnitude = Long.SIZE - Long.numberOfLeadingZeros(value) - TOP_BITS;
+        int subBucket = (int) (value >>> magnitude) - SUB_BUCKETS;
+        return (magnitude + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueOf(int bucket) {
+        int magnitude = bucket / SUB_BUCKETS - 1;
+        if (magnitude < 0) {
+            return bucket;
+        }
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << magnitude;
+        return lowest + (1L << magnitude) - 1;
+    }
+}
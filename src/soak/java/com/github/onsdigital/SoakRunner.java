@@ -0,0 +1,420 @@
+package com.github.onsdigital;
+
+import io.jsonwebtoken.Jwts;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * SoakRunner - hammers one shared verifier from many threads with a mixed corpus of valid, expired, unknown 'kid' and
+ * badly signed tokens, while a {@link StubIdentityApi} rotates a signing key underneath it, and reports the latency
+ * percentiles, throughput and GC pressure of each verifier mode.
+ * <p>
+ * Every verification is checked against the outcomes its token allows. Tokens signed by the stable key must always
+ * verify to their own user, and tokens signed by a rotating key may only verify or be rejected for an unknown 'kid',
+ * so a signature failure or a mixed up user during a key swap is reported as a violation and fails the run.
+ * <p>
+ * Arguments: the thread count, the seconds to run each mode for, the key rotation interval in milliseconds and a
+ * comma separated list of modes: verify, cached, stackless and tryVerify.
+ */
+public final class SoakRunner {
+
+    private static final int STABLE_TOKENS = 64;
+    private static final int ROTATING_TOKENS = 16;
+    private static final int MAX_REPORTED_VIOLATIONS = 10;
+    private static final long RESIGN_POLL_MILLIS = 10;
+    private static final long ONE_HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long ONE_DAY = TimeUnit.DAYS.toMillis(1);
+
+    private SoakRunner() { }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Integer.parseInt(args[0]);
+        long durationMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(args[1]));
+        long rotationIntervalMillis = Long.parseLong(args[2]);
+        List<Mode> modes = new ArrayList<>();
+        for (String mode : args[3].split(",")) {
+            modes.add(Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT)));
+        }
+
+        long violations = 0;
+        try (StubIdentityApi identityApi = new StubIdentityApi()) {
+            identityApi.start(rotationIntervalMillis);
+            Corpus corpus = new Corpus(identityApi);
+            System.out.printf("Soak: %d threads, %ds per mode, key rotation every %dms, identity api %s%n", threads,
+                    TimeUnit.MILLISECONDS.toSeconds(durationMillis), rotationIntervalMillis, identityApi.url());
+            for (Mode mode : modes) {
+                try (JWTVerifierImpl verifier = mode.build(identityApi.url(), rotationIntervalMillis)) {
+                    violations += run(mode, verifier, corpus, identityApi, threads, durationMillis);
+                }
+            }
+        }
+
+        if (violations > 0) {
+            System.out.printf("FAILED: %d verifications had an outcome their token does not allow%n", violations);
+            System.exit(1);
+        }
+    }
+
+    private static long run(Mode mode, JWTVerifierImpl verifier, Corpus corpus, StubIdentityApi identityApi,
+                            int threads, long durationMillis) throws InterruptedException {
+        Worker[] workers = new Worker[threads];
+        CountDownLatch startLatch = new CountDownLatch(1);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(mode, verifier, corpus, startLatch, deadline);
+            workers[i].setName("soak-worker-" + i);
+            workers[i].start();
+        }
+
+        long rotationsBefore = identityApi.getRotationCount();
+        long fetchesBefore = identityApi.getFetchCount();
+        long[] gcBefore = gcCountAndTime();
+        long start = System.nanoTime();
+        startLatch.countDown();
+        for (Worker worker : workers) {
+            worker.join();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        long[] gcAfter = gcCountAndTime();
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        long[] outcomes = new long[VerificationOutcome.values().length];
+        long allocatedBytes = 0;
+        long violations = 0;
+        List<String> violationMessages = new ArrayList<>();
+        for (Worker worker : workers) {
+            latencies.add(worker.latencies);
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] += worker.outcomes[i];
+            }
+            if (worker.allocatedBytes < 0 || allocatedBytes < 0) {
+                allocatedBytes = -1;
+            } else {
+                allocatedBytes += worker.allocatedBytes;
+            }
+            violations += worker.violations;
+            violationMessages.addAll(worker.violationMessages);
+        }
+
+        long operations = latencies.getTotalCount();
+        System.out.printf("%n== %s ==%n", mode.name().toLowerCase(Locale.ROOT));
+        System.out.printf("throughput   %,.0f verifications/s (%,d in %.1fs)%n",
+                operations / (elapsedNanos / 1e9), operations, elapsedNanos / 1e9);
+        System.out.printf("latency      p50 %s  p99 %s  p999 %s  max %s%n",
+                micros(latencies.valueAtPercentile(50)), micros(latencies.valueAtPercentile(99)),
+                micros(latencies.valueAtPercentile(99.9)), micros(latencies.getMaxValue()));
+        System.out.printf("gc           %d collections, %dms, %s allocated per verification%n",
+                gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1], bytesPerOperation(allocatedBytes, operations));
+        System.out.printf("keys         %d rotations, %d fetches%n",
+                identityApi.getRotationCount() - rotationsBefore, identityApi.getFetchCount() - fetchesBefore);
+        StringBuilder outcomeSummary = new StringBuilder();
+        for (VerificationOutcome outcome : VerificationOutcome.values()) {
+            if (outcomes[outcome.ordinal()] > 0) {
+                outcomeSummary.append(String.format("  %s %,d", outcome, outcomes[outcome.ordinal()]));
+            }
+        }
+        System.out.printf("outcomes   %s%n", outcomeSummary);
+        System.out.printf("violations   %d%n", violations);
+        for (String message : violationMessages) {
+            System.out.printf("  %s%n", message);
+        }
+        return violations;
+    }
+
+    private static long[] gcCountAndTime() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1fus", nanos / 1e3);
+    }
+
+    private static String bytesPerOperation(long allocatedBytes, long operations) {
+        if (allocatedBytes < 0 || operations == 0) {
+            return "n/a";
+        }
+        return String.format("%,dB", allocatedBytes / operations);
+    }
+
+    /**
+     * Measures the bytes allocated by the current thread, where the JVM supports it.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspotThreads = (com.sun.management.ThreadMXBean) threads;
+            if (hotspotThreads.isThreadAllocatedMemorySupported() && hotspotThreads.isThreadAllocatedMemoryEnabled()) {
+                return hotspotThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The ways a verifier is built and called.
+     */
+    private enum Mode {
+        VERIFY,
+        CACHED,
+        STACKLESS,
+        TRYVERIFY;
+
+        JWTVerifierImpl build(String identityApiUrl, long rotationIntervalMillis) throws Exception {
+            JWTVerifierBuilder builder = JWTVerifierImpl.builder()
+                    .identityApi(identityApiUrl)
+                    .refresh(rotationIntervalMillis, rotationIntervalMillis / 4);
+            if (this == CACHED) {
+                builder.cache(new VerifiedTokenCache(STABLE_TOKENS + ROTATING_TOKENS * 4, ONE_HOUR));
+            } else if (this == STACKLESS) {
+                builder.stacklessFailures();
+            }
+            return builder.build();
+        }
+
+        /**
+         * Verifies a token, returning its payload or the exception it was rejected with.
+         */
+        Object verify(JWTVerifierImpl verifier, String token) {
+            if (this == TRYVERIFY) {
+                VerificationResult result = verifier.tryVerify(token);
+                if (result.isValid()) {
+                    return result.getPayload();
+                }
+                return result.getError();
+            }
+            try {
+                return verifier.verify(token);
+            } catch (RuntimeException e) {
+                return e;
+            }
+        }
+    }
+
+    /**
+     * The kinds of token in the corpus, the share of verifications each makes up, and the outcomes each allows.
+     */
+    private enum TokenKind {
+        STABLE(50, EnumSet.of(VerificationOutcome.SUCCESS)),
+        ROTATING(20, EnumSet.of(VerificationOutcome.SUCCESS, VerificationOutcome.UNKNOWN_KID)),
+        EXPIRED(10, EnumSet.of(VerificationOutcome.EXPIRED)),
+        UNKNOWN_KID(10, EnumSet.of(VerificationOutcome.UNKNOWN_KID)),
+        BAD_SIGNATURE(10, EnumSet.of(VerificationOutcome.SIGNATURE_FAILURE));
+
+        private final int share;
+        private final Set<VerificationOutcome> allowedOutcomes;
+
+        TokenKind(int share, Set<VerificationOutcome> allowedOutcomes) {
+            this.share = share;
+            this.allowedOutcomes = allowedOutcomes;
+        }
+
+        static TokenKind pick(int percent) {
+            int cumulative = 0;
+            for (TokenKind kind : values()) {
+                cumulative += kind.share;
+                if (percent < cumulative) {
+                    return kind;
+                }
+            }
+            return STABLE;
+        }
+    }
+
+    /**
+     * A token and the user it was issued to.
+     */
+    private static final class CorpusToken {
+        private final TokenKind kind;
+        private final String token;
+        private final String userId;
+
+        private CorpusToken(TokenKind kind, String token, String userId) {
+            this.kind = kind;
+            this.token = token;
+            this.userId = userId;
+        }
+    }
+
+    /**
+     * The tokens the workers verify. Tokens signed by the rotating key are re-signed on a background thread soon
+     * after each rotation, so that signing does not count against the workers' latency or allocation.
+     */
+    private static final class Corpus {
+        private final StubIdentityApi identityApi;
+        private final List<CorpusToken> fixedTokens = new ArrayList<>();
+        private final AtomicReference<RotatingTokens> rotatingTokens = new AtomicReference<>();
+        private final AtomicLong userIds = new AtomicLong();
+
+        private Corpus(StubIdentityApi identityApi) throws Exception {
+            this.identityApi = identityApi;
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            KeyPair unpublishedKey = generator.generateKeyPair();
+            StubIdentityApi.KeyGeneration stableKey = identityApi.stableKey();
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < STABLE_TOKENS; i++) {
+                fixedTokens.add(token(TokenKind.STABLE, stableKey.keyId, stableKey.keyPair, now + ONE_DAY));
+                fixedTokens.add(token(TokenKind.EXPIRED, stableKey.keyId, stableKey.keyPair, now - ONE_HOUR));
+                fixedTokens.add(token(TokenKind.UNKNOWN_KID, "soak-unknown-" + i, stableKey.keyPair, now + ONE_DAY));
+                fixedTokens.add(token(TokenKind.BAD_SIGNATURE, stableKey.keyId, unpublishedKey, now + ONE_DAY));
+            }
+            rotatingTokens.set(new RotatingTokens(identityApi.currentKey(), this));
+            Thread signer = new Thread(this::resignRotatingTokens, "soak-corpus-signer");
+            signer.setDaemon(true);
+            signer.start();
+        }
+
+        CorpusToken pick(ThreadLocalRandom random) {
+            TokenKind kind = TokenKind.pick(random.nextInt(100));
+            if (kind == TokenKind.ROTATING) {
+                CorpusToken[] tokens = rotatingTokens.get().tokens;
+                return tokens[random.nextInt(tokens.length)];
+            }
+            while (true) {
+                CorpusToken token = fixedTokens.get(random.nextInt(fixedTokens.size()));
+                if (token.kind == kind) {
+                    return token;
+                }
+            }
+        }
+
+        private void resignRotatingTokens() {
+            while (true) {
+                StubIdentityApi.KeyGeneration currentKey = identityApi.currentKey();
+                if (rotatingTokens.get().key != currentKey) {
+                    rotatingTokens.set(new RotatingTokens(currentKey, this));
+                }
+                try {
+                    Thread.sleep(RESIGN_POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private CorpusToken token(TokenKind kind, String keyId, KeyPair keyPair, long expiresAtMillis) {
+            String userId = "soak-user-" + userIds.incrementAndGet();
+            String token = Jwts.builder()
+                    .header().keyId(keyId).and()
+                    .subject(userId)
+                    .issuedAt(new Date(expiresAtMillis - ONE_DAY))
+                    .expiration(new Date(expiresAtMillis))
+                    .claim("username", userId + "@example.com")
+                    .claim("cognito:groups", Arrays.asList("role-admin", "role-publisher"))
+                    .signWith(keyPair.getPrivate(), Jwts.SIG.RS256)
+                    .compact();
+            return new CorpusToken(kind, token, userId);
+        }
+    }
+
+    /**
+     * The tokens signed by one generation of the rotating key.
+     */
+    private static final class RotatingTokens {
+        private final StubIdentityApi.KeyGeneration key;
+        private final CorpusToken[] tokens = new CorpusToken[ROTATING_TOKENS];
+
+        private RotatingTokens(StubIdentityApi.KeyGeneration key, Corpus corpus) {
+            this.key = key;
+            long expiresAtMillis = System.currentTimeMillis() + ONE_DAY;
+            for (int i = 0; i < tokens.length; i++) {
+                tokens[i] = corpus.token(TokenKind.ROTATING, key.keyId, key.keyPair, expiresAtMillis);
+            }
+        }
+    }
+
+    /**
+     * A thread verifying tokens from the corpus until the deadline, recording the latency and outcome of each.
+     */
+    private static final class Worker extends Thread {
+        private final Mode mode;
+        private final JWTVerifierImpl verifier;
+        private final Corpus corpus;
+        private final CountDownLatch startLatch;
+        private final long deadline;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final long[] outcomes = new long[VerificationOutcome.values().length];
+        private final List<String> violationMessages = new ArrayList<>();
+        private long violations;
+        private long allocatedBytes;
+
+        private Worker(Mode mode, JWTVerifierImpl verifier, Corpus corpus, CountDownLatch startLatch, long deadline) {
+            this.mode = mode;
+            this.verifier = verifier;
+            this.corpus = corpus;
+            this.startLatch = startLatch;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            try {
+                startLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long allocatedBefore = allocatedBytes();
+            while (System.nanoTime() < deadline) {
+                CorpusToken token = corpus.pick(random);
+                long start = System.nanoTime();
+                Object result = mode.verify(verifier, token.token);
+                latencies.record(System.nanoTime() - start);
+                check(token, result);
+            }
+            allocatedBytes = -1;
+            if (allocatedBefore >= 0) {
+                allocatedBytes = allocatedBytes() - allocatedBefore;
+            }
+        }
+
+        private void check(CorpusToken token, Object result) {
+            VerificationOutcome outcome;
+            String violation = null;
+            if (result instanceof UserDataPayload) {
+                outcome = VerificationOutcome.SUCCESS;
+                String userId = ((UserDataPayload) result).getId();
+                if (!token.userId.equals(userId)) {
+                    violation = "token of " + token.userId + " verified as " + userId;
+                }
+            } else {
+                outcome = JWTVerifierImpl.outcomeOf((RuntimeException) result);
+            }
+            outcomes[outcome.ordinal()]++;
+
+            if (violation == null && !token.kind.allowedOutcomes.contains(outcome)) {
+                violation = token.kind + " token of " + token.userId + " was " + outcome + ": " + result;
+            }
+            if (violation != null) {
+                violations++;
+                if (violationMessages.size() < MAX_REPORTED_VIOLATIONS) {
+                    violationMessages.add(violation);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.github.onsdigital;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StubIdentityApi - a local identity api serving signing keys on '/v1/jwt-keys' that rotates a signing key underneath
+ * the verifier under test.
+ * <p>
+ * A stable key is always published. The rotating key is published one rotation interval before tokens are signed
+ * with it, and stays published for one interval after it is replaced, as a real identity api does, so that verifiers
+ * refreshing once an interval know a key before it is used and tokens signed just before a rotation remain
+ * verifiable. Each rotation gives the rotating key a new key ID. The key pairs are generated up front and reused in
+ * turn, so that key generation does not compete with the verifier for CPU, but consecutive keys are always different.
+ */
+final class StubIdentityApi implements Closeable {
+
+    static final String STABLE_KEY_ID = "soak-stable";
+    private static final String ROTATING_KEY_ID = "soak-rotating-";
+    private static final String KEYS_ROUTE = "/v1/jwt-keys";
+    private static final int KEY_PAIRS = 8;
+
+    private final HttpServer server;
+    private final ExecutorService serverExecutor;
+    private final ScheduledExecutorService rotator;
+    private final KeyGeneration stableKey;
+    private final KeyPair[] rotatingKeyPairs = new KeyPair[KEY_PAIRS];
+    private final AtomicLong rotationCount = new AtomicLong();
+    private final AtomicLong fetchCount = new AtomicLong();
+    private volatile KeyGeneration previousKey;
+    private volatile KeyGeneration currentKey;
+    private volatile KeyGeneration nextKey;
+
+    StubIdentityApi() throws IOException, NoSuchAlgorithmException {
+        this.stableKey = new KeyGeneration(STABLE_KEY_ID, generateKeyPair());
+        for (int i = 0; i < KEY_PAIRS; i++) {
+            rotatingKeyPairs[i] = generateKeyPair();
+        }
+        this.currentKey = rotatingKey(0);
+        this.nextKey = rotatingKey(1);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext(KEYS_ROUTE, this::serveKeys);
+        this.serverExecutor = Executors.newFixedThreadPool(2);
+        this.server.setExecutor(serverExecutor);
+        this.rotator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "soak-key-rotator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts serving signing keys, and rotates the rotating key at a fixed interval.
+     *
+     * @param rotationIntervalMillis the interval in milliseconds between rotations
+     */
+    void start(long rotationIntervalMillis) {
+        server.start();
+        rotator.scheduleAtFixedRate(this::rotate, rotationIntervalMillis, rotationIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    KeyGeneration stableKey() {
+        return stableKey;
+    }
+
+    KeyGeneration currentKey() {
+        return currentKey;
+    }
+
+    long getRotationCount() {
+        return rotationCount.get();
+    }
+
+    long getFetchCount() {
+        return fetchCount.get();
+    }
+
+    @Override
+    public void close() {
+        rotator.shutdownNow();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private void rotate() {
+        long rotation = rotationCount.incrementAndGet();
+        previousKey = currentKey;
+        currentKey = nextKey;
+        nextKey = rotatingKey(rotation + 1);
+    }
+
+    private KeyGeneration rotatingKey(long generation) {
+        return new KeyGeneration(ROTATING_KEY_ID + generation, rotatingKeyPairs[(int) (generation % KEY_PAIRS)]);
+    }
+
+    private void serveKeys(HttpExchange exchange) throws IOException {
+        fetchCount.incrementAndGet();
+        Map<String, String> keys = new LinkedHashMap<>();
+        keys.put(stableKey.keyId, stableKey.encodedPublicKey());
+        KeyGeneration previous = previousKey;
+        if (previous != null) {
+            keys.put(previous.keyId, previous.encodedPublicKey());
+        }
+        KeyGeneration current = currentKey;
+        keys.put(current.keyId, current.encodedPublicKey());
+        KeyGeneration next = nextKey;
+        keys.put(next.keyId, next.encodedPublicKey());
+
+        byte[] body = new Gson().toJson(keys).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static KeyPair generateKeyPair() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * A signing key published by the stub, with the key ID tokens signed by it carry.
+     */
+    static final class KeyGeneration {
+        final String keyId;
+        final KeyPair keyPair;
+
+        private KeyGeneration(String keyId, KeyPair keyPair) {
+            this.keyId = keyId;
+            this.keyPair = keyPair;
+        }
+
+        String encodedPublicKey() {
+            return Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.onsdigital;
+
+import com.github.onsdigital.exceptions.JWTDecodeException;
+import com.github.onsdigital.exceptions.JWTTokenExpiredException;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AsyncJWTVerifierImplTests {
+
+    private static final String KEY_ID = "async-key";
+    private static final String USER_ID = "aaaaaaaa-bbbb-cccc-dddd-eeeeeeeeeeee";
+    private static final String USERNAME = "janedoe@example.com";
+    private static final long ONE_HOUR = 60 * 60 * 1000L;
+
+    private KeyPair keyPair;
+    private Map<String, String> signingKeys;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        signingKeys = Collections.singletonMap(KEY_ID,
+                Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
+    }
+
+    @Test
+    void constructor_ShouldNotBlock_WhenKeysStillLoading() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys()).thenAnswer(invocation -> {
+            release.await();
+            return signingKeys;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            AsyncJWTVerifierImpl verifier = new AsyncJWTVerifierImpl(keyProvider, executor);
+            CompletableFuture<UserDataPayload> result = verifier.verifyAsync(token(ONE_HOUR));
+
+            assertFalse(verifier.isReady());
+            assertFalse(result.isDone());
+
+            release.countDown();
+            UserDataPayload payload = result.get(5, TimeUnit.SECONDS);
+
+            assertTrue(verifier.isReady());
+            assertEquals(USER_ID, payload.getId());
+            assertEquals(USERNAME, payload.getEmail());
+            verify(keyProvider, times(1)).getJwtKeys();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void buildAsync_ShouldFetchKeysOffCommonPool_WhenNoExecutorSet() throws Exception {
+        CompletableFuture<Thread> fetchThread = new CompletableFuture<>();
+        AsyncJWTVerifierImpl verifier = JWTVerifierImpl.builder()
+                .keyProvider(() -> {
+                    fetchThread.complete(Thread.currentThread());
+                    return signingKeys;
+                })
+                .buildAsync();
+
+        assertEquals(USER_ID, verifier.verifyAsync(token(ONE_HOUR)).get(5, TimeUnit.SECONDS).getId());
+        Thread thread = fetchThread.get(5, TimeUnit.SECONDS);
+        assertFalse(thread instanceof ForkJoinWorkerThread);
+        assertTrue(thread.isDaemon());
+    }
+
+    @Test
+    void verifyAsync_ShouldCompleteExceptionally_WhenTokenExpired() throws Exception {
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys()).thenReturn(signingKeys);
+        AsyncJWTVerifierImpl verifier = new AsyncJWTVerifierImpl(keyProvider, Runnable::run);
+
+        assertThatThrownBy(() -> verifier.verifyAsync(token(-ONE_HOUR)).get())
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(JWTTokenExpiredException.class);
+    }
+
+    @Test
+    void verifyAsync_ShouldRejectUnknownKid_WhenInitialLoadFailed() throws Exception {
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys())
+                .thenThrow(new Exception("Failed to get jwt keys:"))
+                .thenReturn(signingKeys);
+        AsyncJWTVerifierImpl verifier = new AsyncJWTVerifierImpl(keyProvider, Runnable::run);
+
+        assertTrue(verifier.isReady());
+        assertThatThrownBy(() -> verifier.verifyAsync(token(ONE_HOUR)).get())
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(JWTDecodeException.class)
+                .hasMessageContaining(SigningKeyLocatorImpl.PUBLIC_KEY_ERROR);
+    }
+
+    @Test
+    void close_ShouldStopRefreshingSigningKeys() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys()).thenAnswer(invocation -> {
+            fetches.incrementAndGet();
+            return signingKeys;
+        });
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.withoutKeys(keyProvider,
+                SigningKeyLocatorImpl.DEFAULT_UNKNOWN_KEY_ID_COOLDOWN_MILLIS);
+        SigningKeyRefresher keyRefresher = new SigningKeyRefresher(keyLocator, 10, 0);
+        AsyncJWTVerifierImpl verifier = new AsyncJWTVerifierImpl(new JWTVerifierImpl(keyLocator, null, keyRefresher,
+                VerificationMetrics.NOOP, ValidationOptions.DEFAULT), keyLocator, Runnable::run);
+        keyRefresher.start();
+        verify(keyProvider, Mockito.timeout(5000).atLeast(3)).getJwtKeys();
+
+        verifier.close();
+        // let a refresh that was already running when the verifier closed finish
+        Thread.sleep(50);
+        int fetchesWhenClosed = fetches.get();
+        Thread.sleep(100);
+
+        assertEquals(fetchesWhenClosed, fetches.get());
+        assertEquals(USER_ID, verifier.verifyAsync(token(ONE_HOUR)).get(5, TimeUnit.SECONDS).getId());
+    }
+
+    private String token(long expiresInMillis) {
+        return Jwts.builder()
+                .header().keyId(KEY_ID).and()
+                .subject(USER_ID)
+                .claim("username", USERNAME)
+                .expiration(new Date(System.currentTimeMillis() + expiresInMillis))
+                .signWith(keyPair.getPrivate())
+                .compact();
+    }
+}
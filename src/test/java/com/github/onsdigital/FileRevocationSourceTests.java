@@ -0,0 +1,74 @@
+package com.github.onsdigital;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileRevocationSourceTests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void fetchRevocations_ShouldSkipBlankAndCommentLines() throws Exception {
+        Path file = write("# logged out sessions\ntoken-1\n\n  token-2  \n");
+
+        assertEquals(Arrays.asList("token-1", "token-2"), fetch(new FileRevocationSource(file)));
+    }
+
+    @Test
+    void fetchRevocations_ShouldReturnOnlyAppendedLines_WhenFileAppended() throws Exception {
+        Path file = write("token-1\n");
+        FileRevocationSource source = new FileRevocationSource(file);
+
+        assertEquals(Collections.singletonList("token-1"), fetch(source));
+        assertEquals(Collections.emptyList(), fetch(source));
+
+        append(file, "token-2\ntoken-");
+        assertEquals(Collections.singletonList("token-2"), fetch(source));
+
+        append(file, "3\n");
+        assertEquals(Collections.singletonList("token-3"), fetch(source));
+    }
+
+    @Test
+    void fetchRevocations_ShouldReadFromStart_WhenFileReplaced() throws Exception {
+        Path file = write("token-1\ntoken-2\n");
+        FileRevocationSource source = new FileRevocationSource(file);
+        fetch(source);
+
+        write("token-3\n");
+
+        assertEquals(Collections.singletonList("token-3"), fetch(source));
+    }
+
+    @Test
+    void fetchRevocations_ShouldThrow_WhenFileMissing() {
+        FileRevocationSource source = new FileRevocationSource(tempDir.resolve("missing"));
+
+        assertThatThrownBy(source::fetchRevocations).isInstanceOf(NoSuchFileException.class);
+    }
+
+    private Path write(String content) throws Exception {
+        return Files.write(tempDir.resolve("revocations"), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void append(Path file, String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private static ArrayList<String> fetch(FileRevocationSource source) throws Exception {
+        return new ArrayList<>(source.fetchRevocations());
+    }
+}
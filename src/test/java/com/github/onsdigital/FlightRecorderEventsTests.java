@@ -0,0 +1,198 @@
+package com.github.onsdigital;
+
+import com.sun.net.httpserver.HttpServer;
+import io.jsonwebtoken.Jwts;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlightRecorderEventsTests {
+
+    private static final String KEY_ID = "recorded-key";
+    private static final String USER_ID = "aaaaaaaa-bbbb-cccc-dddd-eeeeeeeeeeee";
+    private static final long ONE_HOUR = 60 * 60 * 1000L;
+    private static final String VERIFICATION = "com.github.onsdigital.Verification";
+    private static final String KEY_LOCATION = "com.github.onsdigital.KeyLocation";
+    private static final String SIGNATURE_CHECK = "com.github.onsdigital.SignatureCheck";
+    private static final String KEY_FETCH = "com.github.onsdigital.KeyFetch";
+    private static final String KEY_SET_SWAP = "com.github.onsdigital.KeySetSwap";
+
+    @TempDir
+    Path tempDir;
+
+    private KeyPair keyPair;
+    private Map<String, String> signingKeys;
+    private HttpServer server;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        signingKeys = Collections.singletonMap(KEY_ID,
+                Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
+    }
+
+    @AfterEach
+    void afterEach() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void verify_ShouldEmitVerificationEvents_WhenRecording() throws Exception {
+        JWTVerifierImpl verifier = JWTVerifierImpl.builder().signingKeys(signingKeys).build();
+        String token = token(keyPair.getPrivate(), KEY_ID);
+
+        List<RecordedEvent> events = record(() -> verifier.verify(token),
+                VERIFICATION, KEY_LOCATION, SIGNATURE_CHECK);
+
+        assertEquals(VerificationOutcome.SUCCESS.name(), only(events, VERIFICATION).getString("outcome"));
+        RecordedEvent location = only(events, KEY_LOCATION);
+        assertEquals(KEY_ID, location.getString("keyId"));
+        assertEquals("RS256", location.getString("algorithm"));
+        assertTrue(location.getBoolean("found"));
+        RecordedEvent check = only(events, SIGNATURE_CHECK);
+        assertEquals("RS256", check.getString("algorithm"));
+        assertTrue(check.getBoolean("valid"));
+    }
+
+    @Test
+    void verify_ShouldEmitRejectionOutcome_WhenSignatureInvalid() throws Exception {
+        JWTVerifierImpl verifier = JWTVerifierImpl.builder().signingKeys(signingKeys).build();
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        String token = token(generator.generateKeyPair().getPrivate(), KEY_ID);
+
+        List<RecordedEvent> events = record(() -> assertThatThrownBy(() -> verifier.verify(token)),
+                VERIFICATION, KEY_LOCATION, SIGNATURE_CHECK);
+
+        assertEquals(VerificationOutcome.SIGNATURE_FAILURE.name(), only(events, VERIFICATION).getString("outcome"));
+        assertTrue(only(events, KEY_LOCATION).getBoolean("found"));
+        assertFalse(only(events, SIGNATURE_CHECK).getBoolean("valid"));
+    }
+
+    @Test
+    void verify_ShouldNotEmitVerificationEvents_WhenNotEnabled() throws Exception {
+        JWTVerifierImpl verifier = JWTVerifierImpl.builder().signingKeys(signingKeys).build();
+        String token = token(keyPair.getPrivate(), KEY_ID);
+
+        List<RecordedEvent> events = record(() -> verifier.verify(token), KEY_FETCH);
+
+        assertEquals(0, named(events, VERIFICATION).size());
+        assertEquals(0, named(events, KEY_LOCATION).size());
+        assertEquals(0, named(events, SIGNATURE_CHECK).size());
+    }
+
+    @Test
+    void getJwtKeys_ShouldEmitKeyFetchEvent_WithAttemptsAndStatusCode() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/v1/jwt-keys", exchange -> {
+            if (requests.incrementAndGet() < 3) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = ("{\"" + KEY_ID + "\":\"" + signingKeys.get(KEY_ID) + "\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        String url = "http://localhost:" + server.getAddress().getPort();
+        JWTKeyProviderImpl keyProvider = new JWTKeyProviderImpl(url, 5, 5000, 5, new RequestBuilder());
+
+        List<RecordedEvent> events = record(keyProvider::getJwtKeys, KEY_FETCH);
+
+        RecordedEvent fetch = only(events, KEY_FETCH);
+        assertEquals(url, fetch.getString("url"));
+        assertEquals(3, fetch.getInt("attempts"));
+        assertEquals(200, fetch.getInt("statusCode"));
+        assertTrue(fetch.getBoolean("success"));
+    }
+
+    @Test
+    void refresh_ShouldEmitKeySetSwapEvent_WhenKeysChange() throws Exception {
+        Map<String, String> rotatedKeys = new HashMap<>(signingKeys);
+        rotatedKeys.put("rotated-key", signingKeys.get(KEY_ID));
+        AtomicInteger fetches = new AtomicInteger();
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.fromKeyProvider(
+                () -> fetches.getAndIncrement() == 0 ? signingKeys : rotatedKeys);
+
+        List<RecordedEvent> events = record(keyLocator::refresh, KEY_SET_SWAP);
+
+        RecordedEvent swap = only(events, KEY_SET_SWAP);
+        assertEquals(1, swap.getInt("previousKeyCount"));
+        assertEquals(2, swap.getInt("keyCount"));
+    }
+
+    private List<RecordedEvent> record(RecordedAction action, String... eventNames) throws Exception {
+        Path file = tempDir.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            for (String eventName : eventNames) {
+                recording.enable(eventName).withoutThreshold();
+            }
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file);
+    }
+
+    private static RecordedEvent only(List<RecordedEvent> events, String eventName) {
+        List<RecordedEvent> named = named(events, eventName);
+        assertEquals(1, named.size(), eventName);
+        return named.get(0);
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String eventName) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(eventName))
+                .collect(Collectors.toList());
+    }
+
+    private static String token(PrivateKey privateKey, String keyId) {
+        return Jwts.builder()
+                .header().keyId(keyId).and()
+                .subject(USER_ID)
+                .claim("username", "janedoe@example.com")
+                .expiration(new Date(System.currentTimeMillis() + ONE_HOUR))
+                .signWith(privateKey, Jwts.SIG.RS256)
+                .compact();
+    }
+
+    @FunctionalInterface
+    private interface RecordedAction {
+        void run() throws Exception;
+    }
+}
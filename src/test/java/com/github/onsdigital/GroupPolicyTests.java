@@ -0,0 +1,98 @@
+package com.github.onsdigital;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GroupPolicyTests {
+
+    @Test
+    void isAllowed_ShouldRequireAnyGroup_WhenAnyOfRule() {
+        GroupPolicy policy = GroupPolicy.builder().anyOf("admin", "publishing").build();
+
+        assertTrue(policy.isAllowed(payload("data", "publishing")));
+        assertTrue(policy.isAllowed(payload("admin")));
+        assertFalse(policy.isAllowed(payload("data", "test")));
+        assertFalse(policy.isAllowed(payload()));
+    }
+
+    @Test
+    void isAllowed_ShouldRequireEveryGroup_WhenAllOfRule() {
+        GroupPolicy policy = GroupPolicy.builder().allOf("admin", "publishing").build();
+
+        assertTrue(policy.isAllowed(payload("publishing", "data", "admin")));
+        assertFalse(policy.isAllowed(payload("admin")));
+        assertFalse(policy.isAllowed(payload()));
+    }
+
+    @Test
+    void isAllowed_ShouldRequireEveryRule() {
+        GroupPolicy policy = GroupPolicy.builder()
+                .anyOf("role-admin", "role-publisher")
+                .allOf("team-data", "team-publishing")
+                .anyOf("role-admin", "region-uk")
+                .build();
+
+        assertTrue(policy.isAllowed(payload("role-admin", "team-data", "team-publishing")));
+        assertTrue(policy.isAllowed(payload("role-publisher", "team-data", "team-publishing", "region-uk")));
+        assertFalse(policy.isAllowed(payload("role-publisher", "team-data", "team-publishing")));
+        assertFalse(policy.isAllowed(payload("role-admin", "team-data")));
+    }
+
+    @Test
+    void isAllowed_ShouldEvaluateRules_WhenGroupsSpanManyWords() {
+        List<String> policyGroups = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            policyGroups.add("group-" + i);
+        }
+        GroupPolicy policy = GroupPolicy.builder()
+                .anyOf(policyGroups.subList(0, 150).toArray(new String[0]))
+                .allOf("group-150", "group-170", "group-199")
+                .build();
+
+        assertTrue(policy.isAllowed(payload("group-149", "group-150", "group-170", "group-199")));
+        assertFalse(policy.isAllowed(payload("group-160", "group-150", "group-170", "group-199")));
+        assertFalse(policy.isAllowed(payload("group-0", "group-150", "group-170")));
+    }
+
+    @Test
+    void isAllowed_ShouldReuseCompiledGroups_WhenPayloadCheckedAgain() {
+        GroupPolicy policy = GroupPolicy.builder().anyOf("admin").build();
+        GroupPolicy other = GroupPolicy.builder().anyOf("data").build();
+        UserDataPayload payload = payload("admin");
+
+        long[] compiled = payload.groupMembership(policy);
+
+        assertSame(compiled, payload.groupMembership(policy));
+        assertFalse(other.isAllowed(payload));
+        assertTrue(policy.isAllowed(payload));
+    }
+
+    @Test
+    void build_ShouldThrowException_WhenRulesInvalid() {
+        assertThatThrownBy(() -> GroupPolicy.builder().build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(GroupPolicy.NO_RULES_ERROR);
+        assertThatThrownBy(() -> GroupPolicy.builder().anyOf())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(GroupPolicy.NO_GROUPS_ERROR);
+        assertThatThrownBy(() -> GroupPolicy.builder().allOf("admin", null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(GroupPolicy.NULL_GROUP_ERROR);
+    }
+
+    private static UserDataPayload payload(String... groups) {
+        if (groups.length == 0) {
+            return new UserDataPayload("id", "email", Collections.emptyList());
+        }
+        return new UserDataPayload("id", "email", Arrays.asList(groups));
+    }
+}
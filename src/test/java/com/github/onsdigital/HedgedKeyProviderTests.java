@@ -0,0 +1,172 @@
+package com.github.onsdigital;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgedKeyProviderTests {
+
+    private static final long LONG_DELAY = 10000;
+    private static final long SHORT_DELAY = 50;
+    private static final Map<String, String> PRIMARY_KEYS = Collections.singletonMap("primary", "key");
+    private static final Map<String, String> SECONDARY_KEYS = Collections.singletonMap("secondary", "key");
+
+    @Test
+    void constructor_ShouldThrow_WhenNoProviders() {
+        assertThatThrownBy(() -> new HedgedKeyProvider(Collections.emptyList()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage(HedgedKeyProvider.ENDPOINTS_REQUIRED_ERROR);
+        assertThatThrownBy(() -> new HedgedKeyProvider(Arrays.asList(() -> PRIMARY_KEYS, null)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage(HedgedKeyProvider.ENDPOINT_REQUIRED_ERROR);
+    }
+
+    @Test
+    void constructor_ShouldThrow_WhenHedgeSettingsInvalid() {
+        assertThatThrownBy(() -> hedged(0, () -> PRIMARY_KEYS))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage(HedgedKeyProvider.HEDGE_DELAY_ERROR);
+        assertThatThrownBy(() -> new HedgedKeyProvider(Collections.singletonList(() -> PRIMARY_KEYS), 0, SHORT_DELAY,
+                VerificationMetrics.NOOP))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage(HedgedKeyProvider.HEDGE_PERCENTILE_ERROR);
+    }
+
+    @Test
+    void getJwtKeys_ShouldOnlyFetchFromFirstEndpoint_WhenItAnswers() throws Exception {
+        AtomicInteger secondaryFetches = new AtomicInteger();
+        HedgedKeyProvider keyProvider = hedged(LONG_DELAY, () -> PRIMARY_KEYS, () -> {
+            secondaryFetches.incrementAndGet();
+            return SECONDARY_KEYS;
+        });
+
+        assertSame(PRIMARY_KEYS, keyProvider.getJwtKeys());
+        assertSame(PRIMARY_KEYS, keyProvider.getJwtKeys());
+        assertEquals(0, secondaryFetches.get());
+    }
+
+    @Test
+    void getJwtKeys_ShouldHedgeAndCancelFirstEndpoint_WhenItIsSlow() throws Exception {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        HedgedKeyProvider keyProvider = hedged(SHORT_DELAY, () -> {
+            try {
+                Thread.sleep(LONG_DELAY);
+            } catch (InterruptedException e) {
+                cancelled.countDown();
+                throw e;
+            }
+            return PRIMARY_KEYS;
+        }, () -> SECONDARY_KEYS);
+
+        long start = System.nanoTime();
+        assertSame(SECONDARY_KEYS, keyProvider.getJwtKeys());
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < LONG_DELAY);
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void getJwtKeys_ShouldPreferFasterEndpoint_AfterHedging() throws Exception {
+        AtomicInteger primaryFetches = new AtomicInteger();
+        HedgedKeyProvider keyProvider = hedged(SHORT_DELAY, () -> {
+            primaryFetches.incrementAndGet();
+            Thread.sleep(LONG_DELAY);
+            return PRIMARY_KEYS;
+        }, () -> SECONDARY_KEYS);
+
+        assertSame(SECONDARY_KEYS, keyProvider.getJwtKeys());
+        assertSame(SECONDARY_KEYS, keyProvider.getJwtKeys());
+        assertSame(SECONDARY_KEYS, keyProvider.getJwtKeys());
+
+        assertEquals(1, primaryFetches.get());
+    }
+
+    @Test
+    void getJwtKeys_ShouldFailOverWithoutWaiting_WhenFirstEndpointFails() throws Exception {
+        HedgedKeyProvider keyProvider = hedged(LONG_DELAY, () -> {
+            throw new IOException("primary unavailable");
+        }, () -> SECONDARY_KEYS);
+
+        long start = System.nanoTime();
+        assertSame(SECONDARY_KEYS, keyProvider.getJwtKeys());
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < LONG_DELAY);
+    }
+
+    @Test
+    void getJwtKeys_ShouldTryFailedEndpointLast_WhileCoolingDown() throws Exception {
+        AtomicInteger primaryFetches = new AtomicInteger();
+        HedgedKeyProvider keyProvider = hedged(LONG_DELAY, () -> {
+            primaryFetches.incrementAndGet();
+            throw new IOException("primary unavailable");
+        }, () -> SECONDARY_KEYS);
+
+        assertSame(SECONDARY_KEYS, keyProvider.getJwtKeys());
+        assertSame(SECONDARY_KEYS, keyProvider.getJwtKeys());
+        assertSame(SECONDARY_KEYS, keyProvider.getJwtKeys());
+
+        assertEquals(1, primaryFetches.get());
+    }
+
+    @Test
+    void getJwtKeys_ShouldThrowWithSuppressedFailures_WhenEveryEndpointFails() {
+        InMemoryVerificationMetrics metrics = new InMemoryVerificationMetrics();
+        HedgedKeyProvider keyProvider = new HedgedKeyProvider(Arrays.asList(() -> {
+            throw new IOException("primary unavailable");
+        }, () -> {
+            throw new IOException("secondary unavailable");
+        }), HedgedKeyProvider.DEFAULT_HEDGE_PERCENTILE, LONG_DELAY, metrics);
+
+        assertThatThrownBy(keyProvider::getJwtKeys)
+                .isInstanceOf(IOException.class)
+                .hasMessage("secondary unavailable")
+                .satisfies(e -> assertEquals("primary unavailable", e.getSuppressed()[0].getMessage()));
+        assertEquals(1, metrics.getKeyRefreshCount());
+        assertEquals(1, metrics.getKeyRefreshFailureCount());
+    }
+
+    @Test
+    void getMaxAgeMillis_ShouldReturnMaxAgeOfAnsweringEndpoint() throws Exception {
+        HedgedKeyProvider keyProvider = hedged(LONG_DELAY, new JWTKeyProvider() {
+            @Override
+            public Map<String, String> getJwtKeys() throws Exception {
+                throw new IOException("primary unavailable");
+            }
+
+            @Override
+            public long getMaxAgeMillis() {
+                return 1000;
+            }
+        }, new JWTKeyProvider() {
+            @Override
+            public Map<String, String> getJwtKeys() {
+                return SECONDARY_KEYS;
+            }
+
+            @Override
+            public long getMaxAgeMillis() {
+                return 2000;
+            }
+        });
+
+        keyProvider.getJwtKeys();
+
+        assertEquals(2000, keyProvider.getMaxAgeMillis());
+    }
+
+    private static HedgedKeyProvider hedged(long initialHedgeDelayMillis, JWTKeyProvider... keyProviders) {
+        return new HedgedKeyProvider(Arrays.asList(keyProviders), HedgedKeyProvider.DEFAULT_HEDGE_PERCENTILE,
+                initialHedgeDelayMillis, VerificationMetrics.NOOP);
+    }
+}
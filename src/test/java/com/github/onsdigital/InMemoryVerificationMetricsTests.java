@@ -0,0 +1,71 @@
+package com.github.onsdigital;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InMemoryVerificationMetricsTests {
+
+    @Test
+    void recordVerification_ShouldCountEachOutcome() {
+        InMemoryVerificationMetrics metrics = new InMemoryVerificationMetrics();
+
+        metrics.recordVerification(VerificationOutcome.SUCCESS, 1000);
+        metrics.recordVerification(VerificationOutcome.SUCCESS, 3000);
+        metrics.recordVerification(VerificationOutcome.EXPIRED, 2000);
+
+        assertEquals(2, metrics.getCount(VerificationOutcome.SUCCESS));
+        assertEquals(1, metrics.getCount(VerificationOutcome.EXPIRED));
+        assertEquals(0, metrics.getCount(VerificationOutcome.UNKNOWN_KID));
+        assertEquals(3, metrics.getTotalCount());
+        assertEquals(2000, metrics.getMeanLatencyNanos());
+    }
+
+    @Test
+    void bucketOf_ShouldUsePowerOfTwoBuckets() {
+        assertEquals(0, InMemoryVerificationMetrics.bucketOf(-1));
+        assertEquals(0, InMemoryVerificationMetrics.bucketOf(1023));
+        assertEquals(1, InMemoryVerificationMetrics.bucketOf(1024));
+        assertEquals(1, InMemoryVerificationMetrics.bucketOf(2047));
+        assertEquals(2, InMemoryVerificationMetrics.bucketOf(2048));
+        assertEquals(InMemoryVerificationMetrics.LATENCY_BUCKETS - 1, InMemoryVerificationMetrics.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    void getLatencyPercentileNanos_ShouldReturnBucketUpperBound() {
+        InMemoryVerificationMetrics metrics = new InMemoryVerificationMetrics();
+        for (int i = 0; i < 99; i++) {
+            metrics.recordVerification(VerificationOutcome.SUCCESS, 500);
+        }
+        metrics.recordVerification(VerificationOutcome.SUCCESS, 5000);
+
+        assertEquals(1023, metrics.getLatencyPercentileNanos(50));
+        assertEquals(1023, metrics.getLatencyPercentileNanos(99));
+        assertEquals(8191, metrics.getLatencyPercentileNanos(99.9));
+    }
+
+    @Test
+    void getLatencyPercentileNanos_ShouldReturnZero_WhenNothingRecorded() {
+        assertEquals(0, new InMemoryVerificationMetrics().getLatencyPercentileNanos(99));
+    }
+
+    @Test
+    void getLatencyPercentileNanos_ShouldThrowException_WhenPercentileOutOfRange() {
+        assertThatThrownBy(() -> new InMemoryVerificationMetrics().getLatencyPercentileNanos(100.1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(InMemoryVerificationMetrics.PERCENTILE_ERROR);
+    }
+
+    @Test
+    void recordKeyRefresh_ShouldCountRefreshesAndFailures() {
+        InMemoryVerificationMetrics metrics = new InMemoryVerificationMetrics();
+
+        metrics.recordKeyRefresh(100, true);
+        metrics.recordKeyRefresh(200, false);
+
+        assertEquals(2, metrics.getKeyRefreshCount());
+        assertEquals(1, metrics.getKeyRefreshFailureCount());
+        assertEquals(300, metrics.getKeyRefreshTotalNanos());
+    }
+}
@@ -0,0 +1,274 @@
+package com.github.onsdigital;
+
+import com.github.onsdigital.exceptions.JWTVerificationException;
+import com.sun.net.httpserver.HttpServer;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.SignatureAlgorithm;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class JWKSKeyProviderTests {
+
+    private static final String JWKS_PATH = "/.well-known/jwks.json";
+    private static final String USER_ID = "aaaaaaaa-bbbb-cccc-dddd-eeeeeeeeeeee";
+    private static final String ETAG = "\"v1\"";
+
+    private final AtomicReference<String> jwks = new AtomicReference<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer server;
+    private String jwksUrl;
+
+    private KeyPair rsaKeyPair;
+    private KeyPair ecKeyPair;
+    private KeyPair edKeyPair;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        KeyPairGenerator rsa = KeyPairGenerator.getInstance("RSA");
+        rsa.initialize(2048);
+        rsaKeyPair = rsa.generateKeyPair();
+        KeyPairGenerator ec = KeyPairGenerator.getInstance("EC");
+        ec.initialize(new ECGenParameterSpec("secp256r1"));
+        ecKeyPair = ec.generateKeyPair();
+        if (SigningKeyLocatorImplTests.isKeyTypeSupported("Ed25519")) {
+            edKeyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        }
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(JWKS_PATH, exchange -> {
+            requests.incrementAndGet();
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = jwks.get().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        jwksUrl = "http://localhost:" + server.getAddress().getPort() + JWKS_PATH;
+    }
+
+    @AfterEach
+    void afterEach() {
+        server.stop(0);
+    }
+
+    @Test
+    void getJwtKeys_ShouldBuildKeysFromJwkParameters() throws Exception {
+        jwks.set(keySet(rsaJwk("rsa", "\"use\":\"sig\",\"alg\":\"RS256\""),
+                ecJwk("ec", "\"key_ops\":[\"verify\"]")));
+
+        Map<String, String> signingKeys = provider().getJwtKeys();
+
+        assertEquals(2, signingKeys.size());
+        assertEquals(encoded(rsaKeyPair), signingKeys.get("rsa"));
+        assertEquals(encoded(ecKeyPair), signingKeys.get("ec"));
+    }
+
+    @Test
+    void getJwtKeys_ShouldBuildEd25519KeyFromJwkParameters_WhenJvmSupportsEd25519() throws Exception {
+        assumeTrue(edKeyPair != null, "Ed25519 needs Java 15 or later");
+        jwks.set(keySet(edJwk("ed", "\"alg\":\"EdDSA\"")));
+
+        Map<String, String> signingKeys = provider().getJwtKeys();
+
+        assertEquals(1, signingKeys.size());
+        assertEquals(encoded(edKeyPair), signingKeys.get("ed"));
+    }
+
+    @Test
+    void getJwtKeys_ShouldSkipKeysNotForVerifyingSignatures() throws Exception {
+        jwks.set(keySet(rsaJwk("sig", ""),
+                rsaJwk("enc", "\"use\":\"enc\""),
+                rsaJwk("ops", "\"key_ops\":[\"encrypt\",\"wrapKey\"]"),
+                rsaJwk("alg", "\"alg\":\"ES256\""),
+                ecJwk(null, ""),
+                "{\"kty\":\"oct\",\"kid\":\"hmac\",\"k\":\"c2VjcmV0\"}",
+                "{\"kty\":\"EC\",\"kid\":\"secp256k1\",\"crv\":\"secp256k1\",\"x\":\"AA\",\"y\":\"AA\"}",
+                "{\"kty\":\"RSA\",\"kid\":\"no-modulus\",\"e\":\"AQAB\"}",
+                "{\"kty\":\"EC\",\"kid\":\"short\",\"crv\":\"P-256\",\"x\":\"AQ\",\"y\":\"AQ\"}"));
+
+        Map<String, String> signingKeys = provider().getJwtKeys();
+
+        assertEquals(1, signingKeys.size());
+        assertEquals(encoded(rsaKeyPair), signingKeys.get("sig"));
+    }
+
+    @Test
+    void getJwtKeys_ShouldKeepOtherKeys_WhenJvmCannotDecodeEd25519() throws Exception {
+        assumeTrue(edKeyPair == null, "only JVMs before Java 15 cannot decode Ed25519 keys");
+        String x = Base64.getUrlEncoder().withoutPadding().encodeToString(new byte[32]);
+        jwks.set(keySet(rsaJwk("rsa", ""), ecJwk("ec", ""),
+                jwk("ed", "\"kty\":\"OKP\",\"crv\":\"Ed25519\",\"x\":\"" + x + "\"", "")));
+
+        Map<String, String> signingKeys = provider().getJwtKeys();
+
+        assertEquals(2, signingKeys.size());
+        assertEquals(encoded(rsaKeyPair), signingKeys.get("rsa"));
+        assertEquals(encoded(ecKeyPair), signingKeys.get("ec"));
+        assertEquals(USER_ID, JWTVerifierImpl.builder().keyProvider(provider()).build().verify(token("rsa", rsaKeyPair)).getId());
+    }
+
+    @Test
+    void getJwtKeys_ShouldThrowException_WhenKeySetMalformed() {
+        jwks.set("{\"keys\":[{\"kty\":\"RSA\",");
+
+        assertThatThrownBy(() -> provider().getJwtKeys()).isInstanceOf(Exception.class);
+    }
+
+    @Test
+    void getJwtKeys_ShouldThrowException_WhenNoUsableKeys() {
+        jwks.set(keySet(rsaJwk("enc", "\"use\":\"enc\"")));
+
+        assertThatThrownBy(() -> provider().getJwtKeys())
+                .isInstanceOf(Exception.class)
+                .hasMessageContaining("JWT keys not found in the response");
+    }
+
+    @Test
+    void getJwtKeys_ShouldReturnSameKeys_WhenKeySetNotModified() throws Exception {
+        jwks.set(keySet(rsaJwk("rsa", "")));
+        JWKSKeyProvider provider = provider();
+
+        Map<String, String> first = provider.getJwtKeys();
+        Map<String, String> second = provider.getJwtKeys();
+
+        assertSame(first, second);
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void verify_ShouldVerifyTokensSignedWithJwksKeys() throws Exception {
+        jwks.set("{\"issuer\":\"https://example.com\",\"keys\":["
+                + rsaJwk("rsa", "") + "," + ecJwk("ec", "") + "]}");
+        JWTVerifier verifier = JWTVerifierImpl.builder().keyProvider(provider()).build();
+
+        assertEquals(USER_ID, verifier.verify(token("rsa", rsaKeyPair)).getId());
+        assertEquals(USER_ID, verifier.verify(token("ec", ecKeyPair)).getId());
+    }
+
+    @Test
+    void verify_ShouldVerifyTokensSignedWithJwksEd25519Key_WhenJvmSupportsEd25519() throws Exception {
+        assumeTrue(edKeyPair != null, "Ed25519 needs Java 15 or later");
+        jwks.set(keySet(rsaJwk("rsa", ""), edJwk("ed", "")));
+        JWTVerifier verifier = JWTVerifierImpl.builder().keyProvider(provider()).build();
+
+        assertEquals(USER_ID, verifier.verify(token("ed", edKeyPair)).getId());
+    }
+
+    @Test
+    void verify_ShouldOnlyAcceptDeclaredAlgorithm_WhenJwkHasAlg() throws Exception {
+        jwks.set(keySet(rsaJwk("rs256", "\"alg\":\"RS256\""), rsaJwk("any", "")));
+        JWKSKeyProvider provider = provider();
+        JWTVerifier verifier = JWTVerifierImpl.builder().keyProvider(provider).build();
+
+        assertEquals(Collections.singletonMap("rs256", "RS256"), provider.getKeyAlgorithms());
+        assertEquals(USER_ID, verifier.verify(token("rs256", rsaKeyPair)).getId());
+        assertThatThrownBy(() -> verifier.verify(token("rs256", rsaKeyPair, Jwts.SIG.PS256)))
+                .isInstanceOf(JWTVerificationException.class)
+                .hasMessageContaining(JWTVerifierImpl.ALGORITHM_ERROR);
+        assertEquals(USER_ID, verifier.verify(token("any", rsaKeyPair, Jwts.SIG.PS256)).getId());
+    }
+
+    private JWKSKeyProvider provider() {
+        return new JWKSKeyProvider(jwksUrl, 5, 5, 5, new RequestBuilder());
+    }
+
+    private String rsaJwk(String kid, String members) {
+        RSAPublicKey key = (RSAPublicKey) rsaKeyPair.getPublic();
+        return jwk(kid, "\"kty\":\"RSA\",\"n\":\"" + base64Url(key.getModulus(), 0)
+                + "\",\"e\":\"" + base64Url(key.getPublicExponent(), 0) + "\"", members);
+    }
+
+    private String ecJwk(String kid, String members) {
+        ECPublicKey key = (ECPublicKey) ecKeyPair.getPublic();
+        return jwk(kid, "\"kty\":\"EC\",\"crv\":\"P-256\",\"x\":\"" + base64Url(key.getW().getAffineX(), 32)
+                + "\",\"y\":\"" + base64Url(key.getW().getAffineY(), 32) + "\"", members);
+    }
+
+    private String edJwk(String kid, String members) {
+        byte[] encoded = edKeyPair.getPublic().getEncoded();
+        byte[] x = Arrays.copyOfRange(encoded, encoded.length - 32, encoded.length);
+        return jwk(kid, "\"kty\":\"OKP\",\"crv\":\"Ed25519\",\"x\":\""
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(x) + "\"", members);
+    }
+
+    private static String jwk(String kid, String parameters, String members) {
+        StringBuilder jwk = new StringBuilder("{").append(parameters);
+        if (kid != null) {
+            jwk.append(",\"kid\":\"").append(kid).append('"');
+        }
+        if (!members.isEmpty()) {
+            jwk.append(',').append(members);
+        }
+        return jwk.append('}').toString();
+    }
+
+    private static String keySet(String... jwks) {
+        return "{\"keys\":[" + String.join(",", jwks) + "]}";
+    }
+
+    private static String base64Url(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        if (bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        if (bytes.length < length) {
+            byte[] padded = new byte[length];
+            System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+            bytes = padded;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static String encoded(KeyPair keyPair) {
+        return Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded());
+    }
+
+    private static String token(String kid, KeyPair keyPair) {
+        return claims(kid).signWith(keyPair.getPrivate()).compact();
+    }
+
+    private static String token(String kid, KeyPair keyPair, SignatureAlgorithm algorithm) {
+        return claims(kid).signWith(keyPair.getPrivate(), algorithm).compact();
+    }
+
+    private static JwtBuilder claims(String kid) {
+        return Jwts.builder()
+                .header().keyId(kid).and()
+                .subject(USER_ID)
+                .claim("username", "janedoe@example.com")
+                .expiration(new Date(System.currentTimeMillis() + 60 * 60 * 1000L));
+    }
+}
@@ -1,22 +1,30 @@
 package com.github.onsdigital;
 
+import com.google.api.client.http.HttpHeaders;
 import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpResponse;
+import com.google.gson.Gson;
 import org.hamcrest.CoreMatchers;
 import org.junit.Assert;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -34,13 +42,13 @@ class JWTKeyProviderImplTest {
     void verify_ShouldThrowException_WhenIdentityApiReturnEmptySuccessResponse() throws Exception {
         HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
         given(mockResponse.getStatusCode()).willReturn(200);
-        Mockito.when(mockResponse.parseAs(Mockito.any())).thenReturn(new HashMap<String, String>());
+        Mockito.when(mockResponse.getContent()).thenAnswer(invocation -> jsonContent(new HashMap<String, String>()));
         RequestBuilder mockedRequestBuilder = getMockedRequestBuilder(mockResponse);
         JWTKeyProviderImpl jwtKeyProvider = new JWTKeyProviderImpl(identityAPIUrl, 5, 5, 5, mockedRequestBuilder);
 
         Exception exception = assertThrows(Exception.class, () -> jwtKeyProvider.getJwtKeys());
         Assert.assertThat(exception.getMessage(), CoreMatchers.containsString("JWT keys not found in the response"));
-        verify(mockResponse, times(1)).disconnect();
+        verify(mockResponse, times(1)).ignore();
         verify(mockedRequestBuilder).getRequest(EXPECTED_FETCH_JWT_ENDPOINT, 5, 5, 5);
     }
 
@@ -49,14 +57,14 @@ class JWTKeyProviderImplTest {
     void verify_ShouldFetchJWTKeys_WhenIdentityApiUrlIsProvided() throws Exception {
         HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
         given(mockResponse.getStatusCode()).willReturn(200);
-        Mockito.when(mockResponse.parseAs(any())).thenReturn(signingKeys);
+        Mockito.when(mockResponse.getContent()).thenAnswer(invocation -> jsonContent(signingKeys));
         RequestBuilder mockedRequestBuilder = getMockedRequestBuilder(mockResponse);
         JWTKeyProviderImpl jwtKeyProvider = new JWTKeyProviderImpl(identityAPIUrl, 5, 5, 5, mockedRequestBuilder);
 
         Map<String, String> signingKeysFromApi = jwtKeyProvider.getJwtKeys();
 
         assertEquals(signingKeys, signingKeysFromApi);
-        verify(mockResponse, times(1)).disconnect();
+        verify(mockResponse, times(1)).ignore();
         verify(mockedRequestBuilder).getRequest(EXPECTED_FETCH_JWT_ENDPOINT, 5, 5, 5);
     }
 
@@ -64,14 +72,153 @@ class JWTKeyProviderImplTest {
     void verify_ShouldThrowException_WhenFailedToFetchJwtKeys() throws Exception {
         HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
         given(mockResponse.getStatusCode()).willReturn(500);
-        Mockito.when(mockResponse.parseAs(any())).thenReturn(signingKeys);
+        Mockito.when(mockResponse.getContent()).thenAnswer(invocation -> jsonContent(signingKeys));
         RequestBuilder mockedRequestBuilder = getMockedRequestBuilder(mockResponse);
         JWTKeyProviderImpl jwtKeyProvider = new JWTKeyProviderImpl(identityAPIUrl, 5, 5, 5, mockedRequestBuilder);
 
         Exception exception = assertThrows(Exception.class, () -> jwtKeyProvider.getJwtKeys());
 
         Assert.assertThat(exception.getMessage(), CoreMatchers.containsString("Failed to get jwt keys:"));
-        verify(mockResponse, times(1)).disconnect();
+        verify(mockResponse, times(1)).ignore();
+    }
+
+    @Test
+    void verify_ShouldThrowWithStatusAndStartOfBody_WhenErrorBodyLarge() throws Exception {
+        StringBuilder body = new StringBuilder();
+        while (body.length() <= JWTKeyProviderImpl.MAX_RESPONSE_BYTES) {
+            body.append("<p>Service unavailable</p>");
+        }
+        HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+        given(mockResponse.getStatusCode()).willReturn(503);
+        Mockito.when(mockResponse.getContent()).thenAnswer(invocation -> content(body.toString()));
+        JWTKeyProviderImpl jwtKeyProvider = new JWTKeyProviderImpl(identityAPIUrl, 5, 5, 5,
+                getMockedRequestBuilder(mockResponse));
+
+        Exception exception = assertThrows(Exception.class, () -> jwtKeyProvider.getJwtKeys());
+
+        Assert.assertThat(exception.getMessage(),
+                CoreMatchers.startsWith(JWTKeyProviderImpl.FETCH_FAILED_ERROR + "503: <p>Service unavailable</p>"));
+        assertEquals(JWTKeyProviderImpl.FETCH_FAILED_ERROR.length() + "503: ".length()
+                + JWTKeyProviderImpl.MAX_ERROR_BODY_BYTES, exception.getMessage().length());
+        verify(mockResponse, times(1)).ignore();
+    }
+
+    @Test
+    void verify_ShouldRecordKeyRefreshMetrics() throws Exception {
+        HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+        given(mockResponse.getStatusCode()).willReturn(200).willReturn(500);
+        Mockito.when(mockResponse.getContent()).thenAnswer(invocation -> jsonContent(signingKeys));
+        InMemoryVerificationMetrics metrics = new InMemoryVerificationMetrics();
+        JWTKeyProviderImpl jwtKeyProvider = new JWTKeyProviderImpl(identityAPIUrl, 5, 5, 5,
+                getMockedRequestBuilder(mockResponse), metrics);
+
+        jwtKeyProvider.getJwtKeys();
+        assertThrows(Exception.class, () -> jwtKeyProvider.getJwtKeys());
+
+        assertEquals(2, metrics.getKeyRefreshCount());
+        assertEquals(1, metrics.getKeyRefreshFailureCount());
+    }
+
+    @Test
+    void verify_ShouldSendConditionalRequest_WhenKeysFetchedBefore() throws Exception {
+        HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+        given(mockResponse.getStatusCode()).willReturn(200).willReturn(304);
+        given(mockResponse.getHeaders()).willReturn(new HttpHeaders()
+                .setETag("\"v1\"")
+                .setLastModified("Wed, 21 Oct 2015 07:28:00 GMT")
+                .setCacheControl("public, max-age=300"));
+        Mockito.when(mockResponse.getContent()).thenAnswer(invocation -> jsonContent(signingKeys));
+        HttpHeaders requestHeaders = new HttpHeaders();
+        RequestBuilder mockedRequestBuilder = getMockedRequestBuilder(mockResponse, requestHeaders);
+        JWTKeyProviderImpl jwtKeyProvider = new JWTKeyProviderImpl(identityAPIUrl, 5, 5, 5, mockedRequestBuilder);
+
+        Map<String, String> first = jwtKeyProvider.getJwtKeys();
+        assertNull(requestHeaders.getIfNoneMatch());
+        Map<String, String> second = jwtKeyProvider.getJwtKeys();
+
+        assertSame(first, second);
+        assertEquals("\"v1\"", requestHeaders.getIfNoneMatch());
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", requestHeaders.getIfModifiedSince());
+        assertEquals(300000, jwtKeyProvider.getMaxAgeMillis());
+        verify(mockResponse, times(1)).getContent();
+        verify(mockResponse, times(2)).ignore();
+    }
+
+    @Test
+    void verify_ShouldThrowException_WhenNotModifiedWithoutPreviousKeys() throws Exception {
+        HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+        given(mockResponse.getStatusCode()).willReturn(304);
+        JWTKeyProviderImpl jwtKeyProvider = new JWTKeyProviderImpl(identityAPIUrl, 5, 5, 5,
+                getMockedRequestBuilder(mockResponse));
+
+        Exception exception = assertThrows(Exception.class, () -> jwtKeyProvider.getJwtKeys());
+
+        Assert.assertThat(exception.getMessage(), CoreMatchers.containsString("Failed to get jwt keys:"));
+    }
+
+    @Test
+    void verify_ShouldThrowException_WhenResponseMalformed() throws Exception {
+        String[] bodies = {
+                "",
+                "[\"" + PUBLIC_KEY + "\"]",
+                "{\"" + PUBLIC_KEY_ID + "\":{\"key\":\"" + PUBLIC_KEY + "\"}}",
+                "{\"" + PUBLIC_KEY_ID + "\":12345}",
+                "{\"" + PUBLIC_KEY_ID + "\":\"" + PUBLIC_KEY + "\"",
+                "{\"" + PUBLIC_KEY_ID + "\":\"" + PUBLIC_KEY + "\"}{}",
+        };
+        for (String body : bodies) {
+            HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+            given(mockResponse.getStatusCode()).willReturn(200);
+            Mockito.when(mockResponse.getContent()).thenAnswer(invocation -> content(body));
+            JWTKeyProviderImpl jwtKeyProvider = new JWTKeyProviderImpl(identityAPIUrl, 5, 5, 5,
+                    getMockedRequestBuilder(mockResponse));
+
+            assertThrows(IOException.class, () -> jwtKeyProvider.getJwtKeys(), body);
+            verify(mockResponse, times(1)).ignore();
+        }
+    }
+
+    @Test
+    void verify_ShouldThrowException_WhenContentLengthTooLarge() throws Exception {
+        HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+        given(mockResponse.getStatusCode()).willReturn(200);
+        given(mockResponse.getHeaders()).willReturn(new HttpHeaders()
+                .setContentLength(JWTKeyProviderImpl.MAX_RESPONSE_BYTES + 1L));
+        JWTKeyProviderImpl jwtKeyProvider = new JWTKeyProviderImpl(identityAPIUrl, 5, 5, 5,
+                getMockedRequestBuilder(mockResponse, new HttpHeaders()));
+
+        Exception exception = assertThrows(IOException.class, () -> jwtKeyProvider.getJwtKeys());
+
+        Assert.assertThat(exception.getMessage(), CoreMatchers.containsString(BoundedInputStream.TOO_LARGE_ERROR));
+        verify(mockResponse, never()).getContent();
+    }
+
+    @Test
+    void verify_ShouldThrowException_WhenBodyTooLarge() throws Exception {
+        StringBuilder body = new StringBuilder("{");
+        for (int i = 0; body.length() <= JWTKeyProviderImpl.MAX_RESPONSE_BYTES; i++) {
+            body.append("\"key-").append(i).append("\":\"").append(PUBLIC_KEY).append("\",");
+        }
+        body.append("\"last\":\"").append(PUBLIC_KEY).append("\"}");
+        HttpResponse mockResponse = Mockito.mock(HttpResponse.class);
+        given(mockResponse.getStatusCode()).willReturn(200);
+        Mockito.when(mockResponse.getContent()).thenAnswer(invocation -> content(body.toString()));
+        JWTKeyProviderImpl jwtKeyProvider = new JWTKeyProviderImpl(identityAPIUrl, 5, 5, 5,
+                getMockedRequestBuilder(mockResponse));
+
+        Exception exception = assertThrows(IOException.class, () -> jwtKeyProvider.getJwtKeys());
+
+        Assert.assertThat(exception.getMessage(), CoreMatchers.containsString(BoundedInputStream.TOO_LARGE_ERROR));
+    }
+
+    @Test
+    void maxAgeMillis_ShouldParseCacheControl() {
+        assertEquals(60000, JWTKeyProviderImpl.maxAgeMillis("max-age=60"));
+        assertEquals(60000, JWTKeyProviderImpl.maxAgeMillis("public, MAX-AGE=60, must-revalidate"));
+        assertEquals(-1, JWTKeyProviderImpl.maxAgeMillis("max-age=60, no-cache"));
+        assertEquals(-1, JWTKeyProviderImpl.maxAgeMillis("no-store"));
+        assertEquals(-1, JWTKeyProviderImpl.maxAgeMillis("max-age=soon"));
+        assertEquals(-1, JWTKeyProviderImpl.maxAgeMillis(null));
     }
 
     @Test
@@ -85,12 +232,28 @@ class JWTKeyProviderImplTest {
     }
 
     private RequestBuilder getMockedRequestBuilder(HttpResponse mockResponse) throws IOException {
+        if (mockResponse != null) {
+            given(mockResponse.getHeaders()).willReturn(new HttpHeaders());
+        }
+        return getMockedRequestBuilder(mockResponse, new HttpHeaders());
+    }
+
+    private RequestBuilder getMockedRequestBuilder(HttpResponse mockResponse, HttpHeaders requestHeaders) throws IOException {
         HttpRequest mockRequest = Mockito.mock(HttpRequest.class);
         given(mockRequest.execute()).willReturn(mockResponse);
+        given(mockRequest.getHeaders()).willReturn(requestHeaders);
 
         RequestBuilder mockRequestBuilder = Mockito.mock(RequestBuilder.class);
         given(mockRequestBuilder.getRequest(anyString(), anyInt(), anyInt(), anyInt())).willReturn(mockRequest);
 
         return mockRequestBuilder;
     }
+
+    private static InputStream jsonContent(Map<String, String> keys) {
+        return content(new Gson().toJson(new HashMap<>(keys)));
+    }
+
+    private static InputStream content(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
 }
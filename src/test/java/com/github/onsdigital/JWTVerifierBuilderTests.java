@@ -0,0 +1,290 @@
+package com.github.onsdigital;
+
+import com.github.onsdigital.exceptions.JWTVerificationException;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.gson.Gson;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JWTVerifierBuilderTests {
+
+    private static final String KEY_ID = "builder-key";
+    private static final String USER_ID = "aaaaaaaa-bbbb-cccc-dddd-eeeeeeeeeeee";
+    private static final String USERNAME = "janedoe@example.com";
+    private static final long ONE_HOUR = 60 * 60 * 1000L;
+
+    @TempDir
+    Path tempDir;
+
+    private KeyPair keyPair;
+    private Map<String, String> signingKeys;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        signingKeys = Collections.singletonMap(KEY_ID,
+                Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
+    }
+
+    @Test
+    void build_ShouldUseCacheAndMetrics_WhenSigningKeysSet() throws Exception {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, ONE_HOUR);
+        InMemoryVerificationMetrics metrics = new InMemoryVerificationMetrics();
+        JWTVerifierImpl verifier = JWTVerifierImpl.builder()
+                .signingKeys(signingKeys)
+                .cache(cache)
+                .metrics(metrics)
+                .build();
+        String token = token();
+
+        assertEquals(USER_ID, verifier.verify(token).getId());
+        assertEquals(USER_ID, verifier.verify(token).getId());
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, metrics.getCount(VerificationOutcome.SUCCESS));
+        assertEquals(1, metrics.getCount(VerificationOutcome.CACHE_HIT));
+    }
+
+    @Test
+    void build_ShouldVerifyWithLazyKeys_WhenLazySigningKeysSet() throws Exception {
+        JWTVerifierImpl verifier = JWTVerifierImpl.builder()
+                .lazySigningKeys(signingKeys, Collections.emptyList())
+                .build();
+
+        assertEquals(USER_ID, verifier.verify(token()).getId());
+    }
+
+    @Test
+    void lazySigningKeys_ShouldThrow_WhenKeyIdsNullOrKeySourceAlreadySet() {
+        assertThatThrownBy(() -> JWTVerifierImpl.builder().lazySigningKeys(signingKeys, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> JWTVerifierImpl.builder().identityApi("http://localhost:25600")
+                .lazySigningKeys(signingKeys, Collections.singletonList(KEY_ID)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(JWTVerifierBuilder.KEY_SOURCE_CONFLICT_ERROR);
+    }
+
+    @Test
+    void build_ShouldFetchKeysOnTransport_WhenIdentityApiSet() throws Exception {
+        MockHttpTransport transport = new MockHttpTransport.Builder()
+                .setLowLevelHttpResponse(new MockLowLevelHttpResponse()
+                        .setContentType("application/json")
+                        .setContent(new Gson().toJson(signingKeys)))
+                .build();
+        InMemoryVerificationMetrics metrics = new InMemoryVerificationMetrics();
+        JWTVerifierImpl verifier = JWTVerifierImpl.builder()
+                .identityApi("http://localhost/identity-api")
+                .retry(10, 100, 10)
+                .requestBuilder(new RequestBuilder(transport, 1000, 1000))
+                .metrics(metrics)
+                .build();
+
+        assertEquals(USERNAME, verifier.verify(token()).getEmail());
+        assertEquals(1, metrics.getKeyRefreshCount());
+        assertEquals(0, metrics.getKeyRefreshFailureCount());
+    }
+
+    @Test
+    void build_ShouldFetchKeysFromAnyInstance_WhenSeveralIdentityApisSet() throws Exception {
+        MockHttpTransport transport = new MockHttpTransport.Builder()
+                .setLowLevelHttpResponse(new MockLowLevelHttpResponse()
+                        .setContentType("application/json")
+                        .setContent(new Gson().toJson(signingKeys)))
+                .build();
+        InMemoryVerificationMetrics metrics = new InMemoryVerificationMetrics();
+        JWTVerifierImpl verifier = JWTVerifierImpl.builder()
+                .identityApi(Arrays.asList("http://localhost/identity-api-1", "http://localhost/identity-api-2"))
+                .retry(10, 100, 10)
+                .requestBuilder(new RequestBuilder(transport, 1000, 1000))
+                .metrics(metrics)
+                .build();
+
+        assertEquals(USERNAME, verifier.verify(token()).getEmail());
+        assertEquals(1, metrics.getKeyRefreshCount());
+        assertEquals(0, metrics.getKeyRefreshFailureCount());
+    }
+
+    @Test
+    void identityApi_ShouldThrow_WhenUrlsEmptyOrContainNull() {
+        assertThatThrownBy(() -> JWTVerifierImpl.builder().identityApi(Collections.emptyList()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage(HedgedKeyProvider.ENDPOINTS_REQUIRED_ERROR);
+        assertThatThrownBy(() -> JWTVerifierImpl.builder().identityApi(Arrays.asList("http://localhost", null)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage(JWTVerifierBuilder.COMPONENT_REQUIRED_ERROR);
+    }
+
+    @Test
+    void build_ShouldNotShareCachedTokens_WhenVerifiersShareCache() throws Exception {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, ONE_HOUR);
+        JWTVerifierImpl lenient = JWTVerifierImpl.builder()
+                .signingKeys(signingKeys)
+                .cache(cache)
+                .build();
+        JWTVerifierImpl strict = JWTVerifierImpl.builder()
+                .signingKeys(signingKeys)
+                .cache(cache)
+                .validationOptions(ValidationOptions.builder().requireIssuer("https://issuer.example.com").build())
+                .build();
+        String token = token();
+
+        assertEquals(USER_ID, lenient.verify(token).getId());
+        assertEquals(USER_ID, lenient.verify(token).getId());
+        assertEquals(1, cache.getHitCount());
+
+        assertThatThrownBy(() -> strict.verify(token))
+                .isInstanceOf(JWTVerificationException.class)
+                .hasMessageContaining(JWTVerifierImpl.ISSUER_ERROR);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void build_ShouldSaveSnapshotAndRefresh_WhenKeyProviderSet() throws Exception {
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys()).thenReturn(signingKeys);
+        Path snapshotPath = tempDir.resolve("keys.snapshot");
+
+        try (JWTVerifierImpl verifier = JWTVerifierImpl.builder()
+                .keyProvider(keyProvider)
+                .snapshot(snapshotPath, ONE_HOUR)
+                .refresh(10, 0)
+                .build()) {
+            assertEquals(USER_ID, verifier.verify(token()).getId());
+            assertTrue(Files.exists(snapshotPath));
+            verify(keyProvider, Mockito.timeout(5000).atLeast(2)).getJwtKeys();
+        }
+    }
+
+    @Test
+    void build_ShouldReconcileSnapshot_WhenRefreshNotSet() throws Exception {
+        Path snapshotPath = tempDir.resolve("keys.snapshot");
+        new KeySetSnapshotFile(snapshotPath).write(signingKeys, System.currentTimeMillis());
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys()).thenReturn(signingKeys);
+
+        try (JWTVerifierImpl verifier = JWTVerifierImpl.builder()
+                .keyProvider(keyProvider)
+                .snapshot(snapshotPath, ONE_HOUR)
+                .build()) {
+            assertEquals(USER_ID, verifier.verify(token()).getId());
+            verify(keyProvider, Mockito.timeout(5000)).getJwtKeys();
+        }
+    }
+
+    @Test
+    void buildAsync_ShouldReconcileSnapshot_OnceKeysLoaded() throws Exception {
+        Path snapshotPath = tempDir.resolve("keys.snapshot");
+        new KeySetSnapshotFile(snapshotPath).write(signingKeys, System.currentTimeMillis());
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys()).thenReturn(signingKeys);
+
+        AsyncJWTVerifierImpl verifier = JWTVerifierImpl.builder()
+                .keyProvider(keyProvider)
+                .snapshot(snapshotPath, ONE_HOUR)
+                .buildAsync();
+
+        assertEquals(USER_ID, verifier.verifyAsync(token()).get(5, TimeUnit.SECONDS).getId());
+        verify(keyProvider, Mockito.timeout(5000)).getJwtKeys();
+    }
+
+    @Test
+    void buildAsync_ShouldVerifyOnExecutor_WhenKeyProviderSet() throws Exception {
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys()).thenReturn(signingKeys);
+        InMemoryVerificationMetrics metrics = new InMemoryVerificationMetrics();
+        AsyncJWTVerifierImpl verifier = JWTVerifierImpl.builder()
+                .keyProvider(keyProvider)
+                .metrics(metrics)
+                .executor(Runnable::run)
+                .buildAsync();
+
+        assertTrue(verifier.isReady());
+        assertEquals(USER_ID, verifier.verifyAsync(token()).get(5, TimeUnit.SECONDS).getId());
+        assertEquals(1, metrics.getCount(VerificationOutcome.SUCCESS));
+        verify(keyProvider, times(1)).getJwtKeys();
+    }
+
+    @Test
+    void build_ShouldThrow_WhenNoKeySource() {
+        assertThatThrownBy(() -> JWTVerifierImpl.builder().build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(JWTVerifierBuilder.KEY_SOURCE_REQUIRED_ERROR);
+    }
+
+    @Test
+    void keyProvider_ShouldThrow_WhenKeySourceAlreadySet() {
+        JWTVerifierBuilder builder = JWTVerifierImpl.builder().signingKeys(signingKeys);
+
+        assertThatThrownBy(() -> builder.keyProvider(Mockito.mock(JWTKeyProvider.class)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(JWTVerifierBuilder.KEY_SOURCE_CONFLICT_ERROR);
+    }
+
+    @Test
+    void build_ShouldThrow_WhenRefreshingSigningKeys() {
+        JWTVerifierBuilder builder = JWTVerifierImpl.builder().signingKeys(signingKeys).refresh(1000, 0);
+
+        assertThatThrownBy(builder::build)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(JWTVerifierBuilder.KEY_PROVIDER_REQUIRED_ERROR);
+    }
+
+    @Test
+    void buildAsync_ShouldThrow_WhenRefreshSet() {
+        JWTVerifierBuilder builder = JWTVerifierImpl.builder()
+                .keyProvider(Mockito.mock(JWTKeyProvider.class))
+                .refresh(1000, 0);
+
+        assertThatThrownBy(builder::buildAsync)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(JWTVerifierBuilder.ASYNC_REFRESH_ERROR);
+    }
+
+    @Test
+    void cache_ShouldThrow_WhenNull() {
+        assertThatThrownBy(() -> JWTVerifierImpl.builder().cache(null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(JWTVerifierBuilder.COMPONENT_REQUIRED_ERROR);
+    }
+
+    @Test
+    void refresh_ShouldThrow_WhenIntervalNotPositive() {
+        assertThatThrownBy(() -> JWTVerifierImpl.builder().refresh(0, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(SigningKeyRefresher.REFRESH_INTERVAL_ERROR);
+    }
+
+    private String token() {
+        return Jwts.builder()
+                .header().keyId(KEY_ID).and()
+                .subject(USER_ID)
+                .claim("username", USERNAME)
+                .expiration(new Date(System.currentTimeMillis() + ONE_HOUR))
+                .signWith(keyPair.getPrivate())
+                .compact();
+    }
+}
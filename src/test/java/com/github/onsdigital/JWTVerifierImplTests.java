@@ -9,13 +9,21 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class JWTVerifierImplTests {
@@ -48,8 +56,16 @@ class JWTVerifierImplTests {
     private JWTVerifierImpl verifier;
 
     @BeforeEach
-    void beforeEach() {
-        verifier = new JWTVerifierImpl(signingKeys);
+    void beforeEach() throws Exception {
+        verifier = JWTVerifierImpl.builder().signingKeys(signingKeys).build();
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void constructor_ShouldVerifyToken_WhenGivenSigningKeys() {
+        JWTVerifierImpl legacyVerifier = new JWTVerifierImpl(signingKeys);
+
+        assertEquals(USERNAME, legacyVerifier.verify(SIGNED_TOKEN).getEmail());
     }
 
     @Test
@@ -68,6 +84,173 @@ class JWTVerifierImplTests {
         assertEquals("test", grps.get(3));
     }
 
+    @Test
+    void verify_ShouldExposeTokenClaims_WhenJWTValid() {
+        UserDataPayload jwtData = verifier.verify(SIGNED_TOKEN);
+
+        assertEquals("57cbishk4j24pabc1234567890", jwtData.getClientId());
+        assertEquals("aws.cognito.signin.user.admin", jwtData.getScope());
+        assertEquals(Instant.ofEpochSecond(1562190524L), jwtData.getIssuedAt());
+        assertEquals(Instant.ofEpochSecond(7957071291L), jwtData.getExpiresAt());
+        assertTrue(jwtData.isMemberOf("publishing"));
+        assertFalse(jwtData.isMemberOf("viewer"));
+        assertThrows(UnsupportedOperationException.class, () -> jwtData.getGroups().add("viewer"));
+    }
+
+    @Test
+    void convertGroupsToStrings_ShouldShareList_WhenAllGroupsStrings() {
+        List<Object> strings = Arrays.asList("admin", "data");
+        List<Object> mixed = Arrays.asList("admin", 42, null);
+
+        List<String> shared = JWTVerifierImpl.convertGroupsToStrings(strings);
+        strings.set(1, "publishing");
+
+        assertEquals(Arrays.asList("admin", "publishing"), shared);
+        assertEquals(Arrays.asList("admin", "42"), JWTVerifierImpl.convertGroupsToStrings(mixed));
+        assertEquals(Collections.emptyList(), JWTVerifierImpl.convertGroupsToStrings(null));
+    }
+
+    @Test
+    void verify_ShouldReturnCachedPayload_WhenTokenVerifiedBefore() throws Exception {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, 60000);
+        JWTVerifierImpl cachingVerifier = JWTVerifierImpl.builder().signingKeys(signingKeys).cache(cache).build();
+
+        UserDataPayload first = cachingVerifier.verify(SIGNED_TOKEN);
+        UserDataPayload second = cachingVerifier.verify(SIGNED_TOKEN);
+
+        assertSame(first, second);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void verify_ShouldNotCache_WhenTokenInvalid() throws Exception {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, 60000);
+        JWTVerifierImpl cachingVerifier = JWTVerifierImpl.builder().signingKeys(signingKeys).cache(cache).build();
+
+        assertThatThrownBy(() -> cachingVerifier.verify(INVALID_SIGNED_TOKEN))
+                .isInstanceOf(JWTVerificationException.class);
+        assertThatThrownBy(() -> cachingVerifier.verify(INVALID_SIGNED_TOKEN))
+                .isInstanceOf(JWTVerificationException.class);
+        assertEquals(0, cache.getSize());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void verify_ShouldRecordOutcomeMetrics() throws Exception {
+        InMemoryVerificationMetrics metrics = new InMemoryVerificationMetrics();
+        JWTVerifierImpl metricsVerifier = JWTVerifierImpl.builder()
+                .signingKeys(signingKeys)
+                .cache(new VerifiedTokenCache(10, 60000))
+                .metrics(metrics)
+                .build();
+
+        metricsVerifier.verify(SIGNED_TOKEN);
+        metricsVerifier.verify(SIGNED_TOKEN);
+        for (String token : new String[]{TOKEN_EXPIRED_TIME, INVALID_SIGNED_TOKEN, INVALID_KID_TOKEN, TOKEN_NO_USER, ""}) {
+            assertThrows(RuntimeException.class, () -> metricsVerifier.verify(token));
+        }
+
+        assertEquals(1, metrics.getCount(VerificationOutcome.SUCCESS));
+        assertEquals(1, metrics.getCount(VerificationOutcome.CACHE_HIT));
+        assertEquals(1, metrics.getCount(VerificationOutcome.EXPIRED));
+        assertEquals(1, metrics.getCount(VerificationOutcome.SIGNATURE_FAILURE));
+        assertEquals(1, metrics.getCount(VerificationOutcome.UNKNOWN_KID));
+        assertEquals(1, metrics.getCount(VerificationOutcome.MISSING_CLAIM));
+        assertEquals(1, metrics.getCount(VerificationOutcome.MALFORMED));
+        assertEquals(7, metrics.getTotalCount());
+    }
+
+    @Test
+    void outcomeOf_ShouldUseOutcomeCarriedByFailure_NotItsMessage() {
+        assertEquals(VerificationOutcome.INVALID_CLAIM, JWTVerifierImpl.outcomeOf(VerificationFailures.WITH_STACK_TRACES
+                .verification(VerificationOutcome.INVALID_CLAIM, "Reworded issuer failure")));
+        assertEquals(VerificationOutcome.UNKNOWN_KID, JWTVerifierImpl.outcomeOf(VerificationFailures.STACKLESS
+                .decode(VerificationOutcome.UNKNOWN_KID, SigningKeyLocatorImpl.PUBLIC_KEY_ERROR)));
+        assertEquals(VerificationOutcome.EXPIRED, JWTVerifierImpl.outcomeOf(VerificationFailures.STACKLESS
+                .expired(JWTVerifierImpl.EXPIRED_TOKEN_ERROR)));
+        assertEquals(VerificationOutcome.MALFORMED,
+                JWTVerifierImpl.outcomeOf(new JWTVerificationException(JWTVerifierImpl.ISSUER_ERROR)));
+    }
+
+    @Test
+    void verifyAll_ShouldReturnResultPerToken_WhenSomeTokensInvalid() throws Exception {
+        InMemoryVerificationMetrics metrics = new InMemoryVerificationMetrics();
+        JWTVerifierImpl metricsVerifier = JWTVerifierImpl.builder().signingKeys(signingKeys).metrics(metrics).build();
+
+        List<VerificationResult> results = metricsVerifier.verifyAll(
+                Arrays.asList(SIGNED_TOKEN, TOKEN_EXPIRED_TIME, SIGNED_TOKEN, INVALID_KID_TOKEN));
+
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).isValid());
+        assertEquals(USER_ID, results.get(0).getPayload().getId());
+        assertSame(results.get(0), results.get(2));
+        assertFalse(results.get(1).isValid());
+        assertNull(results.get(1).getPayload());
+        assertTrue(results.get(1).getError() instanceof JWTTokenExpiredException);
+        assertEquals(INVALID_KID_TOKEN, results.get(3).getToken());
+        assertTrue(results.get(3).getError() instanceof JWTDecodeException);
+        assertEquals(3, metrics.getTotalCount());
+    }
+
+    @Test
+    void verifyAll_ShouldRunOnSuppliedExecutor() {
+        AtomicInteger tasks = new AtomicInteger();
+        Executor executor = task -> {
+            tasks.incrementAndGet();
+            task.run();
+        };
+
+        List<VerificationResult> results = verifier.verifyAll(
+                Arrays.asList(SIGNED_TOKEN, TOKEN_NO_GROUPS, SIGNED_TOKEN), executor);
+
+        assertEquals(3, results.size());
+        assertTrue(results.stream().allMatch(VerificationResult::isValid));
+        assertEquals(2, tasks.get());
+        assertTrue(verifier.verifyAll(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    void tryVerify_ShouldReturnOutcome_WhenTokenRejected() {
+        VerificationResult valid = verifier.tryVerify(SIGNED_TOKEN);
+        VerificationResult expired = verifier.tryVerify(TOKEN_EXPIRED_TIME);
+
+        assertTrue(valid.isValid());
+        assertEquals(VerificationOutcome.SUCCESS, valid.getOutcome());
+        assertEquals(USER_ID, valid.getPayload().getId());
+        assertEquals(VerificationOutcome.EXPIRED, expired.getOutcome());
+        assertTrue(expired.getError() instanceof JWTTokenExpiredException);
+        assertEquals(0, expired.getError().getStackTrace().length);
+        assertEquals(VerificationOutcome.UNKNOWN_KID, verifier.tryVerify(INVALID_KID_TOKEN).getOutcome());
+        assertEquals(VerificationOutcome.SIGNATURE_FAILURE, verifier.tryVerify(INVALID_SIGNED_TOKEN).getOutcome());
+        assertEquals(VerificationOutcome.MISSING_CLAIM, verifier.tryVerify(TOKEN_NO_USER).getOutcome());
+        assertEquals(VerificationOutcome.MALFORMED, verifier.tryVerify("").getOutcome());
+    }
+
+    @Test
+    void verify_ShouldThrowSharedStacklessException_WhenStacklessFailures() throws Exception {
+        JWTVerifierImpl stacklessVerifier = JWTVerifierImpl.builder()
+                .signingKeys(signingKeys)
+                .stacklessFailures()
+                .build();
+
+        RuntimeException first = assertThrows(JWTTokenExpiredException.class,
+                () -> stacklessVerifier.verify(TOKEN_EXPIRED_TIME));
+        RuntimeException second = assertThrows(JWTTokenExpiredException.class,
+                () -> stacklessVerifier.verify(TOKEN_EXPIRED_TIME));
+        RuntimeException withStackTrace = assertThrows(JWTTokenExpiredException.class,
+                () -> verifier.verify(TOKEN_EXPIRED_TIME));
+
+        assertSame(first, second);
+        assertEquals(JWTVerifierImpl.EXPIRED_TOKEN_ERROR, first.getMessage());
+        assertEquals(0, first.getStackTrace().length);
+        assertTrue(withStackTrace.getStackTrace().length > 0);
+        assertThatThrownBy(() -> stacklessVerifier.verify(INVALID_SIGNED_TOKEN))
+                .isInstanceOf(JWTVerificationException.class)
+                .hasMessageContaining(JWTVerifierImpl.SIGNATURE_VERIFICATION_ERROR)
+                .hasNoCause();
+    }
+
     @Test
     void verify_ShouldThrowException_WhenKeyIDUnknown() {
         assertThatThrownBy(() -> verifier.verify(INVALID_KID_TOKEN))
@@ -140,6 +323,21 @@ class JWTVerifierImplTests {
         assertEquals("test", grps.get(3));
     }
 
+    @Test
+    void verify_ShouldSucceed_WhenSigningKeysRotatedByBackgroundRefresh() throws Exception {
+        JWTKeyProvider jwtKeyProvider = Mockito.mock(JWTKeyProvider.class);
+        Mockito.when(jwtKeyProvider.getJwtKeys())
+                .thenReturn(SigningKeyRefresherTests.singleKey("previous_key_id"))
+                .thenReturn(signingKeys);
+
+        try (JWTVerifierImpl jwtVerifier = JWTVerifierImpl.builder().keyProvider(jwtKeyProvider).refresh(10, 0).build()) {
+            Mockito.verify(jwtKeyProvider, Mockito.timeout(5000).atLeast(3)).getJwtKeys();
+
+            UserDataPayload jwtData = jwtVerifier.verify(SIGNED_TOKEN);
+            assertEquals(USER_ID, jwtData.getId());
+        }
+    }
+
     @Test
     void verify_ShouldThrowException_WhenFailedToFetchJwtKeys() throws Exception {
         JWTKeyProvider jwtKeyProvider = Mockito.mock(JWTKeyProvider.class);
@@ -0,0 +1,57 @@
+package com.github.onsdigital;
+
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.testing.http.MockHttpTransport;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RequestBuilderTests {
+
+    private static final String URL = "http://localhost:8080/v1/jwt-keys";
+
+    @Test
+    void constructor_ShouldThrowException_WhenTransportNull() {
+        assertThatThrownBy(() -> new RequestBuilder(null, 1000, 1000))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(RequestBuilder.TRANSPORT_REQUIRED_ERROR);
+    }
+
+    @Test
+    void constructor_ShouldThrowException_WhenTimeoutNegative() {
+        MockHttpTransport transport = new MockHttpTransport();
+
+        assertThatThrownBy(() -> new RequestBuilder(transport, -1, 1000))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(RequestBuilder.TIMEOUT_ERROR);
+        assertThatThrownBy(() -> new RequestBuilder(transport, 1000, -1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(RequestBuilder.TIMEOUT_ERROR);
+    }
+
+    @Test
+    void getRequest_ShouldUseSuppliedTransportAndTimeouts() throws Exception {
+        MockHttpTransport transport = new MockHttpTransport();
+        RequestBuilder requestBuilder = new RequestBuilder(transport, 1500, 2500);
+
+        HttpRequest first = requestBuilder.getRequest(URL, 5, 5, 5);
+        HttpRequest second = requestBuilder.getRequest(URL, 5, 5, 5);
+
+        assertSame(transport, first.getTransport());
+        assertSame(transport, second.getTransport());
+        assertEquals(1500, first.getConnectTimeout());
+        assertEquals(2500, first.getReadTimeout());
+        assertEquals(URL, first.getUrl().build());
+    }
+
+    @Test
+    void getRequest_ShouldShareTransport_WhenDefaultTransportUsed() throws Exception {
+        HttpRequest first = new RequestBuilder().getRequest(URL, 5, 5, 5);
+        HttpRequest second = new RequestBuilder().getRequest(URL, 5, 5, 5);
+
+        assertSame(first.getTransport(), second.getTransport());
+        assertEquals(RequestBuilder.DEFAULT_TIMEOUT_MILLIS, first.getConnectTimeout());
+    }
+}
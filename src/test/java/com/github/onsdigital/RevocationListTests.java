@@ -0,0 +1,131 @@
+package com.github.onsdigital;
+
+import com.github.onsdigital.exceptions.JWTVerificationException;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RevocationListTests {
+
+    private static final String KEY_ID = "revocation-key";
+    private static final String USER_ID = "aaaaaaaa-bbbb-cccc-dddd-eeeeeeeeeeee";
+    private static final String TOKEN_ID = "11111111-2222-3333-4444-555555555555";
+    private static final long ISSUED_AT_SECONDS = 1562190524L;
+    private static final long ONE_HOUR = 60 * 60 * 1000L;
+
+    private InMemoryRevocationSource source;
+    private RevocationList revocations;
+
+    @BeforeEach
+    void beforeEach() {
+        source = new InMemoryRevocationSource();
+        revocations = new RevocationList(source, 1000, 0.01);
+    }
+
+    @Test
+    void constructor_ShouldThrow_WhenSizingInvalid() {
+        assertThatThrownBy(() -> new RevocationList(source, 0, 0.01))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage(RevocationList.EXPECTED_REVOCATIONS_ERROR);
+        assertThatThrownBy(() -> new RevocationList(source, 1000, 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage(RevocationList.FALSE_POSITIVE_RATE_ERROR);
+    }
+
+    @Test
+    void isRevoked_ShouldMatchTokenId_WhenRevoked() throws Exception {
+        source.revoke(TOKEN_ID);
+        revocations.refresh();
+
+        assertTrue(revocations.isRevoked(payload(TOKEN_ID, ISSUED_AT_SECONDS)));
+        assertFalse(revocations.isRevoked(payload("other-token-id", ISSUED_AT_SECONDS)));
+        assertEquals(1, revocations.size());
+    }
+
+    @Test
+    void isRevoked_ShouldMatchSubjectAndIssuedAt_WhenSessionRevoked() throws Exception {
+        source.revoke(RevocationList.sessionKey(USER_ID, ISSUED_AT_SECONDS));
+        revocations.refresh();
+
+        assertTrue(revocations.isRevoked(payload(null, ISSUED_AT_SECONDS)));
+        assertTrue(revocations.isRevoked(payload(TOKEN_ID, ISSUED_AT_SECONDS)));
+        assertFalse(revocations.isRevoked(payload(null, ISSUED_AT_SECONDS + 1)));
+    }
+
+    @Test
+    void isRevoked_ShouldOnlyMatchRevokedKeys_WhenFilterOverfull() throws Exception {
+        for (int i = 0; i < 5000; i++) {
+            source.revoke("revoked-" + i);
+        }
+        revocations.refresh();
+
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(revocations.isRevoked(payload("revoked-" + i, ISSUED_AT_SECONDS)));
+            assertFalse(revocations.isRevoked(payload("not-revoked-" + i, ISSUED_AT_SECONDS)));
+        }
+    }
+
+    @Test
+    void refresh_ShouldOnlyAddNewRevocations_WhenSourceIncremental() throws Exception {
+        source.revoke(TOKEN_ID);
+        revocations.refresh();
+        revocations.refresh();
+        source.revoke("another-token-id");
+        revocations.refresh();
+
+        assertEquals(2, revocations.size());
+    }
+
+    @Test
+    void verify_ShouldRejectRevokedToken_WhenCachedBeforeRevocation() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        Map<String, String> signingKeys = Collections.singletonMap(KEY_ID,
+                Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
+        InMemoryVerificationMetrics metrics = new InMemoryVerificationMetrics();
+        JWTVerifierImpl verifier = JWTVerifierImpl.builder()
+                .signingKeys(signingKeys)
+                .cache(new VerifiedTokenCache(10, ONE_HOUR))
+                .metrics(metrics)
+                .revocations(revocations)
+                .build();
+        String token = Jwts.builder()
+                .header().keyId(KEY_ID).and()
+                .id(TOKEN_ID)
+                .subject(USER_ID)
+                .claim("username", "janedoe@example.com")
+                .expiration(new Date(System.currentTimeMillis() + ONE_HOUR))
+                .signWith(keyPair.getPrivate(), Jwts.SIG.RS256)
+                .compact();
+
+        assertEquals(TOKEN_ID, verifier.verify(token).getTokenId());
+        source.revoke(TOKEN_ID);
+        revocations.refresh();
+
+        assertThatThrownBy(() -> verifier.verify(token))
+                .isInstanceOf(JWTVerificationException.class)
+                .hasMessage(JWTVerifierImpl.REVOKED_TOKEN_ERROR);
+        assertEquals(VerificationOutcome.REVOKED, verifier.tryVerify(token).getOutcome());
+        assertEquals(2, metrics.getCount(VerificationOutcome.REVOKED));
+    }
+
+    private static UserDataPayload payload(String tokenId, long issuedAtSeconds) {
+        return UserDataPayload.ofClaims(USER_ID, "janedoe@example.com", Collections.emptyList(), Jwts.claims()
+                .id(tokenId)
+                .issuedAt(new Date(issuedAtSeconds * 1000))
+                .build());
+    }
+}
@@ -0,0 +1,219 @@
+package com.github.onsdigital;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.SecureDigestAlgorithm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.InvalidKeyException;
+import java.security.InvalidParameterException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.SignatureSpi;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SignatureVerifiersTests {
+
+    private static final String KEY_ID = "signature-key";
+    private static final String EC_KEY_ID = "ec-signature-key";
+    private static final String USER_ID = "aaaaaaaa-bbbb-cccc-dddd-eeeeeeeeeeee";
+    private static final long ONE_HOUR = 60 * 60 * 1000L;
+
+    private KeyPair keyPair;
+    private Map<String, String> signingKeys;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        signingKeys = Collections.singletonMap(KEY_ID,
+                Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
+        CountingSignature.CREATED.set(0);
+    }
+
+    @Test
+    void using_ShouldReturnDefault_WhenNoProvider() {
+        assertSame(SignatureVerifiers.DEFAULT, SignatureVerifiers.using(null));
+    }
+
+    @Test
+    void digest_ShouldSignTokensTheParserAccepts() throws Exception {
+        JWTVerifierImpl verifier = JWTVerifierImpl.builder().signingKeys(signingKeys).build();
+
+        for (SecureDigestAlgorithm<PrivateKey, PublicKey> algorithm : SignatureVerifiers.DEFAULT.getAlgorithms()) {
+            String token = Jwts.builder()
+                    .header().keyId(KEY_ID).and()
+                    .subject(USER_ID)
+                    .claim("username", "janedoe@example.com")
+                    .expiration(new Date(System.currentTimeMillis() + ONE_HOUR))
+                    .signWith(keyPair.getPrivate(), algorithm)
+                    .compact();
+
+            assertEquals(USER_ID, verifier.verify(token).getId());
+            assertEquals(USER_ID, Jwts.parser().verifyWith(keyPair.getPublic()).build()
+                    .parseSignedClaims(token).getPayload().getSubject());
+        }
+    }
+
+    @Test
+    void verify_ShouldReuseSignatureEngine_WhenSameKey() throws Exception {
+        JWTVerifierImpl verifier = JWTVerifierImpl.builder()
+                .signingKeys(signingKeys)
+                .securityProvider(new CountingProvider())
+                .build();
+
+        assertEquals(USER_ID, verifier.verify(token(keyPair.getPrivate())).getId());
+        assertEquals(USER_ID, verifier.verify(token(keyPair.getPrivate())).getId());
+        assertEquals(USER_ID, verifier.verify(token(keyPair.getPrivate())).getId());
+
+        assertEquals(1, CountingSignature.CREATED.get());
+    }
+
+    @Test
+    void verify_ShouldRejectAndKeepVerifying_WhenSignatureInvalid() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        PrivateKey otherKey = generator.generateKeyPair().getPrivate();
+        JWTVerifierImpl verifier = JWTVerifierImpl.builder().signingKeys(signingKeys).build();
+
+        assertThatThrownBy(() -> verifier.verify(token(otherKey)))
+                .hasMessageContaining(JWTVerifierImpl.SIGNATURE_VERIFICATION_ERROR);
+        assertEquals(USER_ID, verifier.verify(token(keyPair.getPrivate())).getId());
+    }
+
+    @Test
+    void verify_ShouldUseProvider_WhenSecurityProviderSet() throws Exception {
+        JWTVerifierImpl sunRsaSign = JWTVerifierImpl.builder()
+                .signingKeys(signingKeys)
+                .securityProvider(Security.getProvider("SunRsaSign"))
+                .build();
+        // the SUN provider has no RSA signatures, so no token can be verified with it
+        JWTVerifierImpl sun = JWTVerifierImpl.builder()
+                .signingKeys(signingKeys)
+                .securityProvider(Security.getProvider("SUN"))
+                .build();
+
+        assertEquals(USER_ID, sunRsaSign.verify(token(keyPair.getPrivate())).getId());
+        assertThatThrownBy(() -> sun.verify(token(keyPair.getPrivate())))
+                .hasMessageContaining(JWTVerifierImpl.SIGNATURE_VERIFICATION_ERROR);
+    }
+
+    @Test
+    void verify_ShouldVerifyOtherSignaturesWithDefaultProvider_WhenSecurityProviderOnlyHasRsa() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair ecKeyPair = generator.generateKeyPair();
+        Map<String, String> keys = new HashMap<>(signingKeys);
+        keys.put(EC_KEY_ID, Base64.getEncoder().encodeToString(ecKeyPair.getPublic().getEncoded()));
+        JWTVerifierImpl verifier = JWTVerifierImpl.builder()
+                .signingKeys(keys)
+                .securityProvider(Security.getProvider("SunRsaSign"))
+                .build();
+        String ecToken = Jwts.builder()
+                .header().keyId(EC_KEY_ID).and()
+                .subject(USER_ID)
+                .claim("username", "janedoe@example.com")
+                .expiration(new Date(System.currentTimeMillis() + ONE_HOUR))
+                .signWith(ecKeyPair.getPrivate(), Jwts.SIG.ES256)
+                .compact();
+
+        assertEquals(USER_ID, verifier.verify(ecToken).getId());
+        assertEquals(USER_ID, verifier.verify(token(keyPair.getPrivate())).getId());
+    }
+
+    private static String token(PrivateKey privateKey) {
+        return Jwts.builder()
+                .header().keyId(KEY_ID).and()
+                .subject(USER_ID)
+                .claim("username", "janedoe@example.com")
+                .expiration(new Date(System.currentTimeMillis() + ONE_HOUR))
+                .signWith(privateKey, Jwts.SIG.RS256)
+                .compact();
+    }
+
+    /**
+     * A provider of 'SHA256withRSA' engines that counts how many engines are created.
+     */
+    public static final class CountingProvider extends Provider {
+        private static final long serialVersionUID = 1L;
+
+        @SuppressWarnings("deprecation")
+        CountingProvider() {
+            super("Counting", 1.0, "Counts the signature engines created");
+            put("Signature.SHA256withRSA", CountingSignature.class.getName());
+        }
+    }
+
+    /**
+     * A 'SHA256withRSA' engine that delegates to the SunRsaSign provider.
+     */
+    public static final class CountingSignature extends SignatureSpi {
+        static final AtomicInteger CREATED = new AtomicInteger();
+
+        private final Signature delegate;
+
+        public CountingSignature() throws Exception {
+            CREATED.incrementAndGet();
+            delegate = Signature.getInstance("SHA256withRSA", "SunRsaSign");
+        }
+
+        @Override
+        protected void engineInitVerify(PublicKey publicKey) throws InvalidKeyException {
+            delegate.initVerify(publicKey);
+        }
+
+        @Override
+        protected void engineInitSign(PrivateKey privateKey) throws InvalidKeyException {
+            delegate.initSign(privateKey);
+        }
+
+        @Override
+        protected void engineUpdate(byte b) throws SignatureException {
+            delegate.update(b);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] b, int off, int len) throws SignatureException {
+            delegate.update(b, off, len);
+        }
+
+        @Override
+        protected byte[] engineSign() throws SignatureException {
+            return delegate.sign();
+        }
+
+        @Override
+        protected boolean engineVerify(byte[] sigBytes) throws SignatureException {
+            return delegate.verify(sigBytes);
+        }
+
+        @Override
+        @Deprecated
+        protected void engineSetParameter(String param, Object value) throws InvalidParameterException {
+            throw new InvalidParameterException(param);
+        }
+
+        @Override
+        @Deprecated
+        protected Object engineGetParameter(String param) throws InvalidParameterException {
+            throw new InvalidParameterException(param);
+        }
+    }
+}
@@ -1,20 +1,40 @@
 package com.github.onsdigital;
 
 import com.github.onsdigital.exceptions.JWTDecodeException;
+import com.github.onsdigital.exceptions.JWTVerificationException;
 import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.Locator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
 import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class SigningKeyLocatorImplTests {
@@ -23,6 +43,8 @@ class SigningKeyLocatorImplTests {
 
     private final static String PUBLIC_KEY_ID = "1234example=";
 
+    private final static String INVALID_RSA_KEY = "MBIwDQYJKoZIhvcNAQEBBQADAQA=";
+
     @Mock
     private JwsHeader jwsHeader;
 
@@ -95,4 +117,309 @@ class SigningKeyLocatorImplTests {
                 .isInstanceOf(JWTDecodeException.class)
                 .hasMessageContaining(SigningKeyLocatorImpl.PUBLIC_KEY_ERROR);
     }
+
+    @Test
+    void resolveSigningKey_ShouldReturnKeyOfDetectedType() throws Exception {
+        Map<String, String> signingKeys = new HashMap<>();
+        signingKeys.put("rsa", PUBLIC_KEY);
+        signingKeys.put("rsa-pss", encodedPublicKey("RSASSA-PSS", null));
+        signingKeys.put("p256", encodedPublicKey("EC", "secp256r1"));
+        signingKeys.put("p384", encodedPublicKey("EC", "secp384r1"));
+        SigningKeyLocatorImpl keyLocator = new SigningKeyLocatorImpl(signingKeys);
+
+        assertEquals("RSA", locate(keyLocator, "rsa", "RS256").getAlgorithm());
+        assertEquals("RSA", locate(keyLocator, "rsa", "PS256").getAlgorithm());
+        assertEquals("RSASSA-PSS", locate(keyLocator, "rsa-pss", "PS384").getAlgorithm());
+        assertEquals("EC", locate(keyLocator, "p256", "ES256").getAlgorithm());
+        assertEquals("EC", locate(keyLocator, "p384", "ES384").getAlgorithm());
+    }
+
+    @Test
+    void resolveSigningKey_ShouldReturnEdDSAKey_WhenJvmSupportsEd25519() throws Exception {
+        assumeTrue(isKeyTypeSupported("Ed25519"), "Ed25519 needs Java 15 or later");
+        SigningKeyLocatorImpl keyLocator = new SigningKeyLocatorImpl(
+                Collections.singletonMap("ed25519", encodedPublicKey("Ed25519", null)));
+
+        assertEquals("EdDSA", locate(keyLocator, "ed25519", "EdDSA").getAlgorithm());
+    }
+
+    @Test
+    void resolveSigningKey_ShouldThrowException_WhenAlgorithmDoesNotMatchKey() throws Exception {
+        Map<String, String> signingKeys = new HashMap<>();
+        signingKeys.put("rsa", PUBLIC_KEY);
+        signingKeys.put("rsa-pss", encodedPublicKey("RSASSA-PSS", null));
+        signingKeys.put("p256", encodedPublicKey("EC", "secp256r1"));
+        SigningKeyLocatorImpl keyLocator = new SigningKeyLocatorImpl(signingKeys);
+
+        String[][] mismatches = {{"rsa", "ES256"}, {"rsa-pss", "RS256"}, {"p256", "ES384"}, {"p256", "RS256"}};
+        for (String[] mismatch : mismatches) {
+            assertThatThrownBy(() -> locate(keyLocator, mismatch[0], mismatch[1]))
+                    .isInstanceOf(JWTVerificationException.class)
+                    .hasMessageContaining(JWTVerifierImpl.ALGORITHM_ERROR);
+        }
+    }
+
+    @Test
+    void constructor_ShouldThrowException_WhenKeyTypeNotSupported() throws Exception {
+        Map<String, String> signingKeys = new HashMap<>();
+        signingKeys.put("dsa", encodedPublicKey("DSA", null));
+
+        assertThatThrownBy(() -> new SigningKeyLocatorImpl(signingKeys))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(SigningKeyLocatorImpl.PUBLIC_KEY_CHECK_ERROR);
+    }
+
+    @Test
+    void lazy_ShouldDecodeKeyOnce_WhenKeyIDLocated() {
+        Map<String, String> signingKeys = new HashMap<>();
+        signingKeys.put(PUBLIC_KEY_ID, PUBLIC_KEY);
+        signingKeys.put("unused_key_id", INVALID_RSA_KEY);
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.lazy(signingKeys, Collections.emptyList());
+
+        when(jwsHeader.getKeyId()).thenReturn(PUBLIC_KEY_ID);
+        Key first = keyLocator.locate(jwsHeader);
+
+        assertEquals("RSA", first.getAlgorithm());
+        assertSame(first, keyLocator.locate(jwsHeader));
+    }
+
+    @Test
+    void lazy_ShouldThrowException_WhenKeyNotDerEncoded() {
+        Map<String, String> signingKeys = new HashMap<>();
+        signingKeys.put("1234", "SU5WQUxJRF9LRVk=");
+
+        assertThatThrownBy(() -> SigningKeyLocatorImpl.lazy(signingKeys, Collections.emptyList()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(SigningKeyLocatorImpl.PUBLIC_KEY_CHECK_ERROR);
+    }
+
+    @Test
+    void lazy_ShouldThrowException_WhenPreWarmedKeyInvalid() {
+        Map<String, String> signingKeys = new HashMap<>();
+        signingKeys.put(PUBLIC_KEY_ID, PUBLIC_KEY);
+        signingKeys.put("1234", INVALID_RSA_KEY);
+
+        assertThatThrownBy(() -> SigningKeyLocatorImpl.lazy(signingKeys, Collections.singletonList("1234")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(SigningKeyLocatorImpl.PUBLIC_KEY_CHECK_ERROR);
+    }
+
+    @Test
+    void lazy_ShouldThrowException_WhenLocatedKeyInvalid() {
+        Map<String, String> signingKeys = new HashMap<>();
+        signingKeys.put(PUBLIC_KEY_ID, PUBLIC_KEY);
+        signingKeys.put("1234", INVALID_RSA_KEY);
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.lazy(signingKeys, Collections.singletonList(PUBLIC_KEY_ID));
+
+        when(jwsHeader.getKeyId()).thenReturn("1234");
+
+        assertThatThrownBy(() -> keyLocator.locate(jwsHeader))
+                .isInstanceOf(JWTDecodeException.class)
+                .hasMessageContaining(SigningKeyLocatorImpl.PUBLIC_KEY_ERROR);
+    }
+
+    @Test
+    void refresh_ShouldReplaceSigningKeys_WhenProviderReturnsNewKeys() throws Exception {
+        Map<String, String> rotatedKeys = SigningKeyRefresherTests.singleKey("rotated_key_id");
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys()).thenReturn(Collections.singletonMap(PUBLIC_KEY_ID, PUBLIC_KEY)).thenReturn(rotatedKeys);
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.fromKeyProvider(keyProvider);
+
+        keyLocator.refresh();
+
+        when(jwsHeader.getKeyId()).thenReturn("rotated_key_id");
+        assertNotNull(keyLocator.locate(jwsHeader));
+        when(jwsHeader.getKeyId()).thenReturn(PUBLIC_KEY_ID);
+        assertThatThrownBy(() -> keyLocator.locate(jwsHeader))
+                .isInstanceOf(JWTDecodeException.class)
+                .hasMessageContaining(SigningKeyLocatorImpl.PUBLIC_KEY_ERROR);
+    }
+
+    @Test
+    void refresh_ShouldNotRebuildSigningKeys_WhenProviderReturnsSameKeys() throws Exception {
+        Map<String, String> unchangedKeys = Collections.singletonMap(PUBLIC_KEY_ID, PUBLIC_KEY);
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys()).thenReturn(unchangedKeys);
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.fromKeyProvider(keyProvider);
+        when(jwsHeader.getKeyId()).thenReturn(PUBLIC_KEY_ID);
+        Key before = keyLocator.locate(jwsHeader);
+
+        keyLocator.refresh();
+
+        assertSame(before, keyLocator.locate(jwsHeader));
+    }
+
+    @Test
+    void refresh_ShouldKeepSigningKeys_WhenProviderReturnsInvalidKeys() throws Exception {
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys())
+                .thenReturn(Collections.singletonMap(PUBLIC_KEY_ID, PUBLIC_KEY))
+                .thenReturn(Collections.singletonMap("1234", "SU5WQUxJRF9LRVk="));
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.fromKeyProvider(keyProvider);
+
+        assertThatThrownBy(keyLocator::refresh)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(SigningKeyLocatorImpl.PUBLIC_KEY_CHECK_ERROR);
+
+        when(jwsHeader.getKeyId()).thenReturn(PUBLIC_KEY_ID);
+        assertNotNull(keyLocator.locate(jwsHeader));
+    }
+
+    @Test
+    void refresh_ShouldThrowException_WhenNoKeyProvider() {
+        Map<String, String> signingKeys = new HashMap<>();
+        signingKeys.put(PUBLIC_KEY_ID, PUBLIC_KEY);
+        SigningKeyLocatorImpl keyLocator = new SigningKeyLocatorImpl(signingKeys);
+
+        assertThatThrownBy(keyLocator::refresh)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(SigningKeyLocatorImpl.KEY_PROVIDER_REQUIRED_ERROR);
+    }
+
+    @Test
+    void resolveSigningKey_ShouldRefreshKeys_WhenKeyIDUnknown() throws Exception {
+        Map<String, String> rotatedKeys = SigningKeyRefresherTests.singleKey("rotated_key_id");
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys()).thenReturn(Collections.singletonMap(PUBLIC_KEY_ID, PUBLIC_KEY)).thenReturn(rotatedKeys);
+        Locator<Key> keyLocator = SigningKeyLocatorImpl.fromKeyProvider(keyProvider);
+
+        when(jwsHeader.getKeyId()).thenReturn("rotated_key_id");
+
+        assertNotNull(keyLocator.locate(jwsHeader));
+        verify(keyProvider, times(2)).getJwtKeys();
+    }
+
+    @Test
+    void resolveSigningKey_ShouldCoalesceRefreshes_WhenConcurrentKeyIDMisses() throws Exception {
+        Map<String, String> rotatedKeys = SigningKeyRefresherTests.singleKey("rotated_key_id");
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFetch = new CountDownLatch(1);
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys())
+                .thenReturn(Collections.singletonMap(PUBLIC_KEY_ID, PUBLIC_KEY))
+                .thenAnswer(invocation -> {
+                    fetchStarted.countDown();
+                    releaseFetch.await();
+                    return rotatedKeys;
+                });
+        Locator<Key> keyLocator = SigningKeyLocatorImpl.fromKeyProvider(keyProvider);
+        when(jwsHeader.getKeyId()).thenReturn("rotated_key_id");
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Key>> results = new ArrayList<>();
+            results.add(executor.submit(() -> keyLocator.locate(jwsHeader)));
+            fetchStarted.await();
+            for (int i = 0; i < 7; i++) {
+                results.add(executor.submit(() -> keyLocator.locate(jwsHeader)));
+            }
+            releaseFetch.countDown();
+
+            for (Future<Key> result : results) {
+                assertNotNull(result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(keyProvider, times(2)).getJwtKeys();
+    }
+
+    @Test
+    void resolveSigningKey_ShouldNotRefreshAgain_WhenJunkKeyIDsWithinCooldown() throws Exception {
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys()).thenReturn(Collections.singletonMap(PUBLIC_KEY_ID, PUBLIC_KEY));
+        Locator<Key> keyLocator = SigningKeyLocatorImpl.fromKeyProvider(keyProvider, 60000);
+
+        for (String keyId : new String[]{"junk_1", "junk_1", "junk_2", "junk_3"}) {
+            when(jwsHeader.getKeyId()).thenReturn(keyId);
+            assertThatThrownBy(() -> keyLocator.locate(jwsHeader))
+                    .isInstanceOf(JWTDecodeException.class)
+                    .hasMessageContaining(SigningKeyLocatorImpl.PUBLIC_KEY_ERROR);
+        }
+        verify(keyProvider, times(2)).getJwtKeys();
+    }
+
+    @Test
+    void resolveSigningKey_ShouldRetryKeyID_WhenRefreshWasThrottled() throws Exception {
+        Map<String, String> rotatedKeys = SigningKeyRefresherTests.singleKey("rotated_key_id");
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys())
+                .thenReturn(Collections.singletonMap(PUBLIC_KEY_ID, PUBLIC_KEY))
+                .thenReturn(Collections.singletonMap(PUBLIC_KEY_ID, PUBLIC_KEY))
+                .thenReturn(rotatedKeys);
+        Clock clock = Mockito.mock(Clock.class);
+        when(clock.millis()).thenReturn(1000L);
+        Locator<Key> keyLocator = SigningKeyLocatorImpl.fromKeyProvider(keyProvider, 400, clock);
+
+        when(jwsHeader.getKeyId()).thenReturn("junk_key_id");
+        assertThatThrownBy(() -> keyLocator.locate(jwsHeader)).isInstanceOf(JWTDecodeException.class);
+        when(clock.millis()).thenReturn(1250L);
+        when(jwsHeader.getKeyId()).thenReturn("rotated_key_id");
+        assertThatThrownBy(() -> keyLocator.locate(jwsHeader)).isInstanceOf(JWTDecodeException.class);
+
+        // the throttled 'kid' is retried once the next refresh is allowed, not a full cool-down after it was seen
+        when(clock.millis()).thenReturn(1400L);
+        assertNotNull(keyLocator.locate(jwsHeader));
+        verify(keyProvider, times(3)).getJwtKeys();
+    }
+
+    @Test
+    void resolveSigningKey_ShouldRefreshUnknownKeyID_WhenCooldownExpires() throws Exception {
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys()).thenReturn(Collections.singletonMap(PUBLIC_KEY_ID, PUBLIC_KEY));
+        Clock clock = Mockito.mock(Clock.class);
+        when(clock.millis()).thenReturn(1000L);
+        Locator<Key> keyLocator = SigningKeyLocatorImpl.fromKeyProvider(keyProvider, 400, clock);
+        when(jwsHeader.getKeyId()).thenReturn("junk_key_id");
+
+        assertThatThrownBy(() -> keyLocator.locate(jwsHeader)).isInstanceOf(JWTDecodeException.class);
+        when(clock.millis()).thenReturn(1399L);
+        assertThatThrownBy(() -> keyLocator.locate(jwsHeader)).isInstanceOf(JWTDecodeException.class);
+        verify(keyProvider, times(2)).getJwtKeys();
+
+        when(clock.millis()).thenReturn(1400L);
+        assertThatThrownBy(() -> keyLocator.locate(jwsHeader)).isInstanceOf(JWTDecodeException.class);
+        verify(keyProvider, times(3)).getJwtKeys();
+    }
+
+    @Test
+    void resolveSigningKey_ShouldThrowException_WhenRefreshForUnknownKeyIDFails() throws Exception {
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys())
+                .thenReturn(Collections.singletonMap(PUBLIC_KEY_ID, PUBLIC_KEY))
+                .thenThrow(new Exception("Failed to get jwt keys:"));
+        Locator<Key> keyLocator = SigningKeyLocatorImpl.fromKeyProvider(keyProvider);
+
+        when(jwsHeader.getKeyId()).thenReturn("unknown_key_id");
+        assertThatThrownBy(() -> keyLocator.locate(jwsHeader))
+                .isInstanceOf(JWTDecodeException.class)
+                .hasMessageContaining(SigningKeyLocatorImpl.PUBLIC_KEY_ERROR);
+
+        when(jwsHeader.getKeyId()).thenReturn(PUBLIC_KEY_ID);
+        assertNotNull(keyLocator.locate(jwsHeader));
+    }
+
+    private Key locate(SigningKeyLocatorImpl keyLocator, String keyId, String algorithm) {
+        JwsHeader header = Mockito.mock(JwsHeader.class);
+        when(header.getKeyId()).thenReturn(keyId);
+        when(header.getAlgorithm()).thenReturn(algorithm);
+        return keyLocator.locate(header);
+    }
+
+    static boolean isKeyTypeSupported(String algorithm) {
+        try {
+            KeyFactory.getInstance(algorithm);
+            return true;
+        } catch (NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+
+    private static String encodedPublicKey(String algorithm, String curve) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        if (curve != null) {
+            generator.initialize(new ECGenParameterSpec(curve));
+        }
+        return Base64.getEncoder().encodeToString(generator.generateKeyPair().getPublic().getEncoded());
+    }
 }
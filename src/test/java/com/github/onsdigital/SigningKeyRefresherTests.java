@@ -0,0 +1,136 @@
+package com.github.onsdigital;
+
+import io.jsonwebtoken.JwsHeader;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.security.Key;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SigningKeyRefresherTests {
+
+    private static final long WAIT_MILLIS = 5000;
+
+    @Test
+    void constructor_ShouldThrowException_WhenIntervalNotPositive() throws Exception {
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.fromKeyProvider(providerOf(singleKey("1")));
+
+        assertThatThrownBy(() -> new SigningKeyRefresher(keyLocator, 0, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(SigningKeyRefresher.REFRESH_INTERVAL_ERROR);
+    }
+
+    @Test
+    void constructor_ShouldThrowException_WhenJitterNegative() throws Exception {
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.fromKeyProvider(providerOf(singleKey("1")));
+
+        assertThatThrownBy(() -> new SigningKeyRefresher(keyLocator, 10, -1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(SigningKeyRefresher.REFRESH_JITTER_ERROR);
+    }
+
+    @Test
+    void nextDelayMillis_ShouldStayWithinIntervalPlusJitter() throws Exception {
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.fromKeyProvider(providerOf(singleKey("1")));
+
+        try (SigningKeyRefresher refresher = new SigningKeyRefresher(keyLocator, 1000, 100)) {
+            for (int i = 0; i < 100; i++) {
+                long delay = refresher.nextDelayMillis();
+                assertTrue(delay >= 1000 && delay <= 1100);
+            }
+        }
+    }
+
+    @Test
+    void nextDelayMillis_ShouldFollowMaxAge_WhenProviderReportsOne() throws Exception {
+        JWTKeyProvider keyProvider = providerOf(singleKey("1"));
+        when(keyProvider.getMaxAgeMillis()).thenReturn(60000L);
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.fromKeyProvider(keyProvider);
+
+        try (SigningKeyRefresher refresher = new SigningKeyRefresher(keyLocator, 1000, 100)) {
+            long delay = refresher.nextDelayMillis();
+            assertTrue(delay >= 60000 && delay <= 60100);
+        }
+    }
+
+    @Test
+    void nextDelayMillis_ShouldNotFollowMaxAgeBelowFloor_WhenProviderReportsTinyMaxAge() throws Exception {
+        JWTKeyProvider keyProvider = providerOf(singleKey("1"));
+        when(keyProvider.getMaxAgeMillis()).thenReturn(1L);
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.fromKeyProvider(keyProvider);
+
+        try (SigningKeyRefresher refresher = new SigningKeyRefresher(keyLocator, 900000, 100)) {
+            long delay = refresher.nextDelayMillis();
+            assertTrue(delay >= SigningKeyRefresher.MIN_MAX_AGE_MILLIS
+                    && delay <= SigningKeyRefresher.MIN_MAX_AGE_MILLIS + 100);
+        }
+        try (SigningKeyRefresher refresher = new SigningKeyRefresher(keyLocator, 1000, 100)) {
+            long delay = refresher.nextDelayMillis();
+            assertTrue(delay >= 1000 && delay <= 1100);
+        }
+    }
+
+    @Test
+    void start_ShouldPublishRefreshedKeys_WhenKeysRotate() throws Exception {
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys()).thenReturn(singleKey("old")).thenReturn(singleKey("new"));
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.fromKeyProvider(keyProvider);
+
+        try (SigningKeyRefresher refresher = new SigningKeyRefresher(keyLocator, 10, 5)) {
+            refresher.start();
+            verify(keyProvider, timeout(WAIT_MILLIS).atLeast(3)).getJwtKeys();
+        }
+
+        assertNotNull(keyLocator.locate(headerWithKeyId("new")));
+        assertThatThrownBy(() -> keyLocator.locate(headerWithKeyId("old")))
+                .hasMessageContaining(SigningKeyLocatorImpl.PUBLIC_KEY_ERROR);
+    }
+
+    @Test
+    void start_ShouldKeepLastKnownGoodKeys_WhenRefreshFails() throws Exception {
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys()).thenReturn(singleKey("current")).thenThrow(new Exception("Failed to get jwt keys:"));
+        SigningKeyLocatorImpl keyLocator = SigningKeyLocatorImpl.fromKeyProvider(keyProvider);
+        Key before = keyLocator.locate(headerWithKeyId("current"));
+
+        try (SigningKeyRefresher refresher = new SigningKeyRefresher(keyLocator, 10, 0)) {
+            refresher.start();
+            verify(keyProvider, timeout(WAIT_MILLIS).atLeast(3)).getJwtKeys();
+        }
+
+        assertEquals(before, keyLocator.locate(headerWithKeyId("current")));
+        verify(keyProvider, atLeast(3)).getJwtKeys();
+    }
+
+    static Map<String, String> singleKey(String keyId) throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        String publicKey = Base64.getEncoder().encodeToString(generator.generateKeyPair().getPublic().getEncoded());
+        return Collections.singletonMap(keyId, publicKey);
+    }
+
+    private static JWTKeyProvider providerOf(Map<String, String> signingKeys) throws Exception {
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        when(keyProvider.getJwtKeys()).thenReturn(signingKeys);
+        return keyProvider;
+    }
+
+    private static JwsHeader headerWithKeyId(String keyId) {
+        JwsHeader header = Mockito.mock(JwsHeader.class);
+        when(header.getKeyId()).thenReturn(keyId);
+        return header;
+    }
+}
@@ -0,0 +1,139 @@
+package com.github.onsdigital;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SnapshotKeyProviderTests {
+
+    private static final long ONE_HOUR = 60 * 60 * 1000L;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void constructor_ShouldThrowException_WhenSettingsInvalid() {
+        JWTKeyProvider keyProvider = Mockito.mock(JWTKeyProvider.class);
+        Path snapshotPath = tempDir.resolve("keys.snapshot");
+
+        assertThatThrownBy(() -> new SnapshotKeyProvider(null, snapshotPath, ONE_HOUR))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(SnapshotKeyProvider.KEY_PROVIDER_REQUIRED_ERROR);
+        assertThatThrownBy(() -> new SnapshotKeyProvider(keyProvider, null, ONE_HOUR))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(SnapshotKeyProvider.SNAPSHOT_PATH_REQUIRED_ERROR);
+        assertThatThrownBy(() -> new SnapshotKeyProvider(keyProvider, snapshotPath, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(SnapshotKeyProvider.MAX_STALENESS_ERROR);
+    }
+
+    @Test
+    void getJwtKeys_ShouldStartFromSnapshot_WhenEndpointUnavailable() throws Exception {
+        Path snapshotPath = tempDir.resolve("keys.snapshot");
+        Map<String, String> signingKeys = SigningKeyRefresherTests.singleKey("1");
+        JWTKeyProvider liveProvider = Mockito.mock(JWTKeyProvider.class);
+        when(liveProvider.getJwtKeys()).thenReturn(signingKeys);
+        new SnapshotKeyProvider(liveProvider, snapshotPath, ONE_HOUR).getJwtKeys();
+
+        JWTKeyProvider failingProvider = Mockito.mock(JWTKeyProvider.class);
+        when(failingProvider.getJwtKeys()).thenThrow(new Exception("Failed to get jwt keys:"));
+        when(failingProvider.getMaxAgeMillis()).thenReturn(-1L);
+        SnapshotKeyProvider keyProvider = new SnapshotKeyProvider(failingProvider, snapshotPath, ONE_HOUR);
+
+        assertEquals(signingKeys, keyProvider.getJwtKeys());
+        verify(failingProvider, never()).getJwtKeys();
+        assertTrue(keyProvider.isReconcilePending());
+
+        assertEquals(signingKeys, keyProvider.getJwtKeys());
+        verify(failingProvider, times(1)).getJwtKeys();
+        assertTrue(keyProvider.isReconcilePending());
+        assertEquals(-1L, keyProvider.getMaxAgeMillis());
+    }
+
+    @Test
+    void getJwtKeys_ShouldReturnLiveKeys_WhenReconciled() throws Exception {
+        Path snapshotPath = tempDir.resolve("keys.snapshot");
+        new KeySetSnapshotFile(snapshotPath).write(SigningKeyRefresherTests.singleKey("old"), System.currentTimeMillis());
+        Map<String, String> rotatedKeys = SigningKeyRefresherTests.singleKey("new");
+        JWTKeyProvider liveProvider = Mockito.mock(JWTKeyProvider.class);
+        when(liveProvider.getJwtKeys()).thenReturn(rotatedKeys);
+        SnapshotKeyProvider keyProvider = new SnapshotKeyProvider(liveProvider, snapshotPath, ONE_HOUR);
+
+        assertTrue(keyProvider.getJwtKeys().containsKey("old"));
+        assertSame(rotatedKeys, keyProvider.getJwtKeys());
+        assertFalse(keyProvider.isReconcilePending());
+        assertEquals(rotatedKeys, new KeySetSnapshotFile(snapshotPath).read().getSigningKeys());
+    }
+
+    @Test
+    void getJwtKeys_ShouldIgnoreSnapshot_WhenStale() throws Exception {
+        Path snapshotPath = tempDir.resolve("keys.snapshot");
+        new KeySetSnapshotFile(snapshotPath).write(SigningKeyRefresherTests.singleKey("1"),
+                System.currentTimeMillis() - 2 * ONE_HOUR);
+        JWTKeyProvider failingProvider = Mockito.mock(JWTKeyProvider.class);
+        when(failingProvider.getJwtKeys()).thenThrow(new Exception("Failed to get jwt keys:"));
+        SnapshotKeyProvider keyProvider = new SnapshotKeyProvider(failingProvider, snapshotPath, ONE_HOUR);
+
+        assertThatThrownBy(keyProvider::getJwtKeys).hasMessageContaining("Failed to get jwt keys:");
+    }
+
+    @Test
+    void getJwtKeys_ShouldIgnoreSnapshot_WhenCorrupt() throws Exception {
+        Path snapshotPath = tempDir.resolve("keys.snapshot");
+        new KeySetSnapshotFile(snapshotPath).write(SigningKeyRefresherTests.singleKey("1"), System.currentTimeMillis());
+        byte[] bytes = Files.readAllBytes(snapshotPath);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(snapshotPath, bytes);
+        Map<String, String> signingKeys = SigningKeyRefresherTests.singleKey("2");
+        JWTKeyProvider liveProvider = Mockito.mock(JWTKeyProvider.class);
+        when(liveProvider.getJwtKeys()).thenReturn(signingKeys);
+        SnapshotKeyProvider keyProvider = new SnapshotKeyProvider(liveProvider, snapshotPath, ONE_HOUR);
+
+        assertSame(signingKeys, keyProvider.getJwtKeys());
+        verify(liveProvider, times(1)).getJwtKeys();
+    }
+
+    @Test
+    void read_ShouldRejectCorruptSnapshot() throws Exception {
+        Path snapshotPath = tempDir.resolve("keys.snapshot");
+        KeySetSnapshotFile snapshotFile = new KeySetSnapshotFile(snapshotPath);
+        assertNull(snapshotFile.read());
+
+        Files.write(snapshotPath, new byte[]{1, 2, 3});
+
+        assertThatThrownBy(snapshotFile::read)
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining(KeySetSnapshotFile.CORRUPT_SNAPSHOT_ERROR);
+    }
+
+    @Test
+    void write_ShouldNotLeaveTemporaryFiles() throws Exception {
+        Path snapshotPath = tempDir.resolve("keys.snapshot");
+        KeySetSnapshotFile snapshotFile = new KeySetSnapshotFile(snapshotPath);
+
+        snapshotFile.write(SigningKeyRefresherTests.singleKey("1"), 1);
+        snapshotFile.write(SigningKeyRefresherTests.singleKey("2"), 2);
+
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+        assertEquals(2, snapshotFile.read().getWrittenAtMillis());
+    }
+}
@@ -0,0 +1,170 @@
+package com.github.onsdigital;
+
+import com.github.onsdigital.exceptions.JWTDecodeException;
+import com.github.onsdigital.exceptions.JWTTokenExpiredException;
+import com.github.onsdigital.exceptions.JWTVerificationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenPreValidatorTests {
+
+    private static final String KNOWN_KID = "known";
+    private static final String HEADER = "{\"alg\":\"RS256\",\"kid\":\"" + KNOWN_KID + "\"}";
+    private static final String FUTURE_PAYLOAD = "{\"sub\":\"user\",\"exp\":7957071291}";
+    private static final String SIGNATURE = "c2lnbmF0dXJl";
+
+    /**
+     * Class under test
+     */
+    private TokenPreValidator preValidator;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        SigningKeyLocatorImpl keyLocator = new SigningKeyLocatorImpl(SigningKeyRefresherTests.singleKey(KNOWN_KID));
+        preValidator = new TokenPreValidator(keyLocator, 1024);
+    }
+
+    @Test
+    void validate_ShouldPass_WhenTokenWellFormed() {
+        assertDoesNotThrow(() -> preValidator.validate(token(HEADER, FUTURE_PAYLOAD, SIGNATURE)));
+    }
+
+    @Test
+    void validate_ShouldPass_WhenTokenNullOrEmpty() {
+        assertDoesNotThrow(() -> preValidator.validate(null));
+        assertDoesNotThrow(() -> preValidator.validate(""));
+    }
+
+    @Test
+    void validate_ShouldThrowException_WhenStructureInvalid() {
+        String[] tokens = {
+                "abc",
+                "a.b",
+                ".b.c",
+                "a..c",
+                "a.b.c.d",
+                "!!.b.c",
+                encode(HEADER) + "." + encode(FUTURE_PAYLOAD) + ".sig=",
+                encode(HEADER) + "." + encode(FUTURE_PAYLOAD) + ".sig+nature",
+        };
+        for (String token : tokens) {
+            assertThatThrownBy(() -> preValidator.validate(token))
+                    .isInstanceOf(JWTDecodeException.class)
+                    .hasMessageContaining(JWTVerifierImpl.TOKEN_NOT_VALID_ERROR);
+        }
+    }
+
+    @Test
+    void validate_ShouldThrowException_WhenTokenTooLong() {
+        String payload = "{\"sub\":\"" + new String(new char[1024]).replace('\0', 'a') + "\"}";
+
+        assertThatThrownBy(() -> preValidator.validate(token(HEADER, payload, SIGNATURE)))
+                .isInstanceOf(JWTDecodeException.class)
+                .hasMessageContaining(JWTVerifierImpl.TOKEN_NOT_VALID_ERROR);
+    }
+
+    @Test
+    void validate_ShouldThrowException_WhenHeaderNotJsonObject() {
+        assertThatThrownBy(() -> preValidator.validate(token("[\"alg\"]", FUTURE_PAYLOAD, SIGNATURE)))
+                .isInstanceOf(JWTDecodeException.class)
+                .hasMessageContaining(JWTVerifierImpl.TOKEN_NOT_VALID_ERROR);
+    }
+
+    @Test
+    void validate_ShouldThrowMalformed_WhenAlgorithmMissing() {
+        String[] headers = {
+                "{\"kid\":\"known\"}",
+                "{\"alg\":\"\",\"kid\":\"known\"}",
+                "{\"alg\":null,\"kid\":\"known\"}",
+                "{\"alg\":256,\"kid\":\"known\"}",
+                "{\"jwk\":{\"alg\":\"RS256\"},\"kid\":\"known\"}",
+        };
+        for (String header : headers) {
+            assertThatThrownBy(() -> preValidator.validate(token(header, FUTURE_PAYLOAD, SIGNATURE)))
+                    .isInstanceOf(JWTDecodeException.class)
+                    .hasMessageContaining(JWTVerifierImpl.TOKEN_NOT_VALID_ERROR)
+                    .satisfies(e -> assertEquals(VerificationOutcome.MALFORMED,
+                            JWTVerifierImpl.outcomeOf((RuntimeException) e)));
+        }
+    }
+
+    @Test
+    void validate_ShouldThrowException_WhenAlgorithmNotSupported() {
+        String[] headers = {
+                "{\"alg\":\"none\",\"kid\":\"known\"}",
+                "{\"alg\":\"HS256\",\"kid\":\"known\"}",
+        };
+        for (String header : headers) {
+            assertThatThrownBy(() -> preValidator.validate(token(header, FUTURE_PAYLOAD, SIGNATURE)))
+                    .isInstanceOf(JWTVerificationException.class)
+                    .hasMessageContaining(JWTVerifierImpl.ALGORITHM_ERROR)
+                    .satisfies(e -> assertEquals(VerificationOutcome.UNSUPPORTED_ALGORITHM,
+                            JWTVerifierImpl.outcomeOf((RuntimeException) e)));
+        }
+    }
+
+    @Test
+    void validate_ShouldThrowException_WhenSignatureMissing() {
+        assertThatThrownBy(() -> preValidator.validate(token(HEADER, FUTURE_PAYLOAD, "")))
+                .isInstanceOf(JWTDecodeException.class)
+                .hasMessageContaining(JWTVerifierImpl.TOKEN_NOT_VALID_ERROR);
+    }
+
+    @Test
+    void validate_ShouldThrowException_WhenKeyIdMissingOrUnknown() {
+        String[] headers = {
+                "{\"alg\":\"RS256\"}",
+                "{\"alg\":\"RS256\",\"kid\":\"unknown\"}",
+                "{\"alg\":\"RS256\",\"x5c\":[{\"kid\":\"known\"}]}",
+        };
+        for (String header : headers) {
+            assertThatThrownBy(() -> preValidator.validate(token(header, FUTURE_PAYLOAD, SIGNATURE)))
+                    .isInstanceOf(JWTDecodeException.class)
+                    .hasMessageContaining(SigningKeyLocatorImpl.PUBLIC_KEY_ERROR);
+        }
+    }
+
+    @Test
+    void validate_ShouldThrowException_WhenTokenExpired() {
+        String payload = "{\"sub\":\"user\",\"exp\" : 1562194124}";
+
+        assertThatThrownBy(() -> preValidator.validate(token(HEADER, payload, SIGNATURE)))
+                .isInstanceOf(JWTTokenExpiredException.class)
+                .hasMessageContaining(JWTVerifierImpl.EXPIRED_TOKEN_ERROR);
+    }
+
+    @Test
+    void validate_ShouldIgnoreNestedExp() {
+        String payload = "{\"sub\":\"user\",\"ctx\":{\"exp\":1562194124},\"exp\":7957071291}";
+
+        assertDoesNotThrow(() -> preValidator.validate(token(HEADER, payload, SIGNATURE)));
+    }
+
+    @Test
+    void validate_ShouldLeaveAmbiguousValuesForFullVerification() {
+        String escapedHeader = "{\"alg\":\"\\u0052S256\",\"kid\":\"\\u006bnown\"}";
+        String exponentPayload = "{\"exp\":1.5e9}";
+        String stringPayload = "{\"exp\":\"1562194124\"}";
+        String hugePayload = "{\"exp\":15621941240000000000}";
+
+        assertDoesNotThrow(() -> preValidator.validate(token(escapedHeader, FUTURE_PAYLOAD, SIGNATURE)));
+        assertDoesNotThrow(() -> preValidator.validate(token(HEADER, exponentPayload, SIGNATURE)));
+        assertDoesNotThrow(() -> preValidator.validate(token(HEADER, stringPayload, SIGNATURE)));
+        assertDoesNotThrow(() -> preValidator.validate(token(HEADER, hugePayload, SIGNATURE)));
+    }
+
+    private static String token(String header, String payload, String signature) {
+        return encode(header) + "." + encode(payload) + "." + signature;
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
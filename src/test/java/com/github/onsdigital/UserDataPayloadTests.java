@@ -0,0 +1,61 @@
+package com.github.onsdigital;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserDataPayloadTests {
+
+    @Test
+    void constructor_ShouldCopyGroups() {
+        List<String> groups = new ArrayList<>(Arrays.asList("admin", "data"));
+
+        UserDataPayload payload = new UserDataPayload("id", "email", groups);
+        groups.add("publishing");
+
+        assertEquals(Arrays.asList("admin", "data"), payload.getGroups());
+        assertThrows(UnsupportedOperationException.class, () -> payload.getGroups().add("publishing"));
+        assertNull(payload.getClientId());
+        assertNull(payload.getExpiresAt());
+    }
+
+    @Test
+    void constructor_ShouldHaveNoGroups_WhenGroupsNull() {
+        UserDataPayload payload = new UserDataPayload("id", "email", null);
+
+        assertTrue(payload.getGroups().isEmpty());
+        assertFalse(payload.isMemberOf("admin"));
+    }
+
+    @Test
+    void isMemberOf_ShouldFindGroup_WhenFewGroups() {
+        UserDataPayload payload = new UserDataPayload("id", "email", Arrays.asList("admin", "data"));
+
+        assertTrue(payload.isMemberOf("data"));
+        assertFalse(payload.isMemberOf("publishing"));
+        assertFalse(payload.isMemberOf(null));
+    }
+
+    @Test
+    void isMemberOf_ShouldFindGroup_WhenManyGroups() {
+        List<String> groups = new ArrayList<>();
+        for (int i = 0; i < UserDataPayload.GROUP_SET_THRESHOLD * 4; i++) {
+            groups.add("group-" + i);
+        }
+        UserDataPayload payload = new UserDataPayload("id", "email", groups);
+
+        for (String group : groups) {
+            assertTrue(payload.isMemberOf(group));
+        }
+        assertFalse(payload.isMemberOf("admin"));
+        assertFalse(payload.isMemberOf(null));
+    }
+}
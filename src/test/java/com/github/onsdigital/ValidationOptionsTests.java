@@ -0,0 +1,230 @@
+package com.github.onsdigital;
+
+import com.github.onsdigital.exceptions.JWTDecodeException;
+import com.github.onsdigital.exceptions.JWTTokenExpiredException;
+import com.github.onsdigital.exceptions.JWTVerificationException;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ValidationOptionsTests {
+
+    private static final String KEY_ID = "options-key";
+    private static final String USER_ID = "aaaaaaaa-bbbb-cccc-dddd-eeeeeeeeeeee";
+    private static final String ISSUER = "https://cognito-idp.eu-west-2.amazonaws.com/eu-west-2_example";
+    private static final String CLIENT_ID = "57cbishk4j24pabc1234567890";
+    private static final Instant NOW = Instant.parse("2024-01-01T12:00:00Z");
+
+    private KeyPair keyPair;
+    private SigningKeyLocatorImpl keyLocator;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        keyLocator = new SigningKeyLocatorImpl(Collections.singletonMap(KEY_ID,
+                Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded())));
+    }
+
+    @Test
+    void verify_ShouldAcceptToken_WhenClaimsMatchOptions() {
+        JWTVerifier verifier = verifier(ValidationOptions.builder()
+                .clock(clockAt(NOW))
+                .requireIssuer(ISSUER)
+                .requireAudience("another-client", CLIENT_ID)
+                .requireTokenUse("access")
+                .build());
+
+        assertEquals(USER_ID, verifier.verify(token(ISSUER, CLIENT_ID, "access", NOW.plusSeconds(60), null)).getId());
+    }
+
+    @Test
+    void verify_ShouldAcceptToken_WhenAudienceClaimMatches() {
+        JWTVerifier verifier = verifier(ValidationOptions.builder()
+                .clock(clockAt(NOW))
+                .requireAudience(CLIENT_ID)
+                .build());
+        String token = Jwts.builder()
+                .header().keyId(KEY_ID).and()
+                .subject(USER_ID)
+                .claim("username", "janedoe@example.com")
+                .audience().add(CLIENT_ID).and()
+                .expiration(Date.from(NOW.plusSeconds(60)))
+                .signWith(keyPair.getPrivate())
+                .compact();
+
+        assertEquals(USER_ID, verifier.verify(token).getId());
+    }
+
+    @Test
+    void verify_ShouldRejectToken_WhenClaimsDoNotMatchOptions() {
+        InMemoryVerificationMetrics metrics = new InMemoryVerificationMetrics();
+        JWTVerifier verifier = new JWTVerifierImpl(keyLocator, null, null, metrics, ValidationOptions.builder()
+                .clock(clockAt(NOW))
+                .requireIssuer(ISSUER)
+                .requireAudience(CLIENT_ID)
+                .requireTokenUse("access")
+                .build());
+        Instant exp = NOW.plusSeconds(60);
+
+        assertThatThrownBy(() -> verifier.verify(token("https://attacker.example.com", CLIENT_ID, "access", exp, null)))
+                .isInstanceOf(JWTVerificationException.class)
+                .hasMessageContaining(JWTVerifierImpl.ISSUER_ERROR);
+        assertThatThrownBy(() -> verifier.verify(token(null, CLIENT_ID, "access", exp, null)))
+                .isInstanceOf(JWTVerificationException.class)
+                .hasMessageContaining(JWTVerifierImpl.ISSUER_ERROR);
+        assertThatThrownBy(() -> verifier.verify(token(ISSUER, "another-client", "access", exp, null)))
+                .isInstanceOf(JWTVerificationException.class)
+                .hasMessageContaining(JWTVerifierImpl.AUDIENCE_ERROR);
+        assertThatThrownBy(() -> verifier.verify(token(ISSUER, CLIENT_ID, "id", exp, null)))
+                .isInstanceOf(JWTVerificationException.class)
+                .hasMessageContaining(JWTVerifierImpl.TOKEN_USE_ERROR);
+        assertEquals(4, metrics.getCount(VerificationOutcome.INVALID_CLAIM));
+    }
+
+    @Test
+    void verify_ShouldAllowClockSkew_WhenTokenJustExpiredOrNotYetValid() {
+        String expired = token(null, null, null, NOW.minusSeconds(20), null);
+        String notYetValid = token(null, null, null, NOW.plusSeconds(60), NOW.plusSeconds(20));
+        JWTVerifier strict = verifier(ValidationOptions.builder().clock(clockAt(NOW)).build());
+        JWTVerifier lenient = verifier(ValidationOptions.builder().clock(clockAt(NOW)).clockSkewSeconds(30).build());
+
+        assertThatThrownBy(() -> strict.verify(expired))
+                .isInstanceOf(JWTTokenExpiredException.class)
+                .hasMessageContaining(JWTVerifierImpl.EXPIRED_TOKEN_ERROR);
+        assertThatThrownBy(() -> strict.verify(notYetValid))
+                .isInstanceOf(JWTVerificationException.class)
+                .hasMessageContaining(JWTVerifierImpl.NOT_YET_VALID_ERROR);
+        assertEquals(USER_ID, lenient.verify(expired).getId());
+        assertEquals(USER_ID, lenient.verify(notYetValid).getId());
+    }
+
+    @Test
+    void verify_ShouldExpireCachedTokens_ByVerifierClock() {
+        MutableClock clock = new MutableClock(NOW);
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, 60 * 60 * 1000L);
+        JWTVerifier verifier = new JWTVerifierImpl(keyLocator, cache, null, VerificationMetrics.NOOP,
+                ValidationOptions.builder().clock(clock).build());
+        String token = token(null, null, null, NOW.plusSeconds(60), null);
+
+        UserDataPayload payload = verifier.verify(token);
+        assertSame(payload, verifier.verify(token));
+
+        clock.instant = NOW.plusSeconds(61);
+        assertThatThrownBy(() -> verifier.verify(token)).isInstanceOf(JWTTokenExpiredException.class);
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void builder_ShouldThrowException_WhenOptionsInvalid() {
+        assertThatThrownBy(() -> ValidationOptions.builder().clock(null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(ValidationOptions.CLOCK_REQUIRED_ERROR);
+        assertThatThrownBy(() -> ValidationOptions.builder().clockSkewSeconds(-1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(ValidationOptions.CLOCK_SKEW_ERROR);
+        assertThatThrownBy(() -> ValidationOptions.builder().requireIssuer(null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(ValidationOptions.VALUE_REQUIRED_ERROR);
+        assertThatThrownBy(() -> ValidationOptions.builder().requireAudience())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(ValidationOptions.VALUE_REQUIRED_ERROR);
+        assertThatThrownBy(() -> ValidationOptions.builder().requireTokenUse("access", null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(ValidationOptions.VALUE_REQUIRED_ERROR);
+    }
+
+    @Test
+    void verify_ShouldRejectAndRecordToken_WhenClaimsHaveWrongType() {
+        InMemoryVerificationMetrics metrics = new InMemoryVerificationMetrics();
+        JWTVerifier verifier = new JWTVerifierImpl(keyLocator, null, null, metrics, ValidationOptions.builder()
+                .clock(clockAt(NOW))
+                .requireAudience(CLIENT_ID)
+                .build());
+
+        assertThatThrownBy(() -> verifier.verify(tokenWithClaim("username", 12345)))
+                .isInstanceOf(JWTDecodeException.class)
+                .hasMessageContaining(JWTVerifierImpl.MISSING_USERNAME_ERROR);
+        assertThatThrownBy(() -> verifier.verify(tokenWithClaim("client_id", 42)))
+                .isInstanceOf(JWTVerificationException.class)
+                .hasMessageContaining(JWTVerifierImpl.AUDIENCE_ERROR);
+        assertThatThrownBy(() -> verifier.verify(tokenWithClaim("cognito:groups", "admin")))
+                .isInstanceOf(JWTDecodeException.class)
+                .hasMessageContaining(JWTVerifierImpl.TOKEN_NOT_VALID_ERROR);
+
+        assertEquals(1, metrics.getCount(VerificationOutcome.MISSING_CLAIM));
+        assertEquals(1, metrics.getCount(VerificationOutcome.INVALID_CLAIM));
+        assertEquals(1, metrics.getCount(VerificationOutcome.MALFORMED));
+    }
+
+    private JWTVerifier verifier(ValidationOptions options) {
+        return new JWTVerifierImpl(keyLocator, null, null, VerificationMetrics.NOOP, options);
+    }
+
+    private String token(String issuer, String clientId, String tokenUse, Instant expiration, Instant notBefore) {
+        return Jwts.builder()
+                .header().keyId(KEY_ID).and()
+                .subject(USER_ID)
+                .claim("username", "janedoe@example.com")
+                .issuer(issuer)
+                .claim("client_id", clientId)
+                .claim("token_use", tokenUse)
+                .expiration(Date.from(expiration))
+                .notBefore(notBefore == null ? null : Date.from(notBefore))
+                .signWith(keyPair.getPrivate())
+                .compact();
+    }
+
+    private String tokenWithClaim(String name, Object value) {
+        return Jwts.builder()
+                .header().keyId(KEY_ID).and()
+                .subject(USER_ID)
+                .claim("username", "janedoe@example.com")
+                .claim("client_id", CLIENT_ID)
+                .claim(name, value)
+                .expiration(Date.from(NOW.plusSeconds(60)))
+                .signWith(keyPair.getPrivate())
+                .compact();
+    }
+
+    private static Clock clockAt(Instant instant) {
+        return Clock.fixed(instant, ZoneOffset.UTC);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.onsdigital;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class VerifiedTokenCacheTests {
+
+    private static final long ONE_HOUR = 60 * 60 * 1000L;
+
+    private final UserDataPayload payload = new UserDataPayload("id", "email", Collections.singletonList("admin"));
+
+    @Test
+    void constructor_ShouldThrowException_WhenMaxSizeNotPositive() {
+        assertThatThrownBy(() -> new VerifiedTokenCache(0, ONE_HOUR))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(VerifiedTokenCache.MAX_SIZE_ERROR);
+    }
+
+    @Test
+    void constructor_ShouldThrowException_WhenMaxTtlNotPositive() {
+        assertThatThrownBy(() -> new VerifiedTokenCache(10, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(VerifiedTokenCache.MAX_TTL_ERROR);
+    }
+
+    @Test
+    void get_ShouldReturnPayload_WhenTokenCached() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, ONE_HOUR);
+        cache.put("token", payload, new Date(System.currentTimeMillis() + ONE_HOUR));
+
+        assertSame(payload, cache.get("token"));
+        assertNull(cache.get("other-token"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void put_ShouldNotCache_WhenTokenAlreadyExpired() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, ONE_HOUR);
+        cache.put("token", payload, new Date(System.currentTimeMillis() - 1));
+
+        assertNull(cache.get("token"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void get_ShouldReturnNull_WhenEntryOutlivesTokenExpiry() throws InterruptedException {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, ONE_HOUR);
+        cache.put("token", payload, new Date(System.currentTimeMillis() + 20));
+
+        Thread.sleep(50);
+
+        assertNull(cache.get("token"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void put_ShouldEvictLeastRecentlyUsed_WhenMaxSizeReached() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(2, ONE_HOUR);
+        cache.put("first", payload, null);
+        cache.put("second", payload, null);
+        cache.get("first");
+        cache.put("third", payload, null);
+
+        assertEquals(2, cache.getSize());
+        assertSame(payload, cache.get("first"));
+        assertNull(cache.get("second"));
+        assertSame(payload, cache.get("third"));
+    }
+
+    @Test
+    void get_ShouldReturnNull_WhenTokenCachedInAnotherScope() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, ONE_HOUR);
+        long now = System.currentTimeMillis();
+        cache.put(1, "token", payload, null, now);
+
+        assertSame(payload, cache.get(1, "token", now));
+        assertNull(cache.get(2, "token", now));
+        assertNull(cache.get("token"));
+    }
+
+    @Test
+    void put_ShouldHoldAtMostMaxSize_WhenSplitIntoSegments() {
+        int maxSize = VerifiedTokenCache.MAX_SEGMENTS * VerifiedTokenCache.MIN_SEGMENT_SIZE;
+        VerifiedTokenCache cache = new VerifiedTokenCache(maxSize, ONE_HOUR);
+        for (int i = 0; i < maxSize * 4; i++) {
+            cache.put("token-" + i, payload, null);
+        }
+
+        assertThat(cache.getSize()).isBetween(maxSize / 2, maxSize);
+        assertSame(payload, cache.get("token-" + (maxSize * 4 - 1)));
+    }
+
+    @Test
+    void get_ShouldReturnNull_WhenTokenNullOrEmpty() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, ONE_HOUR);
+
+        assertNull(cache.get(null));
+        assertNull(cache.get(""));
+    }
+}